@@ -0,0 +1,10 @@
+
+in vec3 color;
+
+out vec4 outputColor;
+
+void main()
+{
+    // Output the color of the instance
+    outputColor = vec4(color, 0);
+}
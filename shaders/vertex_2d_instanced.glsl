@@ -0,0 +1,30 @@
+
+// Incoming vertex position
+in vec2 position;
+
+// The model transform and color of this instance
+in vec2 instance_axis_i;
+in vec2 instance_axis_j;
+in vec2 instance_origin;
+in vec3 instance_color;
+
+uniform mat3 view_matrix;
+
+out vec3 color;
+
+void main() {
+    mat3 model_matrix = mat3(vec3(instance_axis_i, 0), vec3(instance_axis_j, 0), 
+            vec3(instance_origin, 1));
+
+	// The global position is in homogenous coordinates
+    vec3 globalPosition = model_matrix * vec3(position, 1);
+
+    // The position in camera coordinates
+    vec3 viewPosition = view_matrix * globalPosition;
+
+    // We must convert from a homogenous coordinate in 2D to a homogenous
+    // coordinate in 3D.
+    gl_Position = vec4(viewPosition.xy, 0, 1);
+    
+    color = instance_color;
+}
@@ -0,0 +1,293 @@
+/**
+ * 
+ */
+package unsw.graphics;
+
+import unsw.graphics.geometry.Point2D;
+
+/**
+ * An affine transform in 2D.
+ *
+ * This is a 3x3 matrix whose bottom row is always (0, 0, 1), so only the i-axis, j-axis and
+ * origin (6 floats) are stored:
+ *
+ * <pre>
+ * [ ix  jx  ox ]
+ * [ iy  jy  oy ]
+ * [ 0   0   1  ]
+ * </pre>
+ *
+ * Composing two of these takes 12 multiply-adds rather than the 27 of a full Matrix3.
+ *
+ * This class is mutable. All of the operations modify the transform they are called on and
+ * return it so that they can be chained.
+ *
+ * @author Benny Hwang
+ *
+ */
+public class Affine2D {
+    private float ix, iy; // i-axis
+    private float jx, jy; // j-axis
+    private float ox, oy; // origin
+
+    /**
+     * Construct an identity transform.
+     */
+    public Affine2D() {
+        setIdentity();
+    }
+
+    /**
+     * Construct a copy of the given transform.
+     * @param transform
+     */
+    public Affine2D(Affine2D transform) {
+        set(transform);
+    }
+
+    /**
+     * Construct a transform from the first two rows of the given matrix.
+     *
+     * The bottom row of the matrix is assumed to be (0, 0, 1).
+     * @param matrix
+     */
+    public Affine2D(Matrix3 matrix) {
+        float[] m = matrix.getValues();
+        set(m[0], m[1], m[3], m[4], m[6], m[7]);
+    }
+
+    /**
+     * Reset this to the identity transform.
+     * @return this transform
+     */
+    public Affine2D setIdentity() {
+        return set(1, 0, 0, 1, 0, 0);
+    }
+
+    /**
+     * Make this transform a copy of the given transform.
+     * @param t
+     * @return this transform
+     */
+    public Affine2D set(Affine2D t) {
+        return set(t.ix, t.iy, t.jx, t.jy, t.ox, t.oy);
+    }
+
+    /**
+     * Set the axes and origin of this transform.
+     * @param ix
+     * @param iy
+     * @param jx
+     * @param jy
+     * @param ox
+     * @param oy
+     * @return this transform
+     */
+    public Affine2D set(float ix, float iy, float jx, float jy, float ox, float oy) {
+        this.ix = ix;
+        this.iy = iy;
+        this.jx = jx;
+        this.jy = jy;
+        this.ox = ox;
+        this.oy = oy;
+        return this;
+    }
+
+    /**
+     * Set this transform to translate(x, y) * rotate(degrees) * scale(scale, scale). This is the
+     * usual local transform of an object in a scene tree.
+     * @param x
+     * @param y
+     * @param degrees
+     * @param scale
+     * @return this transform
+     */
+    public Affine2D setTransform(float x, float y, float degrees, float scale) {
+        double radians = Math.toRadians(degrees);
+        float c = (float) Math.cos(radians) * scale;
+        float s = (float) Math.sin(radians) * scale;
+        return set(c, s, -s, c, x, y);
+    }
+
+    /**
+     * Translate this transform along the given vector, i.e. this = this * translation(x, y).
+     * @param x
+     * @param y
+     * @return this transform
+     */
+    public Affine2D translate(float x, float y) {
+        ox += ix*x + jx*y;
+        oy += iy*x + jy*y;
+        return this;
+    }
+
+    /**
+     * Rotate this transform by the given degrees, i.e. this = this * rotation(degrees).
+     * @param degrees
+     * @return this transform
+     */
+    public Affine2D rotate(float degrees) {
+        double radians = Math.toRadians(degrees);
+        float c = (float) Math.cos(radians);
+        float s = (float) Math.sin(radians);
+        return set(ix*c + jx*s, iy*c + jy*s, jx*c - ix*s, jy*c - iy*s, ox, oy);
+    }
+
+    /**
+     * Scale this transform by the given amounts, i.e. this = this * scale(x, y).
+     * @param x
+     * @param y
+     * @return this transform
+     */
+    public Affine2D scale(float x, float y) {
+        return set(ix*x, iy*x, jx*y, jy*y, ox, oy);
+    }
+
+    /**
+     * Shear this transform horizontally, i.e. this = this * horizontalShear(h).
+     * @param h
+     * @return this transform
+     */
+    public Affine2D horizontalShear(float h) {
+        jx += ix*h;
+        jy += iy*h;
+        return this;
+    }
+
+    /**
+     * Shear this transform vertically, i.e. this = this * verticalShear(v).
+     * @param v
+     * @return this transform
+     */
+    public Affine2D verticalShear(float v) {
+        ix += jx*v;
+        iy += jy*v;
+        return this;
+    }
+
+    /**
+     * Multiply this transform by the given transform, i.e. this = this * t.
+     * @param t
+     * @return this transform
+     */
+    public Affine2D multiply(Affine2D t) {
+        return set(ix*t.ix + jx*t.iy, iy*t.ix + jy*t.iy,
+                ix*t.jx + jx*t.jy, iy*t.jx + jy*t.jy,
+                ix*t.ox + jx*t.oy + ox, iy*t.ox + jy*t.oy + oy);
+    }
+
+    /**
+     * Set this transform to the product a * b.
+     *
+     * Either argument may be this transform.
+     * @param a
+     * @param b
+     * @return this transform
+     */
+    public Affine2D setMultiply(Affine2D a, Affine2D b) {
+        return set(a.ix*b.ix + a.jx*b.iy, a.iy*b.ix + a.jy*b.iy,
+                a.ix*b.jx + a.jx*b.jy, a.iy*b.jx + a.jy*b.jy,
+                a.ix*b.ox + a.jx*b.oy + a.ox, a.iy*b.ox + a.jy*b.oy + a.oy);
+    }
+
+    /**
+     * The determinant of this transform.
+     * @return
+     */
+    public float determinant() {
+        return ix*jy - jx*iy;
+    }
+
+    /**
+     * Invert this transform.
+     *
+     * @throws IllegalStateException if the transform is not invertible (e.g. it has a scale of 0)
+     * @return this transform
+     */
+    public Affine2D invert() {
+        float det = determinant();
+        if (det == 0)
+            throw new IllegalStateException("Affine2D is not invertible");
+        float nix = jy / det, niy = -iy / det;
+        float njx = -jx / det, njy = ix / det;
+        return set(nix, niy, njx, njy, -(nix*ox + njx*oy), -(niy*ox + njy*oy));
+    }
+
+    /**
+     * Transform the x coordinate of the point (x, y).
+     * @param x
+     * @param y
+     * @return
+     */
+    public float transformX(float x, float y) {
+        return ix*x + jx*y + ox;
+    }
+
+    /**
+     * Transform the y coordinate of the point (x, y).
+     * @param x
+     * @param y
+     * @return
+     */
+    public float transformY(float x, float y) {
+        return iy*x + jy*y + oy;
+    }
+
+    /**
+     * Transform the given point.
+     * @param p
+     * @return
+     */
+    public Point2D transform(Point2D p) {
+        return new Point2D(transformX(p.getX(), p.getY()), transformY(p.getX(), p.getY()));
+    }
+
+    public float getIX() {
+        return ix;
+    }
+
+    public float getIY() {
+        return iy;
+    }
+
+    public float getJX() {
+        return jx;
+    }
+
+    public float getJY() {
+        return jy;
+    }
+
+    public float getOriginX() {
+        return ox;
+    }
+
+    public float getOriginY() {
+        return oy;
+    }
+
+    /**
+     * Expand this transform into a 3x3 matrix in column-major order, as expected by OpenGL.
+     * @param dest An array of at least length 9
+     */
+    public void getValues(float[] dest) {
+        dest[0] = ix; dest[1] = iy; dest[2] = 0;
+        dest[3] = jx; dest[4] = jy; dest[5] = 0;
+        dest[6] = ox; dest[7] = oy; dest[8] = 1;
+    }
+
+    /**
+     * Convert this transform to a Matrix3.
+     * @return
+     */
+    public Matrix3 toMatrix3() {
+        float[] values = new float[9];
+        getValues(values);
+        return new Matrix3(values);
+    }
+
+    @Override
+    public String toString() {
+        return toMatrix3().toString();
+    }
+}
@@ -109,7 +109,9 @@ public abstract class Application implements GLEventListener {
     @Override
     public void display(GLAutoDrawable drawable) {
         GL3 gl = drawable.getGL().getGL3();
+        Profiler.beginFrame();
         display(gl);
+        Profiler.endFrame();
     }
 
     /**
@@ -15,19 +15,45 @@ import unsw.graphics.geometry.Point2D;
  * 
  * Coordinate frames allow for geometry to be transformed before being drawn to the canvas.
  * 
+ * The translate, rotate, scale and sheer methods return new frames. The *InPlace variants
+ * modify this frame instead, so that hot paths like scene tree traversal can reuse a single frame
+ * per node rather than allocating new ones every time something is drawn.
+ * 
  * @author Robert Clifton-Everest
  *
  */
 public class CoordFrame2D {
-    private Matrix3 matrix;
+    private final Affine2D transform;
+    
+    // Used to draw frames for debugging
+    private static final Line2D I_AXIS = new Line2D(0f,0f, 1f,0f);
+    private static final Line2D J_AXIS = new Line2D(0f,0f, 0f,1f);
+    
+    /**
+     * Construct a new identity coordinate frame.
+     */
+    public CoordFrame2D() {
+        transform = new Affine2D();
+    }
     
     /**
      * Use the given 3X3 matrix as a coordinate frame.
      * 
+     * The bottom row of the matrix is assumed to be (0, 0, 1).
+     * 
      * @param matrix
      */
     public CoordFrame2D(Matrix3 matrix) {
-        this.matrix = matrix;
+        transform = new Affine2D(matrix);
+    }
+    
+    /**
+     * Use a copy of the given affine transform as a coordinate frame.
+     * 
+     * @param transform
+     */
+    public CoordFrame2D(Affine2D transform) {
+        this.transform = new Affine2D(transform);
     }
     
     /**
@@ -36,7 +62,7 @@ public class CoordFrame2D {
      * @return
      */
     public static CoordFrame2D identity() {
-        return new CoordFrame2D(Matrix3.identity());
+        return new CoordFrame2D();
     }
     
     /**
@@ -46,7 +72,7 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D translate(float x, float y) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.translation(x, y)));
+        return new CoordFrame2D(transform).translateInPlace(x, y);
     }
     
     /**
@@ -56,7 +82,7 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D translate(Point2D point) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.translation(point)));
+        return translate(point.getX(), point.getY());
     }
     
     /**
@@ -65,7 +91,7 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D rotate(float degrees) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.rotation(degrees)));
+        return new CoordFrame2D(transform).rotateInPlace(degrees);
     }
 
     /**
@@ -76,7 +102,7 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D scale(float x, float y) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.scale(x,y)));
+        return new CoordFrame2D(transform).scaleInPlace(x, y);
     }
 
     /**
@@ -86,7 +112,9 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D horizontalSheer(float h) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.horizontalShear(h)));
+        CoordFrame2D frame = new CoordFrame2D(transform);
+        frame.transform.horizontalShear(h);
+        return frame;
     }
 
     /**
@@ -96,7 +124,63 @@ public class CoordFrame2D {
      * @return
      */
     public CoordFrame2D verticalSheer(float v) {
-        return new CoordFrame2D(matrix.multiply(Matrix3.horizontalShear(v)));
+        CoordFrame2D frame = new CoordFrame2D(transform);
+        frame.transform.verticalShear(v);
+        return frame;
+    }
+    
+    /**
+     * Make this frame a copy of the given frame.
+     * @param frame
+     * @return this frame
+     */
+    public CoordFrame2D set(CoordFrame2D frame) {
+        transform.set(frame.transform);
+        return this;
+    }
+    
+    /**
+     * Translate this frame along the given vector, modifying it.
+     * @param x
+     * @param y
+     * @return this frame
+     */
+    public CoordFrame2D translateInPlace(float x, float y) {
+        transform.translate(x, y);
+        return this;
+    }
+    
+    /**
+     * Rotate this frame by the given degrees, modifying it.
+     * @param degrees
+     * @return this frame
+     */
+    public CoordFrame2D rotateInPlace(float degrees) {
+        transform.rotate(degrees);
+        return this;
+    }
+    
+    /**
+     * Scale this frame by the given amount in the x and y directions, modifying it.
+     * @param x
+     * @param y
+     * @return this frame
+     */
+    public CoordFrame2D scaleInPlace(float x, float y) {
+        transform.scale(x, y);
+        return this;
+    }
+    
+    /**
+     * Make this frame the transform of the given parent frame by the given affine transform, 
+     * i.e. this = parent * local.
+     * @param parent
+     * @param local
+     * @return this frame
+     */
+    public CoordFrame2D setMultiply(CoordFrame2D parent, Affine2D local) {
+        transform.setMultiply(parent.transform, local);
+        return this;
     }
 
     /**
@@ -104,7 +188,15 @@ public class CoordFrame2D {
      * @return
      */
     public Matrix3 getMatrix() {
-        return matrix;
+        return transform.toMatrix3();
+    }
+    
+    /**
+     * Get the affine transform backing this frame. Modifying it modifies the frame.
+     * @return
+     */
+    public Affine2D getTransform() {
+        return transform;
     }
     
     /**
@@ -115,12 +207,10 @@ public class CoordFrame2D {
      * @param gl
      */
     public void draw(GL3 gl) {
-       Line2D iAxis = new Line2D(0f,0f, 1f,0f); 
-       Line2D jAxis = new Line2D(0f,0f, 0f,1f);
        Shader.setPenColor(gl, Color.RED);
-       iAxis.draw(gl,this);
+       I_AXIS.draw(gl,this);
        Shader.setPenColor(gl, Color.GREEN);
-       jAxis.draw(gl,this);
+       J_AXIS.draw(gl,this);
        Shader.setPenColor(gl, Color.BLACK);
     }
 }
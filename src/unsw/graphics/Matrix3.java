@@ -29,6 +29,15 @@ public class Matrix3 {
         this.values = Arrays.copyOf(values, 9);
     }
     
+    /**
+     * Wrap the given array without copying it. Only for arrays that are never modified afterwards.
+     * @param values
+     * @param owned Ignored, distinguishes this constructor from the copying one
+     */
+    private Matrix3(float[] values, boolean owned) {
+        this.values = values;
+    }
+    
     /**
      * Create an identity matrix.
      */
@@ -143,12 +152,8 @@ public class Matrix3 {
      */
     public Matrix3 multiply(Matrix3 mat) {
         float[] r = new float[9];
-        for (int x = 0; x < 3; x++) {
-            for (int y = 0; y < 3; y++) {
-                r[x*3 + y] = getRow(y).dotp(mat.getColumn(x));
-            }
-        }
-        return new Matrix3(r);
+        multiply(values, mat.values, r);
+        return new Matrix3(r, true);
     }
     
     /**
@@ -157,27 +162,84 @@ public class Matrix3 {
      * @return
      */
     public Vector3 multiply(Vector3 v) {
-        float[] r = new float[3];
-        for (int y = 0; y < 3; y++) {
-            r[y] = getRow(y).dotp(v);
+        float x = v.getX(), y = v.getY(), z = v.getZ();
+        return new Vector3(
+                values[0]*x + values[3]*y + values[6]*z,
+                values[1]*x + values[4]*y + values[7]*z,
+                values[2]*x + values[5]*y + values[8]*z);
+    }
+    
+    // The static methods below work on column-major float[9] arrays so that transforms can be
+    // composed into an existing array without allocating any intermediate matrices.
+    
+    /**
+     * Multiply the matrix a by the matrix b and store the result in dest.
+     * 
+     * dest may be the same array as a or b.
+     * 
+     * @param a A matrix in column-major order
+     * @param b A matrix in column-major order
+     * @param dest The array to store a * b in
+     */
+    public static void multiply(float[] a, float[] b, float[] dest) {
+        float a00 = a[0], a10 = a[1], a20 = a[2];
+        float a01 = a[3], a11 = a[4], a21 = a[5];
+        float a02 = a[6], a12 = a[7], a22 = a[8];
+        for (int x = 0; x < 3; x++) {
+            float b0 = b[x*3], b1 = b[x*3 + 1], b2 = b[x*3 + 2];
+            dest[x*3]     = a00*b0 + a01*b1 + a02*b2;
+            dest[x*3 + 1] = a10*b0 + a11*b1 + a12*b2;
+            dest[x*3 + 2] = a20*b0 + a21*b1 + a22*b2;
         }
-        return new Vector3(r);
     }
     
-    private Vector3 getColumn(int x) {
-        float[] vec = new float[3];
+    /**
+     * Multiply the matrix m in place by a translation matrix, i.e. m = m * translation(x, y).
+     * @param m A matrix in column-major order
+     * @param x
+     * @param y
+     */
+    public static void translate(float[] m, float x, float y) {
+        m[6] += m[0]*x + m[3]*y;
+        m[7] += m[1]*x + m[4]*y;
+        m[8] += m[2]*x + m[5]*y;
+    }
+    
+    /**
+     * Multiply the matrix m in place by a rotation matrix, i.e. m = m * rotation(degrees).
+     * @param m A matrix in column-major order
+     * @param degrees
+     */
+    public static void rotate(float[] m, float degrees) {
+        double radians = Math.toRadians(degrees);
+        float c = (float) Math.cos(radians);
+        float s = (float) Math.sin(radians);
         for (int y = 0; y < 3; y++) {
-            vec[y] = values[x*3 + y];
+            float i = m[y], j = m[3 + y];
+            m[y]     = i*c + j*s;
+            m[3 + y] = j*c - i*s;
         }
-        return new Vector3(vec);
     }
     
-    private Vector3 getRow(int y) {
-        float[] vec = new float[3];
-        for (int x = 0; x < 3; x++) {
-            vec[x] = values[x*3 + y];
+    /**
+     * Multiply the matrix m in place by a scale matrix, i.e. m = m * scale(x, y).
+     * @param m A matrix in column-major order
+     * @param x
+     * @param y
+     */
+    public static void scale(float[] m, float x, float y) {
+        for (int i = 0; i < 3; i++) {
+            m[i] *= x;
+            m[3 + i] *= y;
         }
-        return new Vector3(vec);
+    }
+
+    /**
+     * Copy the values stored in this matrix in column-major order into dest.
+     * @param dest An array of at least length 9
+     */
+    public void getValues(float[] dest) {
+        System.arraycopy(values, 0, dest, 0, 9);
     }
 
     /**
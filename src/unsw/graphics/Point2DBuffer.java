@@ -15,6 +15,13 @@ import unsw.graphics.geometry.Point2D;
  * A buffer of points. Can be passed to OpenGL commands that expect buffers by
  * using the getBuffer() method.
  * 
+ * Points can be written at a given index, or appended after the last point written. Appending
+ * grows the buffer as needed.
+ * 
+ * The buffer is direct memory, which is only freed when the garbage collector gets around to
+ * it, so code that fills a buffer just to upload it should borrow the thread's scratch buffer
+ * with scratch() rather than constructing a new one each time.
+ * 
  * @author Robert Clifton-Everest
  *
  */
@@ -24,6 +31,17 @@ public class Point2DBuffer {
 
     private int capacity;
 
+    // The number of points appended, i.e. where the next one goes
+    private int size;
+
+    // One scratch buffer per thread, grown to fit the most points anyone has asked for
+    private static final ThreadLocal<Point2DBuffer> SCRATCH = new ThreadLocal<Point2DBuffer>() {
+        @Override
+        protected Point2DBuffer initialValue() {
+            return new Point2DBuffer(64);
+        }
+    };
+
     /**
      * Construct a new buffer with the given capacity.
      * 
@@ -37,9 +55,24 @@ public class Point2DBuffer {
 
     public Point2DBuffer(List<Point2D> points) {
         this(points.size());
-        for (int i = 0; i < capacity; i++) {
-            put(i, points.get(i));
-        }
+        put(points);
+    }
+
+    /**
+     * Get the calling thread's scratch buffer, emptied and with room for at least the given
+     * number of points.
+     * 
+     * The buffer is shared by everything running on the thread, so it must not be held on to.
+     * It is only good until the next call to scratch().
+     * 
+     * @param capacity
+     * @return
+     */
+    public static Point2DBuffer scratch(int capacity) {
+        Point2DBuffer buffer = SCRATCH.get();
+        buffer.clear();
+        buffer.ensureCapacity(capacity);
+        return buffer;
     }
 
     /**
@@ -70,6 +103,89 @@ public class Point2DBuffer {
         }
     }
 
+    /**
+     * Append a point after the last one appended, growing the buffer if it is full.
+     * 
+     * @param x
+     * @param y
+     */
+    public void put(float x, float y) {
+        ensureCapacity(size + 1);
+        floatBuffer.put(size * 2, x);
+        floatBuffer.put(size * 2 + 1, y);
+        size++;
+    }
+
+    /**
+     * Append points given as x-y pairs of floats, growing the buffer if needed.
+     * 
+     * @param values The coordinates, x0, y0, x1, y1...
+     * @param offset The index in values of the first coordinate
+     * @param length The number of floats to append, i.e. twice the number of points
+     */
+    public void put(float[] values, int offset, int length) {
+        if (length % 2 != 0)
+            throw new IllegalArgumentException("Odd number of coordinates: " + length);
+        ensureCapacity(size + length / 2);
+        floatBuffer.position(size * 2);
+        floatBuffer.put(values, offset, length);
+        floatBuffer.position(0);
+        size += length / 2;
+    }
+
+    /**
+     * Append a list of points, growing the buffer if needed.
+     * 
+     * @param points
+     */
+    public void put(List<Point2D> points) {
+        ensureCapacity(size + points.size());
+        for (int i = 0; i < points.size(); i++) {
+            Point2D p = points.get(i);
+            floatBuffer.put(size * 2, p.getX());
+            floatBuffer.put(size * 2 + 1, p.getY());
+            size++;
+        }
+    }
+
+    /**
+     * Make sure the buffer can hold at least the given number of points, keeping the points
+     * already in it.
+     * 
+     * @param points
+     */
+    public void ensureCapacity(int points) {
+        if (points <= capacity)
+            return;
+        int newCapacity = Math.max(points, capacity * 2);
+        FloatBuffer grown = GLBuffers.newDirectFloatBuffer(newCapacity * 2);
+        floatBuffer.clear();
+        grown.put(floatBuffer);
+        grown.position(0);
+        floatBuffer = grown;
+        capacity = newCapacity;
+    }
+
+    /**
+     * Start appending from the beginning of the buffer again.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * The number of points appended since the buffer was constructed or cleared.
+     * 
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
     public Buffer getBuffer() {
         return floatBuffer;
     }
@@ -0,0 +1,456 @@
+/**
+ * 
+ */
+package unsw.graphics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A profiler for finding out where the time in each frame goes.
+ *
+ * Phases of a frame are timed with scopes, which can be nested. A scope is created once and kept
+ * in a static field, then opened and closed around the code it times:
+ *
+ * <pre>
+ * private static final Profiler.Scope UPDATE = Profiler.scope("update");
+ * ...
+ * UPDATE.begin();
+ * try {
+ *     ...
+ * } finally {
+ *     UPDATE.end();
+ * }
+ * </pre>
+ *
+ * Counters record how many times things happen in a frame, e.g. draw calls. The engine already
+ * counts draw calls, buffer uploads, uniform uploads and the scene objects drawn, and the bytes
+ * allocated by the rendering thread are measured where the JVM supports it.
+ *
+ * Application calls beginFrame() and endFrame() around every frame. At the end of each frame the
+ * time spent in the frame and in each scope, and the value of each counter, are added to rolling
+ * histograms, so percentiles over the last few hundred frames can be read from code or dumped to
+ * a file.
+ *
+ * The profiler is off until setEnabled(true) is called, and then scopes and counters cost a
+ * couple of field reads each. Like Shader, it is meant to be used on the rendering thread: only
+ * the thread that enabled it, or that most recently began a frame, is measured, and calls from
+ * any other thread (e.g. during a parallel update of a scene) are ignored.
+ *
+ * @author Benny Hwang
+ *
+ */
+public class Profiler {
+
+    /**
+     * The things counted in each frame.
+     */
+    public enum Counter {
+        /**
+         * glDrawArrays() and glDrawArraysInstanced() calls.
+         */
+        DRAW_CALLS,
+
+        /**
+         * Vertex data uploaded with glBufferData().
+         */
+        BUFFER_UPLOADS,
+
+        /**
+         * Uniform values uploaded by Shader. Redundant uploads that Shader skips aren't counted.
+         */
+        UNIFORM_SETS,
+
+        /**
+         * Scene objects visited while drawing the scene tree. Culled subtrees aren't counted.
+         */
+        NODES_VISITED,
+
+        /**
+         * Bytes allocated on the heap by the rendering thread during the frame, if the JVM can
+         * measure it.
+         */
+        BYTES_ALLOCATED
+    }
+
+    /**
+     * A named phase of the frame that is timed. Scopes are created with Profiler.scope().
+     */
+    public static final class Scope {
+        private final String myName;
+        private RollingHistogram myHistory;
+
+        // The time the scope was last opened, or -1 if it isn't open
+        private long myStart;
+
+        // The total time spent in the scope so far this frame, and whether it has been opened
+        private long myFrameTime;
+        private boolean amUsed;
+
+        private Scope(String name) {
+            myName = name;
+            myHistory = new RollingHistogram(ourWindow);
+            myStart = -1;
+        }
+
+        /**
+         * Start timing this scope.
+         */
+        public void begin() {
+            if (!isMeasuring())
+                return;
+            if (myStart >= 0)
+                throw new IllegalStateException("Scope '" + myName + "' is already open");
+            push(this);
+            myStart = System.nanoTime();
+        }
+
+        /**
+         * Stop timing this scope. It must be the most recently opened scope that is still open.
+         */
+        public void end() {
+            if (!isMeasuring() || myStart < 0)
+                return;
+            long time = System.nanoTime();
+            pop(this);
+            myFrameTime += time - myStart;
+            myStart = -1;
+            amUsed = true;
+        }
+
+        public String getName() {
+            return myName;
+        }
+
+        /**
+         * Get the total time spent in this scope in each of the recent frames it was used in,
+         * in nanoseconds.
+         *
+         * @return
+         */
+        public RollingHistogram getHistory() {
+            return myHistory;
+        }
+
+        private void endFrame() {
+            if (amUsed)
+                myHistory.add(myFrameTime);
+            myFrameTime = 0;
+            amUsed = false;
+        }
+
+        private void reset() {
+            myStart = -1;
+            myFrameTime = 0;
+            amUsed = false;
+        }
+    }
+
+    // The default number of frames the histograms cover
+    private static final int DEFAULT_WINDOW = 300;
+
+    private static int ourWindow = DEFAULT_WINDOW;
+
+    private static boolean amEnabled;
+
+    // The thread being measured
+    private static Thread ourThread;
+
+    private static final List<Scope> SCOPES = new ArrayList<Scope>();
+
+    // The scopes that are open, innermost last
+    private static Scope[] ourOpen = new Scope[8];
+    private static int ourDepth;
+
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final long[] COUNTS = new long[COUNTERS.length];
+    private static final long[] LAST_COUNTS = new long[COUNTERS.length];
+    private static RollingHistogram[] ourCounterHistory = newHistories(ourWindow);
+
+    private static long ourFrameStart = -1;
+    private static long ourFrameAllocated;
+    private static RollingHistogram ourFrameTimes = new RollingHistogram(ourWindow);
+    private static int ourFrames;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private Profiler() {
+    }
+
+    /**
+     * Get the scope with the given name, creating it if there isn't one yet.
+     *
+     * @param name
+     * @return
+     */
+    public static synchronized Scope scope(String name) {
+        for (int i = 0; i < SCOPES.size(); i++) {
+            if (SCOPES.get(i).myName.equals(name))
+                return SCOPES.get(i);
+        }
+        Scope scope = new Scope(name);
+        SCOPES.add(scope);
+        return scope;
+    }
+
+    /**
+     * Turn the profiler on or off. Turning it on starts measuring the calling thread and clears
+     * everything measured so far.
+     *
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        amEnabled = enabled;
+        ourThread = enabled ? Thread.currentThread() : null;
+        clear();
+    }
+
+    public static boolean isEnabled() {
+        return amEnabled;
+    }
+
+    /**
+     * Set the number of recent frames the histograms cover. This clears everything measured so
+     * far.
+     *
+     * @param frames
+     */
+    public static synchronized void setWindow(int frames) {
+        if (frames < 1)
+            throw new IllegalArgumentException("Window must be at least one frame: " + frames);
+        ourWindow = frames;
+        ourFrameTimes = new RollingHistogram(frames);
+        ourCounterHistory = newHistories(frames);
+        for (int i = 0; i < SCOPES.size(); i++)
+            SCOPES.get(i).myHistory = new RollingHistogram(frames);
+        clear();
+    }
+
+    /**
+     * Forget everything measured so far, including any open scopes.
+     */
+    public static synchronized void clear() {
+        for (int i = 0; i < SCOPES.size(); i++) {
+            SCOPES.get(i).reset();
+            SCOPES.get(i).myHistory.clear();
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            COUNTS[i] = 0;
+            LAST_COUNTS[i] = 0;
+            ourCounterHistory[i].clear();
+        }
+        ourFrameTimes.clear();
+        ourDepth = 0;
+        ourFrameStart = -1;
+        ourFrames = 0;
+    }
+
+    /**
+     * Start a frame. Called by Application before drawing each frame.
+     */
+    public static void beginFrame() {
+        if (!amEnabled)
+            return;
+        ourThread = Thread.currentThread();
+        ourFrameAllocated = allocatedBytes();
+        ourFrameStart = System.nanoTime();
+    }
+
+    /**
+     * Finish a frame, adding its measurements to the histograms. Called by Application after
+     * drawing each frame.
+     *
+     * @throws IllegalStateException if a scope is still open. The frame is thrown away and the
+     * open scopes closed, so the next frame is measured normally.
+     */
+    public static void endFrame() {
+        if (!isMeasuring() || ourFrameStart < 0)
+            return;
+        ourFrameTimes.add(System.nanoTime() - ourFrameStart);
+        ourFrameStart = -1;
+        if (ourFrameAllocated >= 0) {
+            long allocated = allocatedBytes();
+            if (allocated >= 0)
+                COUNTS[Counter.BYTES_ALLOCATED.ordinal()] += allocated - ourFrameAllocated;
+        }
+
+        if (ourDepth != 0) {
+            // Discard the frame, and close the scopes so that the next frame starts cleanly
+            // rather than failing too
+            String name = ourOpen[ourDepth - 1].myName;
+            for (int i = 0; i < SCOPES.size(); i++)
+                SCOPES.get(i).reset();
+            for (int i = 0; i < ourDepth; i++)
+                ourOpen[i] = null;
+            ourDepth = 0;
+            for (int i = 0; i < COUNTERS.length; i++)
+                COUNTS[i] = 0;
+            throw new IllegalStateException("Scope '" + name
+                    + "' is still open at the end of the frame");
+        }
+        for (int i = 0; i < SCOPES.size(); i++)
+            SCOPES.get(i).endFrame();
+        for (int i = 0; i < COUNTERS.length; i++) {
+            ourCounterHistory[i].add(COUNTS[i]);
+            LAST_COUNTS[i] = COUNTS[i];
+            COUNTS[i] = 0;
+        }
+        ourFrames++;
+    }
+
+    /**
+     * Count one occurrence of something in the current frame.
+     *
+     * @param counter
+     */
+    public static void count(Counter counter) {
+        if (isMeasuring())
+            COUNTS[counter.ordinal()]++;
+    }
+
+    /**
+     * Count several occurrences of something in the current frame.
+     *
+     * @param counter
+     * @param amount
+     */
+    public static void count(Counter counter, long amount) {
+        if (isMeasuring())
+            COUNTS[counter.ordinal()] += amount;
+    }
+
+    /**
+     * Get the value a counter has reached so far in the current frame.
+     *
+     * @param counter
+     * @return
+     */
+    public static long getCount(Counter counter) {
+        return COUNTS[counter.ordinal()];
+    }
+
+    /**
+     * Get the value a counter reached in the last complete frame.
+     *
+     * @param counter
+     * @return
+     */
+    public static long getLastCount(Counter counter) {
+        return LAST_COUNTS[counter.ordinal()];
+    }
+
+    /**
+     * Get the values a counter reached in each of the recent frames.
+     *
+     * @param counter
+     * @return
+     */
+    public static RollingHistogram getHistory(Counter counter) {
+        return ourCounterHistory[counter.ordinal()];
+    }
+
+    /**
+     * Get the length of each of the recent frames, in nanoseconds.
+     *
+     * @return
+     */
+    public static RollingHistogram getFrameTimes() {
+        return ourFrameTimes;
+    }
+
+    /**
+     * The number of frames measured since the profiler was enabled or cleared.
+     *
+     * @return
+     */
+    public static int getFrameCount() {
+        return ourFrames;
+    }
+
+    /**
+     * Write a summary of the recent frames to the given file, replacing its contents.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public static void dump(File file) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            dump(out);
+        } finally {
+            out.close();
+        }
+        if (out.checkError())
+            throw new IOException("Couldn't write profile to " + file);
+    }
+
+    /**
+     * Write a summary of the recent frames. Times are in milliseconds.
+     *
+     * @param out
+     */
+    public static synchronized void dump(PrintWriter out) {
+        out.printf("frames: %d (histograms cover the last %d)%n", ourFrames, ourFrameTimes.size());
+        out.printf("%-20s %10s %10s %10s %10s%n", "time (ms)", "p50", "p95", "p99", "max");
+        dumpTimes(out, "frame", ourFrameTimes);
+        for (int i = 0; i < SCOPES.size(); i++)
+            dumpTimes(out, SCOPES.get(i).myName, SCOPES.get(i).myHistory);
+        out.printf("%-20s %10s %10s %10s %10s%n", "count", "p50", "p95", "p99", "max");
+        for (int i = 0; i < COUNTERS.length; i++) {
+            RollingHistogram h = ourCounterHistory[i];
+            out.printf("%-20s %10d %10d %10d %10d%n", COUNTERS[i].name().toLowerCase(),
+                    h.getPercentile(50), h.getPercentile(95), h.getPercentile(99), h.getMax());
+        }
+    }
+
+    private static void dumpTimes(PrintWriter out, String name, RollingHistogram h) {
+        out.printf("%-20s %10.3f %10.3f %10.3f %10.3f%n", name, h.getPercentile(50) / 1e6,
+                h.getPercentile(95) / 1e6, h.getPercentile(99) / 1e6, h.getMax() / 1e6);
+    }
+
+    private static boolean isMeasuring() {
+        return amEnabled && Thread.currentThread() == ourThread;
+    }
+
+    private static void push(Scope scope) {
+        if (ourDepth == ourOpen.length) {
+            Scope[] open = new Scope[ourDepth * 2];
+            System.arraycopy(ourOpen, 0, open, 0, ourDepth);
+            ourOpen = open;
+        }
+        ourOpen[ourDepth++] = scope;
+    }
+
+    private static void pop(Scope scope) {
+        if (ourDepth == 0 || ourOpen[ourDepth - 1] != scope)
+            throw new IllegalStateException("Scope '" + scope.myName
+                    + "' is not the innermost open scope");
+        ourOpen[--ourDepth] = null;
+    }
+
+    private static RollingHistogram[] newHistories(int frames) {
+        RollingHistogram[] histories = new RollingHistogram[COUNTERS.length];
+        for (int i = 0; i < histories.length; i++)
+            histories[i] = new RollingHistogram(frames);
+        return histories;
+    }
+
+    /**
+     * The bytes allocated by the current thread so far, or -1 if the JVM can't tell us.
+     */
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported()
+                    && threads.isThreadAllocatedMemoryEnabled())
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * 
+ */
+package unsw.graphics;
+
+import java.util.Arrays;
+
+/**
+ * The distribution of the most recent values of some measurement, e.g. the last few hundred
+ * frame times.
+ *
+ * Once the histogram is full, each new value replaces the oldest one. Adding values doesn't
+ * allocate, and neither does asking for a percentile.
+ *
+ * @author Benny Hwang
+ *
+ */
+public class RollingHistogram {
+
+    private final long[] values;
+
+    // Scratch space for sorting the values when a percentile is asked for
+    private final long[] sorted;
+
+    // Where the next value goes, and how many values there are
+    private int next;
+    private int size;
+
+    // Whether sorted holds the current values in order
+    private boolean sortedValid;
+
+    /**
+     * Construct an empty histogram.
+     *
+     * @param capacity The number of recent values to keep
+     */
+    public RollingHistogram(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        values = new long[capacity];
+        sorted = new long[capacity];
+    }
+
+    /**
+     * Add a value, forgetting the oldest one if the histogram is full.
+     *
+     * @param value
+     */
+    public void add(long value) {
+        values[next] = value;
+        next = (next + 1) % values.length;
+        if (size < values.length)
+            size++;
+        sortedValid = false;
+    }
+
+    /**
+     * Forget every value.
+     */
+    public void clear() {
+        next = 0;
+        size = 0;
+        sortedValid = false;
+    }
+
+    /**
+     * The number of values in the histogram.
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return values.length;
+    }
+
+    /**
+     * Get the most recently added value.
+     *
+     * @return the value, or 0 if the histogram is empty
+     */
+    public long getLast() {
+        if (size == 0)
+            return 0;
+        return values[(next + values.length - 1) % values.length];
+    }
+
+    /**
+     * Get the value that the given percentage of the values are less than or equal to.
+     *
+     * @param percent A percentage in [0, 100], e.g. 95 for the 95th percentile
+     * @return the value, or 0 if the histogram is empty
+     */
+    public long getPercentile(double percent) {
+        if (percent < 0 || percent > 100)
+            throw new IllegalArgumentException("Not a percentage: " + percent);
+        if (size == 0)
+            return 0;
+        if (!sortedValid) {
+            System.arraycopy(values, 0, sorted, 0, size);
+            Arrays.sort(sorted, 0, size);
+            sortedValid = true;
+        }
+        // The nearest rank
+        int rank = (int) Math.ceil(percent / 100 * size);
+        return sorted[Math.max(rank - 1, 0)];
+    }
+
+    /**
+     * Get the mean of the values.
+     *
+     * @return the mean, or 0 if the histogram is empty
+     */
+    public double getMean() {
+        if (size == 0)
+            return 0;
+        double sum = 0;
+        for (int i = 0; i < size; i++)
+            sum += values[i];
+        return sum / size;
+    }
+
+    /**
+     * Get the largest value.
+     *
+     * @return the value, or 0 if the histogram is empty
+     */
+    public long getMax() {
+        return getPercentile(100);
+    }
+}
@@ -18,6 +18,10 @@ import com.jogamp.opengl.util.glsl.ShaderProgram;
  *   - "in vec2 position"
  *   - "uniform mat3 model_matrix" 
  *
+ * Instanced shaders take the model matrix and pen color from per-instance attributes instead: 
+ *   - "in vec2 instance_axis_i", "in vec2 instance_axis_j", "in vec2 instance_origin"
+ *   - "in vec3 instance_color"
+ *
  * 
  * @author Robert Clifton-Everest
  *
@@ -31,14 +35,54 @@ public class Shader {
      */
     public static final int POSITION = 0;
     
+    /**
+     * The per-instance attributes used by instanced shaders: the i-axis, j-axis and origin of
+     * each instance's model transform, and its color.
+     */
+    public static final int INSTANCE_AXIS_I = 1;
+    public static final int INSTANCE_AXIS_J = 2;
+    public static final int INSTANCE_ORIGIN = 3;
+    public static final int INSTANCE_COLOR = 4;
+    
     //Uniform variables
     
     /**
      * The name of the model matrix input variable.
      */
     public static final String MODEL_MATRIX = "model_matrix";
+    
+    /**
+     * The name of the view matrix input variable.
+     */
+    public static final String VIEW_MATRIX = "view_matrix";
+    
+    /**
+     * The name of the pen color input variable.
+     */
+    public static final String PEN_COLOR = "input_color";
 
     private int id;
+    
+    // Uniform locations, looked up once when the program is linked
+    private int modelLoc;
+    private int viewLoc;
+    private int colorLoc;
+    
+    // The last values uploaded to each uniform, so that redundant uploads can be skipped
+    private final float[] lastModel = new float[9];
+    private final float[] lastView = new float[9];
+    private final float[] lastColor = new float[3];
+    private boolean modelSet, viewSet, colorSet;
+    
+    // The shader most recently passed to use(). Shaders are only used on the GL thread.
+    private static Shader current;
+    
+    // The number of GL calls made by the uniform setters, see getCallCount()
+    private static int callCount;
+    
+    // Scratch space for expanding a matrix before it is uploaded. Only used on the GL thread.
+    private static final float[] MATRIX_SCRATCH = new float[9];
+    private static final float[] COLOR_SCRATCH = new float[3];
 
     /**
      * Construct a shader in the given OpenGL context.
@@ -67,21 +111,49 @@ public class Shader {
             throw new RuntimeException("Invalid shader program");
 
         id = shaderProgram.program();
+        
+        // Attribute locations only take effect when the program is next linked
+        gl.glBindAttribLocation(id, POSITION, "position");
+        gl.glBindAttribLocation(id, INSTANCE_AXIS_I, "instance_axis_i");
+        gl.glBindAttribLocation(id, INSTANCE_AXIS_J, "instance_axis_j");
+        gl.glBindAttribLocation(id, INSTANCE_ORIGIN, "instance_origin");
+        gl.glBindAttribLocation(id, INSTANCE_COLOR, "instance_color");
         shaderProgram.link(gl, System.err);
 
         gl.glEnableVertexAttribArray(POSITION);
-        gl.glBindAttribLocation(id, POSITION, "position");
+        lookupUniforms(gl);
+    }
+    
+    /**
+     * Wrap a program that has already been compiled and linked.
+     * 
+     * @param gl
+     * @param program The ID OpenGL associates with the program
+     */
+    public Shader(GL3 gl, int program) {
+        id = program;
+        lookupUniforms(gl);
+    }
+    
+    private void lookupUniforms(GL3 gl) {
+        modelLoc = gl.glGetUniformLocation(id, MODEL_MATRIX);
+        viewLoc = gl.glGetUniformLocation(id, VIEW_MATRIX);
+        colorLoc = gl.glGetUniformLocation(id, PEN_COLOR);
     }
 
     /**
      * "Use" this shader in the given context.
      * 
-     * This just calls glUseProgram() with this shader.
+     * This calls glUseProgram() with this shader, unless it is already in use. The static 
+     * setters below then update this shader's uniforms.
      * 
      * @param gl
      */
     public void use(GL3 gl) {
-        gl.glUseProgram(id);
+        if (current != this) {
+            gl.glUseProgram(id);
+            current = this;
+        }
     }
 
     /**
@@ -93,6 +165,8 @@ public class Shader {
      */
     public void destroy(GL3 gl) {
         gl.glDeleteProgram(id);
+        if (current == this)
+            current = null;
     }
 
     /**
@@ -103,6 +177,34 @@ public class Shader {
     public int getId() {
         return id;
     }
+    
+    /**
+     * Get the shader most recently passed to use(), or null if there isn't one.
+     * 
+     * @return
+     */
+    public static Shader getCurrent() {
+        return current;
+    }
+    
+    /**
+     * Get the number of GL calls made by setModelMatrix(), setViewMatrix() and setPenColor() since 
+     * the last call to resetCallCount().
+     * 
+     * Uploads of values that a uniform already has are skipped and not counted.
+     * 
+     * @return
+     */
+    public static int getCallCount() {
+        return callCount;
+    }
+    
+    /**
+     * Reset the count returned by getCallCount(), e.g. at the start of each frame.
+     */
+    public static void resetCallCount() {
+        callCount = 0;
+    }
 
     /**
      * Sets the model matrix of the currently loaded shader.
@@ -110,10 +212,31 @@ public class Shader {
      * @param mat
      */
     public static void setModelMatrix(GL3 gl, Matrix3 mat) {
-        int ids[] = new int[1]; 
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int modelLoc = gl.glGetUniformLocation(ids[0], "model_matrix");
-        gl.glUniformMatrix3fv(modelLoc, 1, false, mat.getValues(), 0);
+        mat.getValues(MATRIX_SCRATCH);
+        setModelMatrix(gl, MATRIX_SCRATCH);
+    }
+    
+    /**
+     * Sets the model matrix of the currently loaded shader to the given coordinate frame.
+     * 
+     * The frame's affine transform is only expanded into a full 3x3 matrix here, as it is uploaded.
+     * @param gl
+     * @param frame
+     */
+    public static void setModelMatrix(GL3 gl, CoordFrame2D frame) {
+        frame.getTransform().getValues(MATRIX_SCRATCH);
+        setModelMatrix(gl, MATRIX_SCRATCH);
+    }
+    
+    private static void setModelMatrix(GL3 gl, float[] values) {
+        Shader shader = current;
+        if (shader == null) {
+            uploadMatrix(gl, uniformLocation(gl, MODEL_MATRIX), values);
+        } else if (!shader.modelSet || !sameValues(shader.lastModel, values)) {
+            uploadMatrix(gl, shader.modelLoc, values);
+            System.arraycopy(values, 0, shader.lastModel, 0, 9);
+            shader.modelSet = true;
+        }
     }
     
     /**
@@ -122,10 +245,29 @@ public class Shader {
      * @param mat
      */
     public static void setViewMatrix(GL3 gl, Matrix3 mat) {
-        int ids[] = new int[1]; 
-        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int viewLoc = gl.glGetUniformLocation(ids[0], "view_matrix");
-        gl.glUniformMatrix3fv(viewLoc, 1, false, mat.getValues(), 0);
+        mat.getValues(MATRIX_SCRATCH);
+        setViewMatrix(gl, MATRIX_SCRATCH);
+    }
+    
+    /**
+     * Sets the view matrix of the currently loaded shader to the given coordinate frame.
+     * @param gl
+     * @param frame
+     */
+    public static void setViewMatrix(GL3 gl, CoordFrame2D frame) {
+        frame.getTransform().getValues(MATRIX_SCRATCH);
+        setViewMatrix(gl, MATRIX_SCRATCH);
+    }
+    
+    private static void setViewMatrix(GL3 gl, float[] values) {
+        Shader shader = current;
+        if (shader == null) {
+            uploadMatrix(gl, uniformLocation(gl, VIEW_MATRIX), values);
+        } else if (!shader.viewSet || !sameValues(shader.lastView, values)) {
+            uploadMatrix(gl, shader.viewLoc, values);
+            System.arraycopy(values, 0, shader.lastView, 0, 9);
+            shader.viewSet = true;
+        }
     }
     
     /**
@@ -134,9 +276,49 @@ public class Shader {
      * @param color
      */
     public static void setPenColor(GL3 gl, Color color) {
+        float[] rgb = COLOR_SCRATCH;
+        rgb[0] = color.getRed()/255f;
+        rgb[1] = color.getGreen()/255f;
+        rgb[2] = color.getBlue()/255f;
+        
+        Shader shader = current;
+        if (shader == null) {
+            uploadColor(gl, uniformLocation(gl, PEN_COLOR), rgb);
+        } else if (!shader.colorSet || !sameValues(shader.lastColor, rgb)) {
+            uploadColor(gl, shader.colorLoc, rgb);
+            System.arraycopy(rgb, 0, shader.lastColor, 0, 3);
+            shader.colorSet = true;
+        }
+    }
+    
+    /**
+     * Look up a uniform in whatever program is current. Only needed if the program was made 
+     * current without going through use().
+     */
+    private static int uniformLocation(GL3 gl, String name) {
         int ids[] = new int[1]; 
         gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, ids, 0);
-        int viewLoc = gl.glGetUniformLocation(ids[0], "input_color");
-        gl.glUniform3f(viewLoc, color.getRed()/255f, color.getGreen()/255f, color.getBlue()/255f);
+        callCount += 2;
+        return gl.glGetUniformLocation(ids[0], name);
+    }
+    
+    private static void uploadMatrix(GL3 gl, int location, float[] values) {
+        gl.glUniformMatrix3fv(location, 1, false, values, 0);
+        callCount++;
+        Profiler.count(Profiler.Counter.UNIFORM_SETS);
+    }
+    
+    private static void uploadColor(GL3 gl, int location, float[] rgb) {
+        gl.glUniform3f(location, rgb[0], rgb[1], rgb[2]);
+        callCount++;
+        Profiler.count(Profiler.Counter.UNIFORM_SETS);
+    }
+    
+    private static boolean sameValues(float[] last, float[] values) {
+        for (int i = 0; i < last.length; i++) {
+            if (last[i] != values[i])
+                return false;
+        }
+        return true;
     }
 }
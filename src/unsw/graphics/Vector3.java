@@ -43,6 +43,18 @@ public class Vector3 {
         this.values = new float[] { x, y, z };
     }
     
+    public float getX() {
+        return values[0];
+    }
+
+    public float getY() {
+        return values[1];
+    }
+
+    public float getZ() {
+        return values[2];
+    }
+    
     /**
      * Compute the dot product of this vector with the given vector.
      * @param b
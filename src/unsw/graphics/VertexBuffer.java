@@ -0,0 +1,156 @@
+/**
+ * 
+ */
+package unsw.graphics;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.FloatBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+
+/**
+ * A vertex buffer object (VBO) holding the points of a piece of geometry.
+ *
+ * The buffer is created the first time it is bound and kept between draws. Its contents are only
+ * uploaded again after invalidate() has been called, so static geometry is uploaded to the driver
+ * once rather than every frame.
+ *
+ * Call release() when the geometry is no longer needed. Buffers whose owner is garbage collected
+ * without being released are deleted the next time any buffer is bound.
+ *
+ * @author Benny Hwang
+ *
+ */
+public class VertexBuffer {
+
+    // Buffers that have been created but not yet released, so they can be cleaned up if their
+    // owner is garbage collected
+    private static final ReferenceQueue<VertexBuffer> COLLECTED = new ReferenceQueue<VertexBuffer>();
+    private static final Set<Name> LIVE = new HashSet<Name>();
+
+    private Name name;
+
+    private boolean dirty;
+
+    /**
+     * Construct a new vertex buffer. No OpenGL resources are allocated until it is first bound.
+     */
+    public VertexBuffer() {
+        name = null;
+        dirty = true;
+    }
+
+    /**
+     * Bind this buffer to GL_ARRAY_BUFFER, creating it first if necessary.
+     *
+     * @param gl
+     * @return true if the contents of the buffer need to be uploaded with upload()
+     */
+    public boolean bind(GL3 gl) {
+        deleteCollected(gl);
+        if (name == null) {
+            int[] names = new int[1];
+            gl.glGenBuffers(1, names, 0);
+            name = new Name(this, names[0]);
+            synchronized (LIVE) {
+                LIVE.add(name);
+            }
+            dirty = true;
+        }
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, name.id);
+        return dirty;
+    }
+
+    /**
+     * Upload the given points to this buffer. The buffer must already be bound.
+     *
+     * @param gl
+     * @param points
+     * @param count The number of points to upload
+     */
+    public void upload(GL3 gl, Point2DBuffer points, int count) {
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, count * 2 * Float.BYTES, points.getBuffer(),
+                GL.GL_STATIC_DRAW);
+        dirty = false;
+        Profiler.count(Profiler.Counter.BUFFER_UPLOADS);
+    }
+
+    /**
+     * Upload the first count floats of the given buffer to this buffer. The buffer must already 
+     * be bound.
+     *
+     * @param gl
+     * @param data
+     * @param count The number of floats to upload
+     * @param usage The usage hint, e.g. GL_STATIC_DRAW for data that rarely changes or 
+     * GL_STREAM_DRAW for data that is replaced every frame
+     */
+    public void upload(GL3 gl, FloatBuffer data, int count, int usage) {
+        gl.glBufferData(GL.GL_ARRAY_BUFFER, count * Float.BYTES, data, usage);
+        dirty = false;
+        Profiler.count(Profiler.Counter.BUFFER_UPLOADS);
+    }
+
+    /**
+     * Mark the contents of this buffer as out of date, so they are uploaded again the next time
+     * it is bound.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Delete this buffer. It will be recreated if it is bound again.
+     *
+     * @param gl
+     */
+    public void release(GL3 gl) {
+        if (name != null) {
+            synchronized (LIVE) {
+                LIVE.remove(name);
+            }
+            gl.glDeleteBuffers(1, new int[] { name.id }, 0);
+            name.clear();
+            name = null;
+        }
+        dirty = true;
+    }
+
+    /**
+     * Get the name OpenGL associates with this buffer, or 0 if it has not been created.
+     *
+     * @return
+     */
+    public int getId() {
+        return name == null ? 0 : name.id;
+    }
+
+    private static void deleteCollected(GL3 gl) {
+        Reference<? extends VertexBuffer> ref;
+        while ((ref = COLLECTED.poll()) != null) {
+            Name collected = (Name) ref;
+            synchronized (LIVE) {
+                LIVE.remove(collected);
+            }
+            gl.glDeleteBuffers(1, new int[] { collected.id }, 0);
+        }
+    }
+
+    /**
+     * The OpenGL name of a buffer, which outlives the VertexBuffer so it can be deleted after the
+     * VertexBuffer has been collected.
+     */
+    private static class Name extends PhantomReference<VertexBuffer> {
+        private final int id;
+
+        Name(VertexBuffer buffer, int id) {
+            super(buffer, COLLECTED);
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * 
+ */
+package unsw.graphics.bench;
+
+/**
+ * A piece of code to be timed by BenchmarkRunner.
+ * 
+ * Subclasses do their setting up in setUp(), which isn't timed, and the operation being 
+ * measured in run(). Benchmarks that take parameters, e.g. the size of a scene, are constructed
+ * once for each value so that each shows up separately in the results.
+ * 
+ * @author Benny Hwang
+ *
+ */
+public abstract class Benchmark {
+    
+    private final String myName;
+    
+    /**
+     * Construct a benchmark.
+     * 
+     * @param name The name shown in the results. Parameters should be part of the name, e.g. 
+     * "update objects=1000".
+     */
+    protected Benchmark(String name) {
+        myName = name;
+    }
+    
+    public String getName() {
+        return myName;
+    }
+    
+    /**
+     * Get ready to run, e.g. build the scene the benchmark works on. Called once before the 
+     * benchmark is timed.
+     */
+    public void setUp() {
+        // nothing to set up by default
+    }
+    
+    /**
+     * Do the operation being measured once.
+     * 
+     * @return Anything computed by the operation. The runner holds on to it so that the JIT 
+     * can't decide the work is unused and skip it.
+     */
+    public abstract Object run();
+    
+    /**
+     * Release anything setUp() made. Called once after the benchmark has been timed.
+     */
+    public void tearDown() {
+        // nothing to release by default
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * 
+ */
+package unsw.graphics.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Times benchmarks and compares the results with a recorded baseline.
+ * 
+ * Each benchmark is run repeatedly for a warmup period, so the JIT has compiled it, and then 
+ * timed over several measurement periods. The result is the mean time per operation over the 
+ * measurement periods, along with how much it varied between them.
+ * 
+ * Results can be saved as a baseline, a JSON object of nanoseconds per operation keyed by 
+ * benchmark name. Later runs compared against the baseline report how much faster or slower 
+ * each benchmark has got, and flag the ones that slowed down by more than a tolerance.
+ * 
+ * @author Benny Hwang
+ *
+ */
+public class BenchmarkRunner {
+    
+    /**
+     * The timing of one benchmark.
+     */
+    public static final class Result {
+        private final String myName;
+        private final double myNanosPerOp;
+        private final double myError;
+        
+        public Result(String name, double nanosPerOp, double error) {
+            myName = name;
+            myNanosPerOp = nanosPerOp;
+            myError = error;
+        }
+        
+        public String getName() {
+            return myName;
+        }
+        
+        /**
+         * The mean time per operation, in nanoseconds.
+         * 
+         * @return
+         */
+        public double getNanosPerOp() {
+            return myNanosPerOp;
+        }
+        
+        /**
+         * The standard deviation of the time per operation between measurement periods, in 
+         * nanoseconds.
+         * 
+         * @return
+         */
+        public double getError() {
+            return myError;
+        }
+    }
+    
+    // Operations are timed in batches so the clock isn't read after every one. Batches grow 
+    // until they take at least this long.
+    private static final long MIN_BATCH_NANOS = 100000;
+    
+    private long myWarmupNanos = 1000000000L;
+    private long myMeasureNanos = 1000000000L;
+    private int myIterations = 5;
+    private double myTolerance = 0.1;
+    
+    // Where the results of the operations are kept, see Benchmark.run()
+    private Object mySink;
+    
+    /**
+     * Set how long each benchmark is warmed up for before it is timed.
+     * 
+     * @param millis
+     */
+    public void setWarmupTime(long millis) {
+        myWarmupNanos = millis * 1000000;
+    }
+    
+    /**
+     * Set how long each benchmark is timed for, and how many periods that time is split into.
+     * 
+     * @param millis The length of each period
+     * @param iterations
+     */
+    public void setMeasurement(long millis, int iterations) {
+        if (iterations < 1)
+            throw new IllegalArgumentException("Need at least one iteration: " + iterations);
+        myMeasureNanos = millis * 1000000;
+        myIterations = iterations;
+    }
+    
+    /**
+     * Set how much slower than the baseline a benchmark can get before it is flagged.
+     * 
+     * @param tolerance A fraction of the baseline time, e.g. 0.1 for 10%
+     */
+    public void setTolerance(double tolerance) {
+        myTolerance = tolerance;
+    }
+    
+    /**
+     * Time a benchmark.
+     * 
+     * @param benchmark
+     * @return
+     */
+    public Result run(Benchmark benchmark) {
+        benchmark.setUp();
+        try {
+            long batch = 1;
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < myWarmupNanos) {
+                if (runBatch(benchmark, batch) < MIN_BATCH_NANOS)
+                    batch *= 2;
+            }
+            
+            double[] nanosPerOp = new double[myIterations];
+            for (int i = 0; i < myIterations; i++) {
+                long ops = 0, time = 0;
+                while (time < myMeasureNanos) {
+                    time += runBatch(benchmark, batch);
+                    ops += batch;
+                }
+                nanosPerOp[i] = (double) time / ops;
+            }
+            
+            double mean = 0;
+            for (int i = 0; i < myIterations; i++)
+                mean += nanosPerOp[i];
+            mean /= myIterations;
+            double variance = 0;
+            for (int i = 0; i < myIterations; i++)
+                variance += (nanosPerOp[i] - mean) * (nanosPerOp[i] - mean);
+            double error = myIterations > 1 ? Math.sqrt(variance / (myIterations - 1)) : 0;
+            return new Result(benchmark.getName(), mean, error);
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+    
+    private long runBatch(Benchmark benchmark, long ops) {
+        long start = System.nanoTime();
+        for (long i = 0; i < ops; i++)
+            mySink = benchmark.run();
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * Time each of the given benchmarks, printing the results as they come in.
+     * 
+     * @param benchmarks
+     * @param baseline The baseline to compare with, or null
+     * @param out
+     * @return the results
+     */
+    public List<Result> runAll(List<Benchmark> benchmarks, Map<String, Double> baseline, 
+            PrintStream out) {
+        List<Result> results = new ArrayList<Result>();
+        out.printf("%-40s %14s %12s %10s%n", "benchmark", "ns/op", "error", 
+                baseline == null ? "" : "vs base");
+        for (Benchmark benchmark : benchmarks) {
+            Result result = run(benchmark);
+            results.add(result);
+            String comparison = "";
+            if (baseline != null) {
+                Double base = baseline.get(result.getName());
+                comparison = base == null ? "new" : compare(result.getNanosPerOp(), base);
+            }
+            out.printf("%-40s %14.2f %12.2f %10s%n", result.getName(), result.getNanosPerOp(),
+                    result.getError(), comparison);
+        }
+        return results;
+    }
+    
+    /**
+     * Describe how a time compares with the baseline time, e.g. "+12.0% !" for a benchmark 
+     * that got slower by more than the tolerance.
+     * 
+     * @param nanosPerOp
+     * @param baseline
+     * @return
+     */
+    public String compare(double nanosPerOp, double baseline) {
+        double change = nanosPerOp / baseline - 1;
+        String description = String.format("%+.1f%%", change * 100);
+        if (isRegression(nanosPerOp, baseline))
+            description += " !";
+        return description;
+    }
+    
+    /**
+     * Is the given time slower than the baseline time by more than the tolerance?
+     * 
+     * @param nanosPerOp
+     * @param baseline
+     * @return
+     */
+    public boolean isRegression(double nanosPerOp, double baseline) {
+        return nanosPerOp > baseline * (1 + myTolerance);
+    }
+    
+    /**
+     * Save results as a baseline.
+     * 
+     * @param results
+     * @param file
+     * @throws IOException
+     */
+    public static void saveBaseline(List<Result> results, File file) throws IOException {
+        JSONObject json = new JSONObject();
+        for (Result result : results)
+            json.put(result.getName(), result.getNanosPerOp());
+        Writer out = new FileWriter(file);
+        try {
+            out.write(json.toString(2));
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Load a baseline saved by saveBaseline().
+     * 
+     * @param file
+     * @return the time per operation of each benchmark in the baseline, in nanoseconds
+     * @throws IOException
+     */
+    public static Map<String, Double> loadBaseline(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            JSONObject json = new JSONObject(new JSONTokener(in));
+            Map<String, Double> baseline = new LinkedHashMap<String, Double>();
+            Iterator<?> names = json.keys();
+            while (names.hasNext()) {
+                String name = (String) names.next();
+                baseline.put(name, json.getDouble(name));
+            }
+            return baseline;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,376 @@
+/**
+ * 
+ */
+package unsw.graphics.bench;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.Matrix3;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.scene.SceneObject;
+import unsw.graphics.scene.SceneRegistry;
+import unsw.graphics.scene.TransformStore;
+
+/**
+ * Benchmarks of the engine's maths, transforms, scene tree and collision, and of loading a map.
+ * 
+ * Usage: EngineBenchmarks [--filter text] [--baseline file] [--save file] [--quick]
+ * 
+ * --filter only runs the benchmarks whose names contain the text. --baseline compares the 
+ * results with a baseline recorded earlier with --save. --quick shortens the warmup and 
+ * measurement, for checking the benchmarks run rather than for numbers worth comparing.
+ * 
+ * Run from the project directory, so the sailing map can be found, and with a large heap (e.g.
+ * java -Xmx2g) for the transform propagation benchmarks over a million objects.
+ * 
+ * @author Benny Hwang
+ *
+ */
+public class EngineBenchmarks {
+    
+    private static final int[] DEPTHS = { 1, 8, 32, 128 };
+    private static final int[] SUBTREE_SIZES = { 1, 100 };
+    private static final int[] SCENE_SIZES = { 1000, 10000, 100000 };
+    
+    // Each group in the transform propagation benchmarks is 1011 objects
+    private static final int[] PROPAGATION_GROUPS = { 10, 1000 };
+    private static final int SUBGROUPS = 10;
+    private static final int LEAVES = 99;
+    
+    private static final Polygon2D SQUARE = new Polygon2D(-1,-1, 1,-1, 1,1, -1,1);
+    
+    private static final String MAP_FILE = "res/sailing/map.json";
+
+    /**
+     * Get every benchmark, with each of its parameters.
+     * 
+     * @return
+     */
+    public static List<Benchmark> all() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(matrixMultiply());
+        benchmarks.add(frameChain());
+        benchmarks.add(frameChainInPlace());
+        for (int depth : DEPTHS)
+            benchmarks.add(globalPosition(depth));
+        for (int size : SUBTREE_SIZES)
+            benchmarks.add(setParent(size));
+        benchmarks.add(polygonCollision());
+        for (int size : SCENE_SIZES)
+            benchmarks.add(sceneUpdate(size));
+        for (int groups : PROPAGATION_GROUPS) {
+            benchmarks.add(graphPropagation(groups));
+            benchmarks.add(storePropagation(groups));
+        }
+        benchmarks.add(mapRead());
+        return benchmarks;
+    }
+    
+    private static Benchmark matrixMultiply() {
+        return new Benchmark("Matrix3.multiply") {
+            private final Matrix3 a = Matrix3.translation(1, 2).multiply(Matrix3.rotation(30));
+            private final Matrix3 b = Matrix3.scale(2, 3);
+            
+            @Override
+            public Object run() {
+                return a.multiply(b);
+            }
+        };
+    }
+    
+    private static Benchmark frameChain() {
+        return new Benchmark("CoordFrame2D chain") {
+            @Override
+            public Object run() {
+                return CoordFrame2D.identity().translate(1, 2).rotate(30).scale(2, 2);
+            }
+        };
+    }
+    
+    private static Benchmark frameChainInPlace() {
+        return new Benchmark("CoordFrame2D chain in place") {
+            private final CoordFrame2D base = CoordFrame2D.identity();
+            private final CoordFrame2D frame = new CoordFrame2D();
+            
+            @Override
+            public Object run() {
+                return frame.set(base).translateInPlace(1, 2).rotateInPlace(30)
+                        .scaleInPlace(2, 2);
+            }
+        };
+    }
+    
+    /**
+     * The position of the bottom of a chain of objects, after the top of the chain has moved.
+     */
+    private static Benchmark globalPosition(final int depth) {
+        return new Benchmark("getGlobalPosition depth=" + depth) {
+            private SceneObject top, bottom;
+            
+            @Override
+            public void setUp() {
+                Scene scene = new Scene();
+                top = new SceneObject(scene.getRoot());
+                bottom = top;
+                for (int i = 1; i < depth; i++) {
+                    bottom = new SceneObject(bottom);
+                    bottom.translate(1, 0);
+                    bottom.rotate(5);
+                }
+            }
+            
+            @Override
+            public Object run() {
+                top.rotate(1);
+                return bottom.getGlobalPosition();
+            }
+        };
+    }
+    
+    /**
+     * Moving a subtree back and forth between two parents.
+     */
+    private static Benchmark setParent(final int size) {
+        return new Benchmark("setParent subtree=" + size) {
+            private SceneObject a, b, subtree;
+            
+            @Override
+            public void setUp() {
+                Scene scene = new Scene();
+                a = new SceneObject(scene.getRoot());
+                a.translate(5, 0);
+                b = new SceneObject(scene.getRoot());
+                b.rotate(90);
+                subtree = new PolygonalSceneObject(a, SQUARE, Color.WHITE, null);
+                for (int i = 1; i < size; i++)
+                    new PolygonalSceneObject(subtree, SQUARE, Color.WHITE, null).translate(i, 0);
+            }
+            
+            @Override
+            public Object run() {
+                subtree.setParent(subtree.getParent() == a ? b : a);
+                return subtree;
+            }
+        };
+    }
+    
+    /**
+     * Testing points alternately inside and outside a transformed polygon.
+     */
+    private static Benchmark polygonCollision() {
+        return new Benchmark("PolygonalSceneObject.collision") {
+            private PolygonalSceneObject polygon;
+            private final Point2D inside = new Point2D(3, 4);
+            private final Point2D outside = new Point2D(-3, 4);
+            private boolean flip;
+            
+            @Override
+            public void setUp() {
+                Scene scene = new Scene();
+                SceneObject parent = new SceneObject(scene.getRoot());
+                parent.translate(3, 3);
+                parent.rotate(45);
+                polygon = new PolygonalSceneObject(parent, SQUARE, Color.WHITE, null);
+                polygon.scale(2);
+            }
+            
+            @Override
+            public Object run() {
+                flip = !flip;
+                return polygon.collision(flip ? inside : outside);
+            }
+        };
+    }
+    
+    /**
+     * A whole update of a scene of moving objects, in groups of ten.
+     */
+    private static Benchmark sceneUpdate(final int size) {
+        return new Benchmark("Scene.update objects=" + size) {
+            private Scene scene;
+            
+            @Override
+            public void setUp() {
+                scene = new Scene();
+                SceneObject group = null;
+                for (int i = 0; i < size; i++) {
+                    if (i % 10 == 0) {
+                        group = new SceneObject(scene.getRoot());
+                        group.translate(i % 1000, i / 1000);
+                    }
+                    new PolygonalSceneObject(group, SQUARE, Color.WHITE, null) {
+                        @Override
+                        public void updateSelf(float dt) {
+                            rotate(90 * dt);
+                        }
+                    }.translate(i % 10 * 3, 0);
+                }
+            }
+            
+            @Override
+            public Object run() {
+                scene.update(1 / 60f);
+                return scene;
+            }
+        };
+    }
+    
+    /**
+     * Recomputing every world transform in the scene through the objects' own cached transforms,
+     * after rotating every top-level group so they are all out of date.
+     */
+    private static Benchmark graphPropagation(final int groups) {
+        return new Benchmark("world transforms graph objects=" + propagationSize(groups)) {
+            private Scene scene;
+            private SceneRegistry registry;
+            
+            @Override
+            public void setUp() {
+                scene = propagationScene(groups);
+                registry = scene.getRegistry();
+            }
+            
+            @Override
+            public Object run() {
+                rotateGroups(scene);
+                float sum = 0;
+                for (int i = 0; i < registry.size(); i++)
+                    sum += registry.get(i).getGlobalTransform().getOriginX();
+                return sum;
+            }
+            
+            @Override
+            public void tearDown() {
+                scene = null;
+                registry = null;
+            }
+        };
+    }
+    
+    /**
+     * The same as graphPropagation(), but recomputing them in one sweep through a TransformStore.
+     */
+    private static Benchmark storePropagation(final int groups) {
+        return new Benchmark("world transforms store objects=" + propagationSize(groups)) {
+            private Scene scene;
+            private TransformStore store;
+            
+            @Override
+            public void setUp() {
+                scene = propagationScene(groups);
+                store = scene.getTransformStore();
+                store.update();
+            }
+            
+            @Override
+            public Object run() {
+                rotateGroups(scene);
+                store.update();
+                float sum = 0;
+                for (int i = 0; i < store.size(); i++)
+                    sum += store.getWorldX(i);
+                return sum;
+            }
+            
+            @Override
+            public void tearDown() {
+                scene = null;
+                store = null;
+            }
+        };
+    }
+    
+    private static int propagationSize(int groups) {
+        return 1 + groups * (1 + SUBGROUPS * (1 + LEAVES));
+    }
+    
+    private static Scene propagationScene(int groups) {
+        Scene scene = new Scene();
+        for (int i = 0; i < groups; i++) {
+            SceneObject group = new SceneObject(scene.getRoot());
+            group.translate(i, 0);
+            for (int j = 0; j < SUBGROUPS; j++) {
+                SceneObject subgroup = new SceneObject(group);
+                subgroup.rotate(j);
+                for (int k = 0; k < LEAVES; k++) {
+                    new SceneObject(subgroup).translate(k, 1);
+                }
+            }
+        }
+        return scene;
+    }
+    
+    private static void rotateGroups(Scene scene) {
+        List<SceneObject> groups = scene.getRoot().getChildren();
+        for (int i = 0; i < groups.size(); i++)
+            groups.get(i).rotate(1);
+    }
+    
+    /**
+     * Parsing the sailing game's map and building the scene from it.
+     */
+    private static Benchmark mapRead() {
+        return new Benchmark("Map.read") {
+            private byte[] json;
+            
+            @Override
+            public void setUp() {
+                try {
+                    json = Files.readAllBytes(new File(MAP_FILE).toPath());
+                } catch (IOException e) {
+                    throw new RuntimeException("Couldn't read " + MAP_FILE 
+                            + ", run from the project directory", e);
+                }
+            }
+            
+            @Override
+            public Object run() {
+                return unsw.graphics.examples.sailing.Map.read(new Scene(), 
+                        new ByteArrayInputStream(json));
+            }
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        String filter = null;
+        File baselineFile = null, saveFile = null;
+        BenchmarkRunner runner = new BenchmarkRunner();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--filter") && i + 1 < args.length) {
+                filter = args[++i];
+            } else if (args[i].equals("--baseline") && i + 1 < args.length) {
+                baselineFile = new File(args[++i]);
+            } else if (args[i].equals("--save") && i + 1 < args.length) {
+                saveFile = new File(args[++i]);
+            } else if (args[i].equals("--quick")) {
+                runner.setWarmupTime(50);
+                runner.setMeasurement(50, 2);
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (Benchmark benchmark : all()) {
+            if (filter == null || benchmark.getName().contains(filter))
+                benchmarks.add(benchmark);
+        }
+        Map<String, Double> baseline = baselineFile == null ? null 
+                : BenchmarkRunner.loadBaseline(baselineFile);
+        
+        List<BenchmarkRunner.Result> results = runner.runAll(benchmarks, baseline, System.out);
+        if (saveFile != null)
+            BenchmarkRunner.saveBaseline(results, saveFile);
+    }
+}
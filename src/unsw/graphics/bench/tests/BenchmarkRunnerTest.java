@@ -0,0 +1,72 @@
+package unsw.graphics.bench.tests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.bench.Benchmark;
+import unsw.graphics.bench.BenchmarkRunner;
+import unsw.graphics.bench.BenchmarkRunner.Result;
+
+/**
+ * Checks that benchmarks are timed and compared with baselines.
+ *
+ * @author Benny Hwang
+ */
+public class BenchmarkRunnerTest extends TestCase {
+
+    @Test
+    public void testRun() {
+        final int[] setUps = new int[1];
+        Benchmark benchmark = new Benchmark("sum") {
+            @Override
+            public void setUp() {
+                setUps[0]++;
+            }
+            
+            @Override
+            public Object run() {
+                int sum = 0;
+                for (int i = 0; i < 100; i++)
+                    sum += i;
+                return sum;
+            }
+        };
+        
+        BenchmarkRunner runner = new BenchmarkRunner();
+        runner.setWarmupTime(10);
+        runner.setMeasurement(10, 2);
+        Result result = runner.run(benchmark);
+        assertEquals("sum", result.getName());
+        assertTrue(result.getNanosPerOp() > 0);
+        assertEquals(1, setUps[0]);
+    }
+    
+    @Test
+    public void testBaseline() throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        runner.setTolerance(0.1);
+        assertFalse(runner.isRegression(105, 100));
+        assertTrue(runner.isRegression(120, 100));
+        assertEquals("+20.0% !", runner.compare(120, 100));
+        assertEquals("-50.0%", runner.compare(50, 100));
+        
+        List<Result> results = new ArrayList<Result>();
+        results.add(new Result("a", 12.5, 1));
+        results.add(new Result("b c=10", 1000, 3));
+        File file = File.createTempFile("baseline", ".json");
+        try {
+            BenchmarkRunner.saveBaseline(results, file);
+            Map<String, Double> baseline = BenchmarkRunner.loadBaseline(file);
+            assertEquals(2, baseline.size());
+            assertEquals(12.5, baseline.get("a"), 0.001);
+            assertEquals(1000, baseline.get("b c=10"), 0.001);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -19,6 +19,9 @@ public class CannonBall extends PolygonalSceneObject {
     private static final Color LINE_COLOR = Color.BLACK;
     private static final Color FILL_COLOR = new Color(0.1f, 0.1f, 0.1f, 1.0f);
     private static final int POINTS = 8;
+    
+    // Every ball is the same shape, so they can all be drawn together
+    private static final Polygon2D POLYGON = makePolygon();
 
     private static final float LIFETIME = 1.0f;
     private static final float SPEED = 10.0f;
@@ -27,7 +30,7 @@ public class CannonBall extends PolygonalSceneObject {
     private Point2D myMomentum;
     
     public CannonBall(SceneObject parent, float x, float y, float angle, float scale) {
-        super(parent, makePolygon(), FILL_COLOR, LINE_COLOR);
+        super(parent, POLYGON, FILL_COLOR, LINE_COLOR);
         
         setPosition(x, y);
         setRotation(angle);
@@ -4,6 +4,7 @@ import com.jogamp.newt.Window;
 import com.jogamp.newt.event.MouseAdapter;
 import com.jogamp.newt.event.MouseEvent;
 
+import unsw.graphics.Profiler;
 import unsw.graphics.geometry.Point2D;
 import unsw.graphics.scene.Camera;
 
@@ -29,6 +30,8 @@ public class Mouse extends MouseAdapter {
 
     public static final Mouse theMouse = new Mouse();
     
+    private static final Profiler.Scope INPUT = Profiler.scope("input");
+    
     private MouseEvent lastEvent;
     /**
      * The position of the mouse in world coordinates
@@ -67,17 +70,22 @@ public class Mouse extends MouseAdapter {
      * @param gl
      */
     public void update(Camera camera, Window window) {
-        if (lastEvent != null) {
-            float x = 2f*lastEvent.getX()/window.getSurfaceWidth() - 1f;
-            float y = -2f*lastEvent.getY()/window.getSurfaceHeight() + 1f;
-            myPosition = camera.fromView(x, y);
-        }
-        
-        for (int i = 0; i < 3; i++) {
-            myWasPressed[i] = myPressed[i];
-            myWasReleased[i] = myReleased[i];
-            myPressed[i] = false;
-            myReleased[i] = false;            
+        INPUT.begin();
+        try {
+            if (lastEvent != null) {
+                float x = 2f*lastEvent.getX()/window.getSurfaceWidth() - 1f;
+                float y = -2f*lastEvent.getY()/window.getSurfaceHeight() + 1f;
+                myPosition = camera.fromView(x, y);
+            }
+            
+            for (int i = 0; i < 3; i++) {
+                myWasPressed[i] = myPressed[i];
+                myWasReleased[i] = myReleased[i];
+                myPressed[i] = false;
+                myReleased[i] = false;            
+            }
+        } finally {
+            INPUT.end();
         }
     }
 
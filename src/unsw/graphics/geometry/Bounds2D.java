@@ -0,0 +1,175 @@
+/**
+ * 
+ */
+package unsw.graphics.geometry;
+
+import unsw.graphics.Affine2D;
+
+/**
+ * An axis-aligned bounding box in 2D space.
+ *
+ * This class is mutable, so that bounds can be recomputed without allocating. A newly constructed
+ * box is empty, i.e. it contains no points.
+ *
+ * @author Benny Hwang
+ *
+ */
+public class Bounds2D {
+    private float minX, minY, maxX, maxY;
+
+    /**
+     * Construct an empty bounding box.
+     */
+    public Bounds2D() {
+        setEmpty();
+    }
+
+    /**
+     * Construct a bounding box with the given corners.
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     */
+    public Bounds2D(float minX, float minY, float maxX, float maxY) {
+        set(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Make this box empty.
+     * @return this box
+     */
+    public Bounds2D setEmpty() {
+        minX = minY = Float.POSITIVE_INFINITY;
+        maxX = maxY = Float.NEGATIVE_INFINITY;
+        return this;
+    }
+
+    /**
+     * Make this box infinite, so that it contains every point.
+     * @return this box
+     */
+    public Bounds2D setInfinite() {
+        minX = minY = Float.NEGATIVE_INFINITY;
+        maxX = maxY = Float.POSITIVE_INFINITY;
+        return this;
+    }
+
+    /**
+     * Set the corners of this box.
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     * @return this box
+     */
+    public Bounds2D set(float minX, float minY, float maxX, float maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        return this;
+    }
+
+    /**
+     * Make this box a copy of the given box.
+     * @param b
+     * @return this box
+     */
+    public Bounds2D set(Bounds2D b) {
+        return set(b.minX, b.minY, b.maxX, b.maxY);
+    }
+
+    /**
+     * Grow this box to contain the point (x, y).
+     * @param x
+     * @param y
+     * @return this box
+     */
+    public Bounds2D add(float x, float y) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+        return this;
+    }
+
+    /**
+     * Grow this box to contain the given box.
+     * @param b
+     * @return this box
+     */
+    public Bounds2D add(Bounds2D b) {
+        if (!b.isEmpty()) {
+            add(b.minX, b.minY);
+            add(b.maxX, b.maxY);
+        }
+        return this;
+    }
+
+    /**
+     * Set this box to the bounds of the given box after it has been transformed.
+     * @param b A box in the source coordinate frame
+     * @param t The transform to apply
+     * @return this box
+     */
+    public Bounds2D setTransformed(Bounds2D b, Affine2D t) {
+        if (b.isEmpty())
+            return setEmpty();
+        float x0 = b.minX, y0 = b.minY, x1 = b.maxX, y1 = b.maxY;
+        setEmpty();
+        add(t.transformX(x0, y0), t.transformY(x0, y0));
+        add(t.transformX(x1, y0), t.transformY(x1, y0));
+        add(t.transformX(x1, y1), t.transformY(x1, y1));
+        add(t.transformX(x0, y1), t.transformY(x0, y1));
+        return this;
+    }
+
+    /**
+     * Is this box empty?
+     * @return
+     */
+    public boolean isEmpty() {
+        return minX > maxX || minY > maxY;
+    }
+
+    /**
+     * Does this box contain the point (x, y)? Points on the edge are contained.
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean contains(float x, float y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * Does this box overlap the given box? Boxes that share an edge overlap.
+     * @param b
+     * @return
+     */
+    public boolean intersects(Bounds2D b) {
+        return minX <= b.maxX && b.minX <= maxX && minY <= b.maxY && b.minY <= maxY;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + minX + ", " + minY + "] - [" + maxX + ", " + maxY + "]";
+    }
+}
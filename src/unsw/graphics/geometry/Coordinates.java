@@ -0,0 +1,63 @@
+/**
+ * 
+ */
+package unsw.graphics.geometry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers for the geometry classes that store their points as packed x-y coordinates, i.e. 
+ * x0, y0, x1, y1...
+ * 
+ * @author Benny Hwang
+ *
+ */
+final class Coordinates {
+    
+    private Coordinates() {
+    }
+    
+    /**
+     * Pack a list of points into an array of coordinates.
+     * 
+     * @param points
+     * @return
+     */
+    static float[] pack(List<Point2D> points) {
+        float[] coords = new float[points.size() * 2];
+        for (int i = 0; i < points.size(); i++) {
+            Point2D p = points.get(i);
+            coords[2*i] = p.getX();
+            coords[2*i + 1] = p.getY();
+        }
+        return coords;
+    }
+    
+    /**
+     * Check that an array holds whole points.
+     * 
+     * @param values
+     * @return values
+     */
+    static float[] check(float[] values) {
+        if (values.length % 2 != 0)
+            throw new IllegalArgumentException("Odd number of arguments");
+        return values;
+    }
+    
+    /**
+     * Unpack the first count points of an array into a list that can't be modified.
+     * 
+     * @param coords
+     * @param count
+     * @return
+     */
+    static List<Point2D> unpack(float[] coords, int count) {
+        List<Point2D> points = new ArrayList<Point2D>(count);
+        for (int i = 0; i < count; i++)
+            points.add(new Point2D(coords[2*i], coords[2*i + 1]));
+        return Collections.unmodifiableList(points);
+    }
+}
@@ -8,7 +8,9 @@ import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
 import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Profiler;
 import unsw.graphics.Shader;
+import unsw.graphics.VertexBuffer;
 
 /**
  * A line in 2D space.
@@ -19,6 +21,9 @@ import unsw.graphics.Shader;
  */
 public class Line2D {
     private Point2D start, end;
+    
+    // The end points are uploaded to the GPU the first time the line is drawn
+    private final VertexBuffer buffer = new VertexBuffer();
 
     /** 
      * Construct a line from 'start' to 'end'
@@ -54,20 +59,35 @@ public class Line2D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame2D frame) {
-        Point2DBuffer buffer = new Point2DBuffer(2);
-        buffer.put(0, start);
-        buffer.put(1, end);
-        
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, 2*2*Float.BYTES, buffer.getBuffer(), GL.GL_STATIC_DRAW);
+        bind(gl);
+        Shader.setModelMatrix(gl, frame);
+        drawBound(gl);
+    }
+    
+    /**
+     * Bind the buffer holding the end points, uploading them first if needed, and point the 
+     * position attribute at it.
+     * @param gl
+     */
+    public void bind(GL3 gl) {
+        if (buffer.bind(gl)) {
+            Point2DBuffer points = Point2DBuffer.scratch(2);
+            points.put(start.getX(), start.getY());
+            points.put(end.getX(), end.getY());
+            buffer.upload(gl, points, 2);
+        }
         
         gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
-        Shader.setModelMatrix(gl, frame.getMatrix());
+    }
+    
+    /**
+     * Draw the line with whatever model matrix is already set. It must have been bound with 
+     * bind(), and nothing else bound since.
+     * @param gl
+     */
+    public void drawBound(GL3 gl) {
         gl.glDrawArrays(GL.GL_LINES, 0, 2);
-        
-        gl.glDeleteBuffers(1, names, 0);
+        Profiler.count(Profiler.Counter.DRAW_CALLS);
     }
     
     /**
@@ -77,4 +97,14 @@ public class Line2D {
     public void draw(GL3 gl) {
         draw(gl, CoordFrame2D.identity());
     }
+
+    /**
+     * Release the OpenGL buffer holding this line.
+     * 
+     * It is recreated if the line is drawn again.
+     * @param gl
+     */
+    public void release(GL3 gl) {
+        buffer.release(gl);
+    }
 }
@@ -3,7 +3,7 @@
  */
 package unsw.graphics.geometry;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 
 import com.jogamp.opengl.GL;
@@ -11,7 +11,9 @@ import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
 import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Profiler;
 import unsw.graphics.Shader;
+import unsw.graphics.VertexBuffer;
 
 /**
  * A line strip in 2D space.
@@ -19,16 +21,38 @@ import unsw.graphics.Shader;
  * In a line strip, a series of points are joined with a line between each
  * adjacent pair.
  * 
- * This class is mutable, as new points can be added to the end of the strip.
+ * This class is mutable, as new points can be added to the end of the strip. The points are 
+ * stored packed into an array of coordinates, which grows as points are added.
  * 
  * @author Robert Clifton-Everest
  *
  */
 public class LineStrip2D {
-    private List<Point2D> points;
+    // x0, y0, x1, y1... with room for more points at the end
+    private float[] coords;
+    private int count;
+    
+    // A view of the points, for getPoints()
+    private final List<Point2D> points = new AbstractList<Point2D>() {
+        @Override
+        public Point2D get(int index) {
+            if (index < 0 || index >= count)
+                throw new IndexOutOfBoundsException("index: " + index + ", size: " + count);
+            return new Point2D(coords[2*index], coords[2*index + 1]);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    };
+    
+    // Uploaded to the GPU when the strip is drawn, and again after points are added
+    private final VertexBuffer buffer = new VertexBuffer();
 
     public LineStrip2D() {
-        points = new ArrayList<Point2D>();
+        coords = new float[16];
+        count = 0;
     }
     
     /**
@@ -36,7 +60,8 @@ public class LineStrip2D {
      * @param points
      */
     public LineStrip2D(List<Point2D> points) {
-        this.points = new ArrayList<Point2D>(points);
+        coords = Coordinates.pack(points);
+        count = points.size();
     }
     
     /**
@@ -48,16 +73,13 @@ public class LineStrip2D {
      * 
      * creates a line strip going from (0,0) to (1,0) to (1,1).
      * 
+     * An array passed in is used as it is, not copied, so it must not be changed afterwards.
+     * 
      * @param values
      */
     public LineStrip2D(float... values) {
-        if (values.length % 2 != 0)
-            throw new IllegalArgumentException("Odd number of arguments");
-        List<Point2D> points = new ArrayList<Point2D>();
-        for (int i = 0; i < values.length / 2; i++) {
-            points.add(new Point2D(values[2*i], values[2*i + 1]));
-        }
-        this.points = points;
+        coords = Coordinates.check(values);
+        count = values.length / 2;
     }
 
     /**
@@ -65,19 +87,13 @@ public class LineStrip2D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame2D frame) {
-        Point2DBuffer buffer = new Point2DBuffer(points);
-
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 2 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
+        if (buffer.bind(gl))
+            upload(gl);
 
         gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
-        Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL.GL_LINE_STRIP, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
+        Shader.setModelMatrix(gl, frame);
+        gl.glDrawArrays(GL.GL_LINE_STRIP, 0, count);
+        Profiler.count(Profiler.Counter.DRAW_CALLS);
     }
     
     /**
@@ -89,14 +105,75 @@ public class LineStrip2D {
     }
 
     public void add(Point2D p) {
-        points.add(p);
+        add(p.getX(), p.getY());
+    }
+    
+    /**
+     * Add a point to the end of the strip.
+     * @param x
+     * @param y
+     */
+    public void add(float x, float y) {
+        if (2 * count == coords.length) {
+            float[] grown = new float[Math.max(16, coords.length * 2)];
+            System.arraycopy(coords, 0, grown, 0, 2 * count);
+            coords = grown;
+        }
+        coords[2 * count] = x;
+        coords[2 * count + 1] = y;
+        count++;
+        buffer.invalidate();
     }
 
     public Point2D getLast() {
-        return points.get(points.size() - 1);
+        return points.get(count - 1);
+    }
+    
+    /**
+     * The number of points in the strip.
+     * @return
+     */
+    public int size() {
+        return count;
+    }
+    
+    public float getX(int i) {
+        return coords[2*i];
+    }
+    
+    public float getY(int i) {
+        return coords[2*i + 1];
     }
 
+    /**
+     * Get the points in this strip. The list cannot be modified, use add() instead.
+     * 
+     * The list is a view, so it includes points added later. Each point is made as it is read,
+     * so code that runs often should use size(), getX() and getY() instead.
+     * @return
+     */
     public List<Point2D> getPoints() {
         return points;
     }
+
+    /**
+     * Upload the points of this strip to its bound buffer, filling the thread's scratch buffer
+     * rather than a new one.
+     * @param gl
+     */
+    private void upload(GL3 gl) {
+        Point2DBuffer data = Point2DBuffer.scratch(count);
+        data.put(coords, 0, 2 * count);
+        buffer.upload(gl, data, count);
+    }
+
+    /**
+     * Release the OpenGL buffer holding this line strip.
+     * 
+     * It is recreated if the strip is drawn again.
+     * @param gl
+     */
+    public void release(GL3 gl) {
+        buffer.release(gl);
+    }
 }
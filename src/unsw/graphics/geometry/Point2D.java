@@ -5,8 +5,10 @@ import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
 import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Profiler;
 import unsw.graphics.Shader;
 import unsw.graphics.Vector3;
+import unsw.graphics.VertexBuffer;
 
 /**
  * A point in 2D space.
@@ -18,6 +20,10 @@ import unsw.graphics.Vector3;
  */
 public class Point2D {
     private float x, y;
+    
+    // Shared by all points when drawing. Only used on the GL thread.
+    private static final VertexBuffer ORIGIN = new VertexBuffer();
+    private static final CoordFrame2D POINT_FRAME = new CoordFrame2D();
 
     /**
      * Construct a point from the given x and y coordinates.
@@ -39,21 +45,18 @@ public class Point2D {
      * @param frame
      */
     public void draw(GL3 gl, CoordFrame2D frame) {
-        Point2DBuffer buffer = new Point2DBuffer(1);
-        buffer.put(0, this);
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, 2 * Float.BYTES, buffer.getBuffer(),
-                GL.GL_STATIC_DRAW);
+        // All points share one buffer holding the origin, and are moved into place with the model 
+        // matrix, so drawing a point never uploads any vertices after the first time.
+        if (ORIGIN.bind(gl)) {
+            Point2DBuffer buffer = Point2DBuffer.scratch(1);
+            buffer.put(0, 0);
+            ORIGIN.upload(gl, buffer, 1);
+        }
 
         gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
-        Shader.setModelMatrix(gl, frame.getMatrix());
+        Shader.setModelMatrix(gl, POINT_FRAME.set(frame).translateInPlace(x, y));
         gl.glDrawArrays(GL.GL_POINTS, 0, 1);
-
-        gl.glDeleteBuffers(1, names, 0);
+        Profiler.count(Profiler.Counter.DRAW_CALLS);
     }
     
     /**
@@ -67,6 +70,16 @@ public class Point2D {
         draw(gl, CoordFrame2D.identity());
     }
 
+    /**
+     * Release the OpenGL buffer shared by all points for drawing.
+     * 
+     * It is recreated if a point is drawn again.
+     * @param gl
+     */
+    public static void releaseBuffer(GL3 gl) {
+        ORIGIN.release(gl);
+    }
+
     public float getX() {
         return x;
     }
@@ -3,7 +3,6 @@
  */
 package unsw.graphics.geometry;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.jogamp.opengl.GL;
@@ -11,21 +10,38 @@ import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
 import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Profiler;
 import unsw.graphics.Shader;
+import unsw.graphics.VertexBuffer;
 
 /**
  * A convex polygon in 2D space.
  * 
- * This class is immutable.
+ * This class is immutable. The vertices are stored packed into an array of coordinates, which
+ * can be read without allocating through size(), getX() and getY().
  * 
  * @author Robert Clifton-Everest
  *
  */
 public class Polygon2D {
+    // x0, y0, x1, y1...
+    private final float[] coords;
+    
+    // The vertices as points, made the first time getPoints() is called
     private List<Point2D> points;
+    
+    // The points are uploaded to the GPU the first time the polygon is drawn
+    private final VertexBuffer buffer = new VertexBuffer();
+    
+    // Computed the first time it is needed
+    private Bounds2D bounds;
+    
+    // The edges for point-in-polygon tests, made the first time one is done. Edge i runs from 
+    // vertex i-1 to vertex i and is stored as yi, yi-1, xi, and the change in x per unit y.
+    private float[] edges;
 
     public Polygon2D(List<Point2D> points) {
-        this.points = new ArrayList<Point2D>(points);
+        this.coords = Coordinates.pack(points);
     }
     
     /**
@@ -37,16 +53,12 @@ public class Polygon2D {
      * 
      * creates a polygon with vertices (0,0), (1,0), (1,1), (-1,1).
      * 
+     * An array passed in is used as it is, not copied, so it must not be changed afterwards.
+     * 
      * @param values
      */
     public Polygon2D(float... values) {
-        if (values.length % 2 != 0)
-            throw new IllegalArgumentException("Odd number of arguments");
-        List<Point2D> points = new ArrayList<Point2D>();
-        for (int i = 0; i < values.length / 2; i++) {
-            points.add(new Point2D(values[2*i], values[2*i + 1]));
-        }
-        this.points = points;
+        this.coords = Coordinates.check(values);
     }
 
     /**
@@ -54,40 +66,191 @@ public class Polygon2D {
      * @param gl
      */
     public void draw(GL3 gl, CoordFrame2D frame) {
-        Point2DBuffer buffer = new Point2DBuffer(points);
-
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 2 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
-
-        gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
-        Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL.GL_TRIANGLE_FAN, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
+        bind(gl);
+        Shader.setModelMatrix(gl, frame);
+        drawBound(gl, false);
     }
     
     public void drawOutline(GL3 gl, CoordFrame2D frame) {
         // TODO: You need to write this method.
         // It should draw an outline of a polygon using GL_LINE_LOOP
-    	Point2DBuffer buffer = new Point2DBuffer(points);
-
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 2 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
+        bind(gl);
+        Shader.setModelMatrix(gl, frame);
+        drawBound(gl, true);
+    }
+    
+    /**
+     * Bind the buffer holding this polygon's points, uploading them first if needed, and point
+     * the position attribute at it. The polygon can then be drawn any number of times with 
+     * drawBound() without binding it again.
+     * @param gl
+     */
+    public void bind(GL3 gl) {
+        if (buffer.bind(gl))
+            upload(gl);
 
         gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
-        Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL.GL_LINE_LOOP, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
     }
     
+    /**
+     * Draw the polygon with whatever model matrix is already set. It must have been bound with 
+     * bind(), and nothing else bound since.
+     * @param gl
+     * @param outline true to draw the outline, false to fill it
+     */
+    public void drawBound(GL3 gl, boolean outline) {
+        gl.glDrawArrays(outline ? GL.GL_LINE_LOOP : GL.GL_TRIANGLE_FAN, 0, size());
+        Profiler.count(Profiler.Counter.DRAW_CALLS);
+    }
+    
+    /**
+     * Draw many filled copies of the polygon with a single instanced draw call. The per-instance
+     * attributes of the current shader must already be set up.
+     * @param gl
+     * @param instances The number of copies
+     */
+    public void drawInstances(GL3 gl, int instances) {
+        drawInstances(gl, GL.GL_TRIANGLE_FAN, instances);
+    }
+    
+    /**
+     * Draw many outlined copies of the polygon with a single instanced draw call. The 
+     * per-instance attributes of the current shader must already be set up.
+     * @param gl
+     * @param instances The number of copies
+     */
+    public void drawOutlineInstances(GL3 gl, int instances) {
+        drawInstances(gl, GL.GL_LINE_LOOP, instances);
+    }
+    
+    private void drawInstances(GL3 gl, int mode, int instances) {
+        bind(gl);
+        gl.glDrawArraysInstanced(mode, 0, size(), instances);
+        Profiler.count(Profiler.Counter.DRAW_CALLS);
+    }
+    
+    /**
+     * Get the bounding box of this polygon.
+     * @param dest The box to store the bounds in
+     * @return dest
+     */
+    public Bounds2D getBounds(Bounds2D dest) {
+        return dest.set(bounds());
+    }
+    
+    private Bounds2D bounds() {
+        if (bounds == null) {
+            Bounds2D b = new Bounds2D();
+            for (int i = 0; i < coords.length; i += 2)
+                b.add(coords[i], coords[i + 1]);
+            bounds = b;
+        }
+        return bounds;
+    }
+    
+    private float[] edges() {
+        if (edges == null) {
+            int n = size();
+            float[] e = new float[4 * n];
+            for (int i = 0, j = n - 1; i < n; j = i++) {
+                float xi = coords[2*i], yi = coords[2*i + 1];
+                float xj = coords[2*j], yj = coords[2*j + 1];
+                e[4*i] = yi;
+                e[4*i + 1] = yj;
+                e[4*i + 2] = xi;
+                // Horizontal edges never straddle a point, so their slope is never used
+                e[4*i + 3] = (xj - xi) / (yj - yi);
+            }
+            edges = e;
+        }
+        return edges;
+    }
+    
+    /**
+     * Test whether a point, given in the polygon's own coordinates, is inside the polygon.
+     * 
+     * Points outside the bounding box are rejected straight away. Otherwise a ray is cast from 
+     * the point and the edges it crosses are counted, so unlike collision between shapes this
+     * works for concave polygons too.
+     * 
+     * @param x
+     * @param y
+     * @return
+     */
+    public boolean contains(float x, float y) {
+        if (!bounds().contains(x, y))
+            return false;
+        return crossings(edges(), x, y);
+    }
+    
+    /**
+     * Test many points, given in the polygon's own coordinates, against the polygon at once.
+     * 
+     * @param points The coordinates of the points, x0, y0, x1, y1...
+     * @param count The number of points
+     * @param results Set to whether each point is inside the polygon
+     * @return the number of points inside the polygon
+     */
+    public int contains(float[] points, int count, boolean[] results) {
+        Bounds2D b = bounds();
+        float[] e = edges();
+        int inside = 0;
+        for (int k = 0; k < count; k++) {
+            float x = points[2*k], y = points[2*k + 1];
+            results[k] = b.contains(x, y) && crossings(e, x, y);
+            if (results[k])
+                inside++;
+        }
+        return inside;
+    }
+    
+    /**
+     * Whether a ray cast from (x, y) crosses an odd number of the given edges.
+     */
+    private static boolean crossings(float[] e, float x, float y) {
+        boolean inside = false;
+        for (int i = 0; i < e.length; i += 4) {
+            if ((e[i] >= y) != (e[i + 1] >= y) && x <= (y - e[i]) * e[i + 3] + e[i + 2])
+                inside = !inside;
+        }
+        return inside;
+    }
+    
+    /**
+     * The number of vertices.
+     * @return
+     */
+    public int size() {
+        return coords.length / 2;
+    }
+    
+    public float getX(int i) {
+        return coords[2*i];
+    }
+    
+    public float getY(int i) {
+        return coords[2*i + 1];
+    }
+    
+    /**
+     * Get the coordinates of the vertices, x0, y0, x1, y1... The array is the one backing this 
+     * polygon, so it must not be modified.
+     * @return
+     */
+    public float[] getCoordinates() {
+        return coords;
+    }
+    
+    /**
+     * Get the vertices as a list of points, which can't be modified. 
+     * 
+     * The list is made the first time it is asked for. Code that runs often should use size(),
+     * getX() and getY() instead.
+     * @return
+     */
     public List<Point2D> getPoints(){
+        if (points == null)
+            points = Coordinates.unpack(coords, size());
     	return this.points;
     }
     
@@ -99,4 +262,25 @@ public class Polygon2D {
         draw(gl, CoordFrame2D.identity());
     }
 
+    /**
+     * Upload the points of this polygon to its bound buffer, filling the thread's scratch buffer
+     * rather than a new one.
+     * @param gl
+     */
+    private void upload(GL3 gl) {
+        Point2DBuffer data = Point2DBuffer.scratch(size());
+        data.put(coords, 0, coords.length);
+        buffer.upload(gl, data, size());
+    }
+
+    /**
+     * Release the OpenGL buffer holding this polygon.
+     * 
+     * It is recreated if the polygon is drawn again.
+     * @param gl
+     */
+    public void release(GL3 gl) {
+        buffer.release(gl);
+    }
+
 }
@@ -3,7 +3,6 @@
  */
 package unsw.graphics.geometry;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.jogamp.opengl.GL;
@@ -11,21 +10,27 @@ import com.jogamp.opengl.GL3;
 
 import unsw.graphics.CoordFrame2D;
 import unsw.graphics.Point2DBuffer;
+import unsw.graphics.Profiler;
 import unsw.graphics.Shader;
+import unsw.graphics.VertexBuffer;
 
 /**
  * A triangle in 2D space
  *
- * This class is immutable.
+ * This class is immutable. The vertices are stored packed into an array of coordinates.
  * 
  * @author Robert Clifton-Everest
  *
  */
 public class Triangle2D {
-    private List<Point2D> points;
+    // x0, y0, x1, y1, x2, y2
+    private final float[] coords;
+    
+    // The points are uploaded to the GPU the first time the triangle is drawn
+    private final VertexBuffer buffer = new VertexBuffer();
 
     public Triangle2D() {
-        points = new ArrayList<Point2D>();
+        coords = new float[0];
     }
     
     /**
@@ -33,34 +38,45 @@ public class Triangle2D {
      * @param points
      */
     public Triangle2D(List<Point2D> points) {
-        this.points = new ArrayList<Point2D>(points);
+        coords = Coordinates.pack(points);
     }
     
     public Triangle2D(float x0, float y0, float x1, float y1, float x2, float y2) {
-        List<Point2D> points = new ArrayList<Point2D>();
-        points.add(new Point2D(x0, y0));
-        points.add(new Point2D(x1, y1));
-        points.add(new Point2D(x2, y2));
-        this.points = points;
+        coords = new float[] { x0, y0, x1, y1, x2, y2 };
     }
 
     public void draw(GL3 gl, CoordFrame2D frame) {        
-        Point2DBuffer buffer = new Point2DBuffer(points);
-
-        int[] names = new int[1];
-        gl.glGenBuffers(1, names, 0);
-        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, names[0]);
-        gl.glBufferData(GL.GL_ARRAY_BUFFER, points.size() * 2 * Float.BYTES,
-                buffer.getBuffer(), GL.GL_STATIC_DRAW);
+        if (buffer.bind(gl))
+            upload(gl);
 
         gl.glVertexAttribPointer(Shader.POSITION, 2, GL.GL_FLOAT, false, 0, 0);
-        Shader.setModelMatrix(gl, frame.getMatrix());
-        gl.glDrawArrays(GL3.GL_TRIANGLES, 0, points.size());
-
-        gl.glDeleteBuffers(1, names, 0);
+        Shader.setModelMatrix(gl, frame);
+        gl.glDrawArrays(GL3.GL_TRIANGLES, 0, coords.length / 2);
+        Profiler.count(Profiler.Counter.DRAW_CALLS);
     }
     
     public void draw(GL3 gl) {
         draw(gl, CoordFrame2D.identity());
     }
+
+    /**
+     * Upload the points of this triangle to its bound buffer, filling the thread's scratch buffer
+     * rather than a new one.
+     * @param gl
+     */
+    private void upload(GL3 gl) {
+        Point2DBuffer data = Point2DBuffer.scratch(coords.length / 2);
+        data.put(coords, 0, coords.length);
+        buffer.upload(gl, data, coords.length / 2);
+    }
+
+    /**
+     * Release the OpenGL buffer holding this triangle.
+     * 
+     * It is recreated if the triangle is drawn again.
+     * @param gl
+     */
+    public void release(GL3 gl) {
+        buffer.release(gl);
+    }
 }
@@ -0,0 +1,73 @@
+package unsw.graphics.geometry.tests;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.geometry.LineStrip2D;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.headless.RecordingGL;
+
+/**
+ * Checks that geometry stored as packed coordinates reads and uploads the same points as it was
+ * given.
+ *
+ * @author Benny Hwang
+ */
+public class PackedGeometryTest extends TestCase {
+
+    @Test
+    public void testPolygon() {
+        float[] coords = { 0,0, 2,0, 2,1, 0,1 };
+        Polygon2D polygon = new Polygon2D(coords);
+        assertSame(coords, polygon.getCoordinates());
+        assertEquals(4, polygon.size());
+        assertEquals(2, polygon.getX(2), 0);
+        assertEquals(1, polygon.getY(2), 0);
+        
+        // the list adapter agrees, and is only made once
+        List<Point2D> points = polygon.getPoints();
+        assertEquals(4, points.size());
+        assertEquals(2, points.get(1).getX(), 0);
+        assertSame(points, polygon.getPoints());
+        
+        Polygon2D copy = new Polygon2D(points);
+        assertTrue(Arrays.equals(coords, copy.getCoordinates()));
+        
+        // the coordinates are uploaded as they are
+        RecordingGL recorder = new RecordingGL();
+        GL3 gl = recorder.gl();
+        polygon.draw(gl, CoordFrame2D.identity());
+        float[] uploaded = (float[]) recorder.getCommands("glBufferData").get(0).getArg(2);
+        assertTrue(Arrays.equals(coords, uploaded));
+    }
+    
+    @Test
+    public void testLineStripGrows() {
+        LineStrip2D strip = new LineStrip2D();
+        List<Point2D> points = strip.getPoints();
+        for (int i = 0; i < 100; i++)
+            strip.add(i, -i);
+        strip.add(new Point2D(7, 8));
+        
+        // the list is a view of the strip
+        assertEquals(101, strip.size());
+        assertEquals(101, points.size());
+        assertEquals(50, points.get(50).getX(), 0);
+        assertEquals(-50, strip.getY(50), 0);
+        assertEquals(8, strip.getLast().getY(), 0);
+        
+        try {
+            points.add(new Point2D(0, 0));
+            fail("Modified the strip through its list of points");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package unsw.graphics.geometry.tests;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.geometry.Line2D;
+import unsw.graphics.geometry.LineStrip2D;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.tests.CountingGL;
+
+/**
+ * Checks that geometry keeps its vertex buffers between draws, using a mock GL3 that counts
+ * buffer operations.
+ *
+ * @author Benny Hwang
+ */
+public class VertexBufferTest extends TestCase {
+    
+    @Test
+    public void testStaticGeometryUploadsOnce() {
+        CountingGL counter = new CountingGL();
+        GL3 gl = counter.gl();
+        CoordFrame2D frame = CoordFrame2D.identity();
+        
+        Polygon2D polygon = new Polygon2D(0,0, 1,0, 1,1);
+        Line2D line = new Line2D(0,0, 1,1);
+        Point2D point = new Point2D(2, 3);
+        
+        polygon.draw(gl, frame);
+        polygon.drawOutline(gl, frame);
+        line.draw(gl, frame);
+        point.draw(gl, frame);
+        
+        assertEquals(3, counter.count("glBufferData"));
+        
+        // steady state: no more buffers created or uploaded
+        counter.reset();
+        for (int i = 0; i < 10; i++) {
+            polygon.draw(gl, frame);
+            polygon.drawOutline(gl, frame);
+            line.draw(gl, frame);
+            point.draw(gl, frame);
+        }
+        assertEquals(0, counter.count("glGenBuffers"));
+        assertEquals(0, counter.count("glBufferData"));
+        assertEquals(0, counter.count("glDeleteBuffers"));
+        assertEquals(40, counter.count("glDrawArrays"));
+        
+        polygon.release(gl);
+        line.release(gl);
+        Point2D.releaseBuffer(gl);
+        assertEquals(3, counter.count("glDeleteBuffers"));
+    }
+    
+    @Test
+    public void testLineStripUploadsOnlyWhenChanged() {
+        CountingGL counter = new CountingGL();
+        GL3 gl = counter.gl();
+        CoordFrame2D frame = CoordFrame2D.identity();
+        
+        LineStrip2D strip = new LineStrip2D(0,0, 1,0);
+        strip.draw(gl, frame);
+        strip.draw(gl, frame);
+        assertEquals(1, counter.count("glBufferData"));
+        
+        strip.add(new Point2D(1, 1));
+        strip.draw(gl, frame);
+        strip.draw(gl, frame);
+        assertEquals(2, counter.count("glBufferData"));
+        assertEquals(1, counter.count("glGenBuffers"));
+    }
+
+}
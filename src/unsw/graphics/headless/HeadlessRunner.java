@@ -0,0 +1,158 @@
+/**
+ * 
+ */
+package unsw.graphics.headless;
+
+import java.awt.Color;
+import java.io.PrintWriter;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.Profiler;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.scene.CircularSceneObject;
+import unsw.graphics.scene.InstancedRenderer;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.scene.SceneObject;
+
+/**
+ * Drives a scene for a number of frames without a window, drawing it to a RecordingGL.
+ *
+ * Each frame is bracketed with Profiler.beginFrame() and endFrame() the way Application does,
+ * so with the profiler enabled the render path can be measured on a machine with no display.
+ * Frames advance the simulation by a fixed amount of time, so runs are repeatable.
+ *
+ * @author Benny Hwang
+ *
+ */
+public class HeadlessRunner {
+
+    private final Scene myScene;
+    private final RecordingGL myRecorder;
+    private final GL3 myGL;
+    private final Shader myShader;
+    private int myFrames;
+
+    /**
+     * Construct a runner for the given scene, as though it were in a window of the given size.
+     *
+     * @param scene
+     * @param width The width of the viewport in pixels
+     * @param height The height of the viewport in pixels
+     * @param recorder The GL calls are recorded here
+     */
+    public HeadlessRunner(Scene scene, int width, int height, RecordingGL recorder) {
+        myScene = scene;
+        myRecorder = recorder;
+        myGL = recorder.gl();
+
+        // Stand in for the shader Application2D would compile
+        myShader = new Shader(myGL, myGL.glCreateProgram());
+        myShader.use(myGL);
+        scene.reshape(width, height);
+
+        // and for the one InstancedRenderer would load, as compiling needs a real context
+        if (scene.getInstancedRenderer() == null) {
+            scene.setInstancedRenderer(new InstancedRenderer(
+                    new Shader(myGL, myGL.glCreateProgram())));
+        }
+    }
+
+    /**
+     * Construct a runner that logs every GL call.
+     *
+     * @param scene
+     * @param width
+     * @param height
+     */
+    public HeadlessRunner(Scene scene, int width, int height) {
+        this(scene, width, height, new RecordingGL());
+    }
+
+    /**
+     * Draw one frame.
+     *
+     * @param dt The amount of time the simulation is run forward by (in seconds)
+     */
+    public void runFrame(float dt) {
+        Profiler.beginFrame();
+        myScene.draw(myGL, dt);
+        Profiler.endFrame();
+        myFrames++;
+    }
+
+    /**
+     * Draw a number of frames.
+     *
+     * @param frames
+     * @param dt The amount of time each frame runs the simulation forward by (in seconds)
+     */
+    public void run(int frames, float dt) {
+        for (int i = 0; i < frames; i++) {
+            runFrame(dt);
+        }
+    }
+
+    public Scene getScene() {
+        return myScene;
+    }
+
+    public RecordingGL getRecorder() {
+        return myRecorder;
+    }
+
+    public GL3 getGL() {
+        return myGL;
+    }
+
+    /**
+     * The number of frames drawn so far.
+     *
+     * @return
+     */
+    public int getFrameCount() {
+        return myFrames;
+    }
+
+    /**
+     * Draw a scene full of spinning shapes for a number of frames and print a profile of them.
+     *
+     * Usage: HeadlessRunner [frames] [objects]
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        int objects = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+        Scene scene = new Scene();
+        Polygon2D square = new Polygon2D(-0.5f,-0.5f, 0.5f,-0.5f, 0.5f,0.5f, -0.5f,0.5f);
+        int side = (int) Math.ceil(Math.sqrt(objects));
+        for (int i = 0; i < objects; i++) {
+            SceneObject obj;
+            if (i % 2 == 0) {
+                obj = new PolygonalSceneObject(scene.getRoot(), square, Color.BLUE, Color.BLACK) {
+                    @Override
+                    public void updateSelf(float dt) {
+                        rotate(90 * dt);
+                    }
+                };
+            } else {
+                obj = new CircularSceneObject(scene.getRoot(), 0.5f, Color.RED, Color.BLACK);
+            }
+            obj.translate(i % side - side / 2f, i / side - side / 2f);
+        }
+        scene.getCamera().scale(side / 2f);
+
+        // Only the counts are wanted, so don't fill memory with a log of every call
+        HeadlessRunner runner = new HeadlessRunner(scene, 1024, 1024, new RecordingGL(false));
+        Profiler.setEnabled(true);
+        runner.run(frames, 1 / 60f);
+
+        PrintWriter out = new PrintWriter(System.out);
+        Profiler.dump(out);
+        out.flush();
+    }
+}
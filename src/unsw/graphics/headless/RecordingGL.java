@@ -0,0 +1,333 @@
+/**
+ * 
+ */
+package unsw.graphics.headless;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.jogamp.opengl.GL3;
+
+/**
+ * A GL3 that doesn't need a display or a GPU. It records every GL call made to it, so rendering
+ * code can be tested and benchmarked on machines without either.
+ *
+ * Nothing is drawn. Just enough state is kept for the engine to run: buffer, vertex array,
+ * shader and program names are handed out, uniform locations are looked up per program, and
+ * the current program is remembered for glGetIntegerv(GL_CURRENT_PROGRAM). Every other query
+ * returns zero or false.
+ *
+ * Each call is counted by name. Calls are also kept in a command log unless logging is turned
+ * off, with any array and buffer arguments copied so the log shows what was passed at the
+ * time, even if the caller reuses the array.
+ *
+ * @author Benny Hwang
+ *
+ */
+public class RecordingGL implements InvocationHandler {
+
+    /**
+     * A GL call in the command log.
+     */
+    public static final class Command {
+        private final String myName;
+        private final Object[] myArgs;
+
+        private Command(String name, Object[] args) {
+            myName = name;
+            myArgs = args;
+        }
+
+        /**
+         * The name of the GL method, e.g. "glDrawArrays".
+         *
+         * @return
+         */
+        public String getName() {
+            return myName;
+        }
+
+        /**
+         * The arguments of the call. Arrays and float or int buffers are copies, as arrays of
+         * the same type (buffers hold their remaining elements).
+         *
+         * @return
+         */
+        public Object[] getArgs() {
+            return myArgs;
+        }
+
+        public Object getArg(int i) {
+            return myArgs[i];
+        }
+
+        public int getInt(int i) {
+            return (Integer) myArgs[i];
+        }
+
+        public float getFloat(int i) {
+            return (Float) myArgs[i];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder(myName).append('(');
+            for (int i = 0; i < myArgs.length; i++) {
+                if (i > 0)
+                    s.append(", ");
+                s.append(argToString(myArgs[i]));
+            }
+            return s.append(')').toString();
+        }
+    }
+
+    private final GL3 myGL;
+
+    private final Map<String, Integer> myCounts = new HashMap<String, Integer>();
+    private final List<Command> myLog = new ArrayList<Command>();
+    private boolean amLogging;
+
+    // The names handed out so far
+    private int myNextName = 1;
+
+    // The uniform locations handed out in each program
+    private final Map<Integer, Map<String, Integer>> myUniforms =
+            new HashMap<Integer, Map<String, Integer>>();
+    private int myCurrentProgram;
+
+    /**
+     * Construct a recorder that logs every call.
+     */
+    public RecordingGL() {
+        this(true);
+    }
+
+    /**
+     * Construct a recorder.
+     *
+     * @param logging Whether to keep a log of the calls, as well as counting them
+     */
+    public RecordingGL(boolean logging) {
+        amLogging = logging;
+        myGL = (GL3) Proxy.newProxyInstance(GL3.class.getClassLoader(),
+                new Class<?>[] { GL3.class }, this);
+    }
+
+    /**
+     * Get a GL3 that records its calls here.
+     *
+     * @return
+     */
+    public GL3 gl() {
+        return myGL;
+    }
+
+    /**
+     * Turn the command log on or off. Calls are always counted.
+     *
+     * @param logging
+     */
+    public void setLogging(boolean logging) {
+        amLogging = logging;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (!name.startsWith("gl")) {
+            return notGL(proxy, method, args);
+        }
+
+        Object result = emulate(name, args);
+
+        Integer count = myCounts.get(name);
+        myCounts.put(name, count == null ? 1 : count + 1);
+        if (amLogging)
+            myLog.add(new Command(name, copyArgs(name, args)));
+
+        return result != null ? result : defaultValue(method.getReturnType());
+    }
+
+    /**
+     * Keep the little state the engine reads back.
+     *
+     * @return the result of the call, or null for the default
+     */
+    private Object emulate(String name, Object[] args) {
+        if (name.equals("glGenBuffers") || name.equals("glGenVertexArrays")) {
+            int n = (Integer) args[0];
+            if (args[1] instanceof int[]) {
+                int[] names = (int[]) args[1];
+                for (int i = 0; i < n; i++)
+                    names[(Integer) args[2] + i] = myNextName++;
+            } else {
+                IntBuffer names = (IntBuffer) args[1];
+                for (int i = 0; i < n; i++)
+                    names.put(names.position() + i, myNextName++);
+            }
+        } else if (name.equals("glCreateProgram") || name.equals("glCreateShader")) {
+            return myNextName++;
+        } else if (name.equals("glUseProgram")) {
+            myCurrentProgram = (Integer) args[0];
+        } else if (name.equals("glGetUniformLocation")) {
+            Map<String, Integer> uniforms = myUniforms.get(args[0]);
+            if (uniforms == null) {
+                uniforms = new HashMap<String, Integer>();
+                myUniforms.put((Integer) args[0], uniforms);
+            }
+            Integer location = uniforms.get(args[1]);
+            if (location == null) {
+                location = uniforms.size();
+                uniforms.put((String) args[1], location);
+            }
+            return location;
+        } else if (name.equals("glGetIntegerv") && (Integer) args[0] == GL3.GL_CURRENT_PROGRAM) {
+            if (args[1] instanceof int[])
+                ((int[]) args[1])[(Integer) args[2]] = myCurrentProgram;
+            else
+                ((IntBuffer) args[1]).put(((IntBuffer) args[1]).position(), myCurrentProgram);
+        }
+        return null;
+    }
+
+    /**
+     * The methods GL3 has that aren't GL calls, e.g. getGL3().
+     */
+    private Object notGL(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (method.getReturnType().isInstance(proxy) && name.startsWith("get"))
+            return proxy;
+        if (name.equals("isGL3") || name.equals("isGL2ES2") || name.equals("isGL3core"))
+            return true;
+        if (name.equals("equals"))
+            return proxy == args[0];
+        if (name.equals("hashCode"))
+            return System.identityHashCode(proxy);
+        if (name.equals("toString"))
+            return "RecordingGL";
+        return defaultValue(method.getReturnType());
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class)
+            return false;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        if (type == float.class)
+            return 0f;
+        if (type == double.class)
+            return 0d;
+        if (type == short.class)
+            return (short) 0;
+        if (type == byte.class)
+            return (byte) 0;
+        if (type == char.class)
+            return (char) 0;
+        return null;
+    }
+
+    private static Object[] copyArgs(String name, Object[] args) {
+        if (args == null)
+            return new Object[0];
+        Object[] copy = args.clone();
+        
+        // Only the given number of bytes of the data are uploaded, however big its buffer is
+        if (name.equals("glBufferData") && args[2] instanceof FloatBuffer) {
+            FloatBuffer buffer = ((FloatBuffer) args[2]).duplicate();
+            int floats = (int) Math.min(buffer.remaining(), (Long) args[1] / Float.BYTES);
+            buffer.limit(buffer.position() + floats);
+            copy[2] = buffer;
+        }
+        for (int i = 0; i < copy.length; i++) {
+            Object arg = copy[i];
+            if (arg instanceof float[]) {
+                copy[i] = ((float[]) arg).clone();
+            } else if (arg instanceof int[]) {
+                copy[i] = ((int[]) arg).clone();
+            } else if (arg instanceof FloatBuffer) {
+                // Take what's left of the buffer, as GL would
+                FloatBuffer buffer = ((FloatBuffer) arg).duplicate();
+                float[] values = new float[buffer.remaining()];
+                buffer.get(values);
+                copy[i] = values;
+            } else if (arg instanceof IntBuffer) {
+                IntBuffer buffer = ((IntBuffer) arg).duplicate();
+                int[] values = new int[buffer.remaining()];
+                buffer.get(values);
+                copy[i] = values;
+            }
+        }
+        return copy;
+    }
+
+    private static String argToString(Object arg) {
+        if (arg instanceof float[])
+            return Arrays.toString((float[]) arg);
+        if (arg instanceof int[])
+            return Arrays.toString((int[]) arg);
+        return String.valueOf(arg);
+    }
+
+    /**
+     * The number of times the named GL method has been called since the last reset.
+     * @param name
+     * @return
+     */
+    public int count(String name) {
+        Integer count = myCounts.get(name);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * The total number of GL calls since the last reset.
+     * @return
+     */
+    public int total() {
+        int total = 0;
+        for (int count : myCounts.values())
+            total += count;
+        return total;
+    }
+
+    /**
+     * Get the calls made since the last reset, oldest first.
+     *
+     * @return
+     */
+    public List<Command> getCommands() {
+        return myLog;
+    }
+
+    /**
+     * Get the logged calls to the named GL method since the last reset, oldest first.
+     *
+     * @param name
+     * @return
+     */
+    public List<Command> getCommands(String name) {
+        List<Command> commands = new ArrayList<Command>();
+        for (int i = 0; i < myLog.size(); i++) {
+            if (myLog.get(i).myName.equals(name))
+                commands.add(myLog.get(i));
+        }
+        return commands;
+    }
+
+    /**
+     * Forget the calls made so far. The GL state, e.g. the current program, is kept.
+     */
+    public void reset() {
+        myCounts.clear();
+        myLog.clear();
+    }
+}
@@ -0,0 +1,146 @@
+package unsw.graphics.headless.tests;
+
+import java.awt.Color;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.headless.HeadlessRunner;
+import unsw.graphics.headless.RecordingGL;
+import unsw.graphics.headless.RecordingGL.Command;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.scene.Scene.RenderMode;
+import unsw.graphics.scene.SceneObject;
+
+/**
+ * Checks that a scene can be drawn without a window, and that the GL calls are recorded.
+ *
+ * @author Benny Hwang
+ */
+public class HeadlessRunnerTest extends TestCase {
+    
+    private static final float EPSILON = 0.001f;
+    
+    private static final Polygon2D SQUARE = new Polygon2D(0,0, 0.1f,0, 0.1f,0.1f, 0,0.1f);
+
+    @Test
+    public void testRecordsFrames() {
+        Scene scene = new Scene();
+        SceneObject mover = new PolygonalSceneObject(scene.getRoot(), SQUARE, Color.RED, null) {
+            @Override
+            public void updateSelf(float dt) {
+                translate(dt, 0);
+            }
+        };
+        PolygonalSceneObject still = new PolygonalSceneObject(scene.getRoot(), SQUARE, 
+                Color.BLUE, null);
+        still.translate(-0.5f, 0);
+        
+        HeadlessRunner runner = new HeadlessRunner(scene, 200, 100);
+        RecordingGL recorder = runner.getRecorder();
+        recorder.reset();
+        runner.run(10, 0.01f);
+        
+        // the simulation runs on the time given, not the real time
+        assertEquals(10, runner.getFrameCount());
+        assertEquals(0.1f, mover.getPosition().getX(), EPSILON);
+        
+        // two filled squares a frame
+        List<Command> draws = recorder.getCommands("glDrawArrays");
+        assertEquals(20, draws.size());
+        assertEquals(20, recorder.count("glDrawArrays"));
+        assertEquals(GL.GL_TRIANGLE_FAN, draws.get(0).getInt(0));
+        assertEquals(4, draws.get(0).getInt(2));
+        
+        // the square was uploaded once, on the first frame
+        List<Command> uploads = recorder.getCommands("glBufferData");
+        assertEquals(1, uploads.size());
+        assertEquals(8, ((float[]) uploads.get(0).getArg(2)).length);
+        
+        // the log keeps the values that were uploaded, though Shader reuses one array for them
+        List<Command> models = recorder.getCommands("glUniformMatrix3fv");
+        float[] moverModel = (float[]) models.get(models.size() - 2).getArg(3);
+        float[] stillModel = (float[]) models.get(models.size() - 1).getArg(3);
+        assertEquals(0.1f, moverModel[6], EPSILON);
+        assertEquals(-0.5f, stillModel[6], EPSILON);
+        
+        recorder.reset();
+        assertEquals(0, recorder.total());
+        assertTrue(recorder.getCommands().isEmpty());
+    }
+    
+    @Test
+    public void testInstancedMode() {
+        Scene scene = new Scene();
+        scene.setRenderMode(RenderMode.INSTANCED);
+        // Not SQUARE, whose vertex buffer would then be uploaded to the wrong RecordingGL
+        Polygon2D square = new Polygon2D(0,0, 0.1f,0, 0.1f,0.1f, 0,0.1f);
+        for (int i = 0; i < 5; i++) {
+            new PolygonalSceneObject(scene.getRoot(), square, Color.RED, Color.BLACK)
+                    .translate(i * 0.1f, 0);
+        }
+        
+        HeadlessRunner runner = new HeadlessRunner(scene, 100, 100);
+        RecordingGL recorder = runner.getRecorder();
+        recorder.reset();
+        runner.run(3, 0.01f);
+        
+        // the fills and the outlines are one draw call each per frame
+        assertEquals(6, recorder.count("glDrawArraysInstanced"));
+        assertEquals(0, recorder.count("glDrawArrays"));
+        assertEquals(2, scene.getInstancedRenderer().getDrawCallCount());
+        assertEquals(10, scene.getInstancedRenderer().getInstanceCount());
+    }
+    
+    @Test
+    public void testSortedMode() {
+        Scene scene = new Scene();
+        scene.setRenderMode(RenderMode.SORTED);
+        // Not SQUARE, whose vertex buffer would then be uploaded to the wrong RecordingGL
+        Polygon2D square = new Polygon2D(0,0, 0.1f,0, 0.1f,0.1f, 0,0.1f);
+        for (int i = 0; i < 5; i++) {
+            SceneObject obj = new PolygonalSceneObject(scene.getRoot(), square, Color.RED, 
+                    Color.BLACK);
+            obj.translate(i * 0.1f, 0);
+        }
+        
+        HeadlessRunner runner = new HeadlessRunner(scene, 100, 100);
+        RecordingGL recorder = runner.getRecorder();
+        recorder.reset();
+        runner.run(3, 0.01f);
+        
+        // a fill and an outline for each square, every frame
+        assertEquals(30, recorder.count("glDrawArrays"));
+        assertEquals(10, scene.getRenderQueue().getCommandCount());
+    }
+    
+    @Test
+    public void testEmulatedState() {
+        RecordingGL recorder = new RecordingGL();
+        GL3 gl = recorder.gl();
+        assertSame(gl, gl.getGL3());
+        
+        int program = gl.glCreateProgram();
+        gl.glUseProgram(program);
+        int[] current = new int[1];
+        gl.glGetIntegerv(GL3.GL_CURRENT_PROGRAM, current, 0);
+        assertEquals(program, current[0]);
+        
+        int a = gl.glGetUniformLocation(program, "a");
+        int b = gl.glGetUniformLocation(program, "b");
+        assertFalse(a == b);
+        assertEquals(a, gl.glGetUniformLocation(program, "a"));
+        
+        int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
+        assertFalse(names[0] == names[1]);
+        assertEquals("glGenBuffers(2, [" + names[0] + ", " + names[1] + "], 0)", 
+                recorder.getCommands("glGenBuffers").get(0).toString());
+    }
+}
@@ -2,18 +2,15 @@ package unsw.graphics.scene;
 
 import com.jogamp.opengl.GL3;
 
+import unsw.graphics.Affine2D;
 import unsw.graphics.CoordFrame2D;
-import unsw.graphics.Matrix3;
 import unsw.graphics.Shader;
-import unsw.graphics.Vector3;
 import unsw.graphics.geometry.Point2D;
 
 /**
  * The camera is a SceneObject that can be moved, rotated and scaled like any other, as well as
  * attached to any parent in the scene tree.
  * 
- * TODO: You need to implement the setView() method.
- *
  * @author malcolmr
  * @author Robert Clifton-Everest
  * @author Benny Hwang
@@ -24,29 +21,56 @@ public class Camera extends SceneObject {
     /**
      * The aspect ratio is the ratio of the width of the window to the height.
      */
-    private float myAspectRatio;
+    private volatile float myAspectRatio;
+    
+    // The height of the viewport in pixels, or 0 if reshape() hasn't been called yet. Both are 
+    // set on the GL thread, and read on the simulation thread when the scene is pipelined.
+    private volatile int myHeight;
+    
+    // Reused every frame when computing the view transform
+    private final Affine2D myInverse = new Affine2D();
+    private final CoordFrame2D myView = new CoordFrame2D();
 
     public Camera(SceneObject parent) {
         super(parent);
     }
 
     public void setView(GL3 gl) {
-        // TODO compute a view transform to account for the cameras aspect ratio
-    	Matrix3 mat = Matrix3.scale(1f/getAspectRatio(), 1);
-
-        // TODO apply further transformations to account for the camera's global position, 
-        // rotation and scale
-        mat = mat.multiply(Matrix3.scale(1f/getGlobalScale(), 1f/getGlobalScale()))
-        	.multiply(Matrix3.rotation(-getGlobalRotation()))
-        	.multiply(Matrix3.translation(-getGlobalPosition().getX(), -getGlobalPosition().getY()));
-    	
-        // TODO set the view matrix to the computed transform
-        Shader.setViewMatrix(gl, mat);
-
+        Shader.setViewMatrix(gl, getView(myView));
+    }
+    
+    /**
+     * Compute the view transform, without uploading it.
+     * 
+     * @param dest The frame to store the view in
+     * @return dest
+     */
+    CoordFrame2D getView(CoordFrame2D dest) {
+        // The view transform is the inverse of the camera's global transform, followed by a scale
+        // to account for the camera's aspect ratio. The camera is interpolated between timesteps
+        // like everything else it is looking at.
+        getDrawGlobalTransform(myInverse).invert();
+        dest.getTransform().setIdentity()
+            .scale(1f/getAspectRatio(), 1)
+            .multiply(myInverse);
+        return dest;
     }
 
     public void reshape(int width, int height) {
         myAspectRatio = (1f * width) / height;            
+        myHeight = height;
+    }
+    
+    /**
+     * The number of pixels on screen that one unit in world coordinates covers.
+     * 
+     * The camera's view is 2 units high in its own coordinate frame, so this depends on the 
+     * height of the viewport and the global scale of the camera.
+     * 
+     * @return the number of pixels, or 0 if the size of the viewport isn't known yet
+     */
+    public float getPixelsPerUnit() {
+        return myHeight / (2 * getGlobalScale());
     }
 
     /**
@@ -58,11 +82,9 @@ public class Camera extends SceneObject {
      * @return
      */
     public Point2D fromView(float x, float y) {
-        Matrix3 mat = Matrix3.translation(getGlobalPosition())
-                .multiply(Matrix3.rotation(getGlobalRotation()))
-                .multiply(Matrix3.scale(getGlobalScale(), getGlobalScale()))
-                .multiply(Matrix3.scale(myAspectRatio, 1));
-        return mat.multiply(new Vector3(x,y,1)).asPoint2D();
+        Affine2D global = getGlobalTransform();
+        x *= myAspectRatio;
+        return new Point2D(global.transformX(x, y), global.transformY(x, y));
     }
 
     public float getAspectRatio() {
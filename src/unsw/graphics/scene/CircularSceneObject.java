@@ -1,13 +1,15 @@
 package unsw.graphics.scene;
 
 import java.awt.Color;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 import com.jogamp.opengl.GL3;
 
+import unsw.graphics.Affine2D;
 import unsw.graphics.CoordFrame2D;
 import unsw.graphics.Shader;
+import unsw.graphics.geometry.Bounds2D;
 import unsw.graphics.geometry.Point2D;
 import unsw.graphics.geometry.Polygon2D;
 
@@ -25,15 +27,32 @@ import unsw.graphics.geometry.Polygon2D;
  */
 public class CircularSceneObject extends PolygonalSceneObject {
 	
+	// The number of segments used when the size of the circle on screen isn't known
 	private static final int POINTS = 32;
+	
+	// The fewest and most segments a circle is drawn with
+	private static final int MIN_POINTS = 8;
+	private static final int MAX_POINTS = 128;
+	
+	// The furthest the edge of the polygon may be from the true circle, in pixels
+	private static final double MAX_ERROR = 0.5;
+	
+	// Unit circles, shared by every circle drawn with the same number of segments. Circles can
+	// be constructed during a parallel update, so access is synchronized.
+	private static final Map<Integer, Polygon2D> UNIT_CIRCLES = new HashMap<Integer, Polygon2D>();
+	
 	private float myRadius;
 	private Point2D myCentre;
     private Color myFillColor;
     private Color myLineColor;
+    
+    // The frame the unit circle is drawn in: the object's frame moved to the centre and scaled 
+    // by the radius. Reused every frame.
+    private final CoordFrame2D myCircleFrame = new CoordFrame2D();
 
 	//Create a CircularSceneObject with centre 0,0 and radius 1
 	public CircularSceneObject(SceneObject parent, Color fillColor, Color lineColor) {
-		super(parent, new Polygon2D(getCirclePoints(new Point2D(0, 0), 1)), fillColor, lineColor); //
+		super(parent, unitCircle(POINTS), fillColor, lineColor);
 		myRadius = 1;
 		myCentre = new Point2D(0, 0);
 		myFillColor = fillColor;
@@ -42,7 +61,7 @@ public class CircularSceneObject extends PolygonalSceneObject {
 
 	//Create a CircularSceneObject with centre 0,0 and a given radius
 	public CircularSceneObject(SceneObject parent, float radius, Color fillColor, Color lineColor) {
-		super(parent, new Polygon2D(getCirclePoints(new Point2D(0, 0), radius)), fillColor, lineColor);
+		super(parent, unitCircle(POINTS), fillColor, lineColor);
 		myRadius = radius;
 		myCentre = new Point2D(0, 0);
 		myFillColor = fillColor;
@@ -65,6 +84,7 @@ public class CircularSceneObject extends PolygonalSceneObject {
      */
 	public void setRadius(float r) {
 		this.myRadius = r;
+		invalidateBounds();
 	}
 
 	/**
@@ -83,6 +103,7 @@ public class CircularSceneObject extends PolygonalSceneObject {
      */
 	public void setCentre(Point2D centre) {
 		this.myCentre = centre;
+		invalidateBounds();
 	}
 
 	/**
@@ -130,46 +151,146 @@ public class CircularSceneObject extends PolygonalSceneObject {
 	 * 
 	 * if the fill color is non-null, draw the polygon filled with this color
      * if the line color is non-null, draw the outline with this color
+     * 
+     * A shared unit circle is drawn, moved to the centre and scaled by the radius. The number
+     * of segments depends on how big the circle is on screen.
      * 
 	 */
 	@Override
 	public void drawSelf(GL3 gl, CoordFrame2D frame) {
-		Polygon2D myCircle = new Polygon2D(getCirclePoints(getCentre(), getRadius()));
+		CoordFrame2D circleFrame = myCircleFrame.set(frame)
+				.translateInPlace(myCentre.getX(), myCentre.getY())
+				.scaleInPlace(myRadius, myRadius);
+		Polygon2D circle = unitCircle(getSegments(circleFrame));
+		
+		Scene scene = getScene();
+		InstancedRenderer batch = scene == null ? null : scene.getBatchRenderer();
+		if (batch != null) {
+			if (getFillColor() != null)
+				batch.submit(circle, false, getFillColor(), circleFrame.getTransform());
+			if (getLineColor() != null)
+				batch.submit(circle, true, getLineColor(), circleFrame.getTransform());
+			return;
+		}
+		RenderQueue queue = scene == null ? null : scene.getCommandQueue();
+		if (queue != null) {
+			if (getFillColor() != null)
+				queue.submit(circle, false, getFillColor(), circleFrame.getTransform(), 
+						getDrawLayer());
+			if (getLineColor() != null)
+				queue.submit(circle, true, getLineColor(), circleFrame.getTransform(), 
+						getDrawLayer());
+			return;
+		}
+		
 		Color colorToFill = getFillColor();
     	if (colorToFill != null) {
     		// use shader to set color
     		Shader.setPenColor(gl, colorToFill);
-    		myCircle.draw(gl, frame);
+    		circle.draw(gl, circleFrame);
     	}
     	
     	Color colorToEdge = getLineColor();
     	if (colorToEdge != null) {
     		Shader.setPenColor(gl, colorToEdge);
-    		myCircle.drawOutline(gl, frame);
+    		circle.drawOutline(gl, circleFrame);
     	}
 
 	}
 	
 	/**
-	 * Compute the points for 32 side polygon to generate the circle using centre and radius
+	 * Choose the number of segments to draw a unit circle with in the given frame, so that it 
+	 * looks round without wasting vertices on circles that are only a few pixels across.
+	 * 
+	 * @param circleFrame
+	 * @return
+	 */
+	private int getSegments(CoordFrame2D circleFrame) {
+		Scene scene = getScene();
+		float pixelsPerUnit = scene == null ? 0 : scene.getCamera().getPixelsPerUnit();
+		if (pixelsPerUnit <= 0) {
+			return POINTS;
+		}
+		// The radius on screen, taking the world scale as the square root of the area scale
+		double radius = Math.sqrt(Math.abs(circleFrame.getTransform().determinant())) 
+				* pixelsPerUnit;
+		return getSegments(radius);
+	}
+	
+	/**
+	 * The number of segments needed for a circle with the given radius in pixels. This is 
+	 * rounded up to a power of two so that only a handful of unit circles are ever made.
+	 * 
+	 * @param radius
+	 * @return
+	 */
+	static int getSegments(double radius) {
+		if (radius <= MAX_ERROR) {
+			return MIN_POINTS;
+		}
+		// A chord across an angle of 2*pi/n is r*(1 - cos(pi/n)) from the circle at its middle
+		double needed = Math.PI / Math.acos(1 - MAX_ERROR / radius);
+		int segments = MIN_POINTS;
+		while (segments < needed && segments < MAX_POINTS) {
+			segments *= 2;
+		}
+		return segments;
+	}
+	
+	/**
+	 * Get the unit circle with the given number of segments, making it the first time it is
+	 * needed.
+	 * 
+	 * @param segments
+	 * @return
+	 */
+	private static Polygon2D unitCircle(int segments) {
+		synchronized (UNIT_CIRCLES) {
+			Polygon2D circle = UNIT_CIRCLES.get(segments);
+			if (circle == null) {
+				circle = new Polygon2D(getCirclePoints(new Point2D(0, 0), 1, segments));
+				UNIT_CIRCLES.put(segments, circle);
+			}
+			return circle;
+		}
+	}
+	
+	/**
+	 * Compute the points for an n side polygon to generate the circle using centre and radius,
+	 * packed as x0, y0, x1, y1...
 	 * 
 	 * @param centre
 	 * @param radius
+	 * @param n the number of sides
 	 * @return
 	 */
-	private static List<Point2D> getCirclePoints(Point2D centre, double radius){
-		double currentAngle = 0; // in radians
-		double angleInterval = (2*Math.PI)/POINTS;
-		List<Point2D> circlePoints = new ArrayList<>();
-		for (int i=0; i<POINTS; i++) {
-			float x = centre.getX() + (float) (radius * Math.cos(currentAngle));
-			float y = centre.getY() + (float) (radius * Math.sin(currentAngle));
-			circlePoints.add(new Point2D(x, y));
-			currentAngle += angleInterval;
+	private static float[] getCirclePoints(Point2D centre, double radius, int n){
+		double angleInterval = (2*Math.PI)/n;
+		float[] circlePoints = new float[2*n];
+		for (int i=0; i<n; i++) {
+			double currentAngle = i * angleInterval; // in radians
+			circlePoints[2*i] = centre.getX() + (float) (radius * Math.cos(currentAngle));
+			circlePoints[2*i + 1] = centre.getY() + (float) (radius * Math.sin(currentAngle));
 		}
 		return circlePoints;
 	}
 	
+	@Override
+	protected boolean getLocalBounds(Bounds2D bounds) {
+		bounds.set(myCentre.getX() - myRadius, myCentre.getY() - myRadius, 
+				myCentre.getX() + myRadius, myCentre.getY() + myRadius);
+		return true;
+	}
+	
+	@Override
+	protected boolean getCollisionShape(CollisionShape shape) {
+		Affine2D global = getGlobalTransform();
+		float cx = global.transformX(myCentre.getX(), myCentre.getY());
+		float cy = global.transformY(myCentre.getX(), myCentre.getY());
+		shape.setCircle(cx, cy, myRadius * getGlobalScale());
+		return true;
+	}
+	
 	/**
 	 * Collision detection for Circles
 	 * 
@@ -179,8 +300,16 @@ public class CircularSceneObject extends PolygonalSceneObject {
 	@Override
 	public boolean collision(Point2D p) {
 		// Get the objects world coordinate and see if p is inside it
-		Point2D globalCenter = this.getGlobalPosition();
-		return (this.getRadius()*this.getGlobalScale()) >= Math.hypot(p.getX()-globalCenter.getX(), p.getY()-globalCenter.getY());
+		Affine2D global = getGlobalTransform();
+		float cx = global.transformX(myCentre.getX(), myCentre.getY());
+		float cy = global.transformY(myCentre.getX(), myCentre.getY());
+		return (this.getRadius()*this.getGlobalScale()) >= Math.hypot(p.getX()-cx, p.getY()-cy);
+	}
+	
+	@Override
+	protected boolean collisionLocal(float x, float y, Point2D p) {
+		float dx = x - myCentre.getX(), dy = y - myCentre.getY();
+		return dx*dx + dy*dy <= myRadius*myRadius;
 	}
 	
 }
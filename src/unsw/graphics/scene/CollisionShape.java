@@ -0,0 +1,258 @@
+package unsw.graphics.scene;
+
+import java.util.List;
+
+import unsw.graphics.Affine2D;
+import unsw.graphics.geometry.Point2D;
+
+/**
+ * The exact shape of an object in world coordinates, for object-vs-object collision.
+ *
+ * A shape is a circle, a convex polygon or a line segment. It is mutable so that objects can
+ * recompute it in place when they move, without allocating.
+ *
+ * Polygons are tested with the separating axis theorem: two convex shapes overlap unless there
+ * is an axis on which their projections don't overlap, and the only axes that need to be tried
+ * are the normals of their edges (plus, for a circle, the direction to the nearest vertex).
+ *
+ * @author Benny Hwang
+ */
+public class CollisionShape {
+
+    /**
+     * The kinds of shape.
+     */
+    public enum Kind {
+        CIRCLE, POLYGON, SEGMENT
+    }
+
+    private Kind myKind;
+
+    // A circle's centre and radius
+    private float myX, myY, myRadius;
+
+    // The x and y coordinates of a polygon's vertices, or a segment's two end points
+    private float[] myPoints = new float[16];
+    private int myCount;
+
+    /**
+     * Construct an empty polygon. Call one of the set methods before using it.
+     */
+    public CollisionShape() {
+        myKind = Kind.POLYGON;
+        myCount = 0;
+    }
+
+    /**
+     * Make this a circle.
+     *
+     * @param x
+     * @param y
+     * @param radius
+     * @return this shape
+     */
+    public CollisionShape setCircle(float x, float y, float radius) {
+        myKind = Kind.CIRCLE;
+        myX = x;
+        myY = y;
+        myRadius = radius;
+        myCount = 0;
+        return this;
+    }
+
+    /**
+     * Make this the line segment from (x1, y1) to (x2, y2).
+     *
+     * @return this shape
+     */
+    public CollisionShape setSegment(float x1, float y1, float x2, float y2) {
+        myKind = Kind.SEGMENT;
+        myPoints[0] = x1;
+        myPoints[1] = y1;
+        myPoints[2] = x2;
+        myPoints[3] = y2;
+        myCount = 2;
+        return this;
+    }
+
+    /**
+     * Make this the given convex polygon after it has been transformed.
+     *
+     * @param coords The vertices of the polygon, in order, packed as x0, y0, x1, y1...
+     * @param count The number of vertices
+     * @param t The transform to apply to them
+     * @return this shape
+     */
+    public CollisionShape setPolygon(float[] coords, int count, Affine2D t) {
+        myKind = Kind.POLYGON;
+        myCount = count;
+        if (myPoints.length < myCount * 2)
+            myPoints = new float[myCount * 2];
+        for (int i = 0; i < myCount; i++) {
+            float x = coords[2*i], y = coords[2*i + 1];
+            myPoints[2*i] = t.transformX(x, y);
+            myPoints[2*i + 1] = t.transformY(x, y);
+        }
+        return this;
+    }
+
+    /**
+     * Make this the given convex polygon after it has been transformed.
+     *
+     * @param points The vertices of the polygon, in order
+     * @param t The transform to apply to them
+     * @return this shape
+     */
+    public CollisionShape setPolygon(List<Point2D> points, Affine2D t) {
+        myKind = Kind.POLYGON;
+        myCount = points.size();
+        if (myPoints.length < myCount * 2)
+            myPoints = new float[myCount * 2];
+        for (int i = 0; i < myCount; i++) {
+            Point2D p = points.get(i);
+            myPoints[2*i] = t.transformX(p.getX(), p.getY());
+            myPoints[2*i + 1] = t.transformY(p.getX(), p.getY());
+        }
+        return this;
+    }
+
+    public Kind getKind() {
+        return myKind;
+    }
+
+    /**
+     * The number of vertices of a polygon, or 2 for a segment.
+     *
+     * @return
+     */
+    public int getPointCount() {
+        return myCount;
+    }
+
+    public float getPointX(int i) {
+        return myPoints[2*i];
+    }
+
+    public float getPointY(int i) {
+        return myPoints[2*i + 1];
+    }
+
+    /**
+     * Do these two shapes overlap? Shapes that only touch overlap.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public static boolean overlaps(CollisionShape a, CollisionShape b) {
+        if (a.myKind == Kind.CIRCLE && b.myKind == Kind.CIRCLE) {
+            float dx = a.myX - b.myX, dy = a.myY - b.myY, r = a.myRadius + b.myRadius;
+            return dx*dx + dy*dy <= r*r;
+        }
+        if (a.myKind == Kind.CIRCLE)
+            return circleOverlaps(a, b);
+        if (b.myKind == Kind.CIRCLE)
+            return circleOverlaps(b, a);
+        return !separatedByEdges(a, b) && !separatedByEdges(b, a);
+    }
+
+    /**
+     * Does the circle c overlap the polygon or segment p?
+     */
+    private static boolean circleOverlaps(CollisionShape c, CollisionShape p) {
+        if (p.myKind == Kind.SEGMENT) {
+            float d = distanceSquaredToSegment(c.myX, c.myY, p.myPoints[0], p.myPoints[1],
+                    p.myPoints[2], p.myPoints[3]);
+            return d <= c.myRadius * c.myRadius;
+        }
+        if (p.myCount == 0)
+            return false;
+
+        // The axis from the centre to the nearest vertex
+        float[] pts = p.myPoints;
+        float nearestX = 0, nearestY = 0, nearest = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < p.myCount; i++) {
+            float dx = pts[2*i] - c.myX, dy = pts[2*i + 1] - c.myY;
+            float d = dx*dx + dy*dy;
+            if (d < nearest) {
+                nearest = d;
+                nearestX = dx;
+                nearestY = dy;
+            }
+        }
+        if (separatedOnAxis(c, p, nearestX, nearestY))
+            return false;
+
+        // The polygon's edge normals
+        for (int i = 0, j = p.myCount - 1; i < p.myCount; j = i++) {
+            float nx = pts[2*i + 1] - pts[2*j + 1];
+            float ny = pts[2*j] - pts[2*i];
+            if (separatedOnAxis(c, p, nx, ny))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Is there a separating axis among the edge normals of a (and, if a is a segment, its
+     * direction)?
+     */
+    private static boolean separatedByEdges(CollisionShape a, CollisionShape b) {
+        float[] pts = a.myPoints;
+        if (a.myKind == Kind.SEGMENT) {
+            float dx = pts[2] - pts[0], dy = pts[3] - pts[1];
+            return separatedOnAxis(a, b, -dy, dx) || separatedOnAxis(a, b, dx, dy);
+        }
+        for (int i = 0, j = a.myCount - 1; i < a.myCount; j = i++) {
+            float nx = pts[2*i + 1] - pts[2*j + 1];
+            float ny = pts[2*j] - pts[2*i];
+            if (separatedOnAxis(a, b, nx, ny))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean separatedOnAxis(CollisionShape a, CollisionShape b, float ax, 
+            float ay) {
+        if (ax == 0 && ay == 0)
+            return false;
+        // Compare the projections without normalising the axis, so the circle's radius has to
+        // be scaled by the axis length instead
+        float length = (float) Math.sqrt(ax*ax + ay*ay);
+        float aMin = a.min(ax, ay, length), aMax = a.max(ax, ay, length);
+        float bMin = b.min(ax, ay, length), bMax = b.max(ax, ay, length);
+        return aMax < bMin || bMax < aMin;
+    }
+
+    private float min(float ax, float ay, float length) {
+        if (myKind == Kind.CIRCLE)
+            return myX*ax + myY*ay - myRadius*length;
+        float min = Float.POSITIVE_INFINITY;
+        for (int i = 0; i < myCount; i++)
+            min = Math.min(min, myPoints[2*i]*ax + myPoints[2*i + 1]*ay);
+        return min;
+    }
+
+    private float max(float ax, float ay, float length) {
+        if (myKind == Kind.CIRCLE)
+            return myX*ax + myY*ay + myRadius*length;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < myCount; i++)
+            max = Math.max(max, myPoints[2*i]*ax + myPoints[2*i + 1]*ay);
+        return max;
+    }
+
+    /**
+     * The square of the distance from the point (px, py) to the segment from (x1, y1) to 
+     * (x2, y2).
+     */
+    static float distanceSquaredToSegment(float px, float py, float x1, float y1, float x2, 
+            float y2) {
+        float dx = x2 - x1, dy = y2 - y1;
+        float lengthSquared = dx*dx + dy*dy;
+        float t = lengthSquared == 0 ? 0 
+                : MathUtil.clamp(((px - x1)*dx + (py - y1)*dy) / lengthSquared, 0, 1);
+        float cx = x1 + t*dx - px, cy = y1 + t*dy - py;
+        return cx*cx + cy*cy;
+    }
+}
@@ -0,0 +1,245 @@
+package unsw.graphics.scene;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import unsw.graphics.geometry.Bounds2D;
+
+/**
+ * Finds the pairs of objects in a scene that are touching each other, and tells them when they
+ * start touching, keep touching and stop touching.
+ *
+ * Only objects with a collision layer or mask (see SceneObject.setCollisionLayer()) are tested.
+ * The scene runs the collision system once per update, after the objects have been updated.
+ *
+ * The broad phase is sweep-and-prune: the objects are sorted by the left edge of their bounding
+ * boxes, and each object is only compared with the objects that start before it ends. Pairs
+ * whose boxes overlap, and whose layers allow it, are then tested exactly using their
+ * CollisionShapes.
+ *
+ * @author Benny Hwang
+ */
+public class CollisionSystem {
+
+    private static final Comparator<SceneObject> BY_MIN_X = new Comparator<SceneObject>() {
+        @Override
+        public int compare(SceneObject a, SceneObject b) {
+            return Float.compare(a.getGlobalBounds().getMinX(), b.getGlobalBounds().getMinX());
+        }
+    };
+
+    // The objects taking part in this step, sorted by the left edge of their bounds
+    private final List<SceneObject> myObjects;
+
+    // The pairs that were touching after the last step, and the pairs touching now
+    private Map<Contact, Contact> myContacts;
+    private Map<Contact, Contact> myCurrent;
+    private final Contact myProbe;
+
+    // Callbacks are collected and made after all the pairs have been found
+    private final List<Contact> myEntered;
+    private final List<Contact> myStayed;
+    private final List<Contact> myExited;
+
+    private int myPairsTested;
+
+    /**
+     * Construct a collision system with no contacts.
+     */
+    public CollisionSystem() {
+        myObjects = new ArrayList<SceneObject>();
+        myContacts = new HashMap<Contact, Contact>();
+        myCurrent = new HashMap<Contact, Contact>();
+        myProbe = new Contact(null, null);
+        myEntered = new ArrayList<Contact>();
+        myStayed = new ArrayList<Contact>();
+        myExited = new ArrayList<Contact>();
+    }
+
+    /**
+     * Find the touching objects among the objects in the given registry, and make the contact
+     * callbacks.
+     *
+     * @param registry
+     */
+    public void step(SceneRegistry registry) {
+        collect(registry);
+        Collections.sort(myObjects, BY_MIN_X);
+        findContacts();
+
+        // Anything left over from the last step has stopped touching
+        for (Contact c : myContacts.values())
+            myExited.add(c);
+        myContacts.clear();
+        Map<Contact, Contact> swap = myContacts;
+        myContacts = myCurrent;
+        myCurrent = swap;
+        myObjects.clear();
+
+        dispatch();
+    }
+
+    private void collect(SceneRegistry registry) {
+        for (int i = 0; i < registry.size(); i++) {
+            SceneObject obj = registry.get(i);
+            if ((obj.getCollisionLayer() != 0 || obj.getCollisionMask() != 0)
+                    && !obj.getGlobalBounds().isEmpty() && obj.isShowingInTree()) {
+                myObjects.add(obj);
+            }
+        }
+    }
+
+    private void findContacts() {
+        myPairsTested = 0;
+        int n = myObjects.size();
+        for (int i = 0; i < n; i++) {
+            SceneObject a = myObjects.get(i);
+            Bounds2D boundsA = a.getGlobalBounds();
+            for (int j = i + 1; j < n; j++) {
+                SceneObject b = myObjects.get(j);
+                Bounds2D boundsB = b.getGlobalBounds();
+                if (boundsB.getMinX() > boundsA.getMaxX()) {
+                    // Everything after this starts even further right
+                    break;
+                }
+                if (!canCollide(a, b) || !boundsA.intersects(boundsB))
+                    continue;
+                myPairsTested++;
+                if (touching(a, b))
+                    addContact(a, b);
+            }
+        }
+    }
+
+    /**
+     * Do the layers of these two objects allow them to collide?
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public static boolean canCollide(SceneObject a, SceneObject b) {
+        return (a.getCollisionLayer() & b.getCollisionMask()) != 0
+                && (b.getCollisionLayer() & a.getCollisionMask()) != 0;
+    }
+
+    /**
+     * Test two objects whose bounding boxes overlap exactly. Objects without a shape are 
+     * treated as their bounding box, which has already been tested.
+     */
+    private static boolean touching(SceneObject a, SceneObject b) {
+        CollisionShape shapeA = a.getWorldCollisionShape();
+        CollisionShape shapeB = b.getWorldCollisionShape();
+        if (shapeA == null || shapeB == null)
+            return true;
+        return CollisionShape.overlaps(shapeA, shapeB);
+    }
+
+    private void addContact(SceneObject a, SceneObject b) {
+        myProbe.a = a;
+        myProbe.b = b;
+        Contact contact = myContacts.remove(myProbe);
+        if (contact == null) {
+            contact = new Contact(a, b);
+            myEntered.add(contact);
+        } else {
+            myStayed.add(contact);
+        }
+        myCurrent.put(contact, contact);
+        myProbe.a = myProbe.b = null;
+    }
+
+    private void dispatch() {
+        try {
+            for (int i = 0; i < myExited.size(); i++) {
+                Contact c = myExited.get(i);
+                c.a.onCollisionExit(c.b);
+                c.b.onCollisionExit(c.a);
+            }
+            for (int i = 0; i < myEntered.size(); i++) {
+                Contact c = myEntered.get(i);
+                c.a.onCollisionEnter(c.b);
+                c.b.onCollisionEnter(c.a);
+            }
+            for (int i = 0; i < myStayed.size(); i++) {
+                Contact c = myStayed.get(i);
+                c.a.onCollisionStay(c.b);
+                c.b.onCollisionStay(c.a);
+            }
+        } finally {
+            myExited.clear();
+            myEntered.clear();
+            myStayed.clear();
+        }
+    }
+
+    /**
+     * Is the given pair of objects touching, as of the last step?
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    public boolean isTouching(SceneObject a, SceneObject b) {
+        myProbe.a = a;
+        myProbe.b = b;
+        boolean touching = myContacts.containsKey(myProbe);
+        myProbe.a = myProbe.b = null;
+        return touching;
+    }
+
+    /**
+     * The number of pairs of objects touching after the last step.
+     *
+     * @return
+     */
+    public int getContactCount() {
+        return myContacts.size();
+    }
+
+    /**
+     * The number of pairs whose bounding boxes overlapped in the last step, and so were tested
+     * exactly.
+     *
+     * @return
+     */
+    public int getPairsTested() {
+        return myPairsTested;
+    }
+
+    /**
+     * Forget about every contact, without making any callbacks.
+     */
+    public void clear() {
+        myContacts.clear();
+    }
+
+    /**
+     * An unordered pair of touching objects.
+     */
+    private static class Contact {
+        private SceneObject a, b;
+
+        Contact(SceneObject a, SceneObject b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Contact))
+                return false;
+            Contact c = (Contact) o;
+            return (a == c.a && b == c.b) || (a == c.b && b == c.a);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(a) ^ System.identityHashCode(b);
+        }
+    }
+}
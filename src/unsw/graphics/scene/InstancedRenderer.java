@@ -0,0 +1,266 @@
+package unsw.graphics.scene;
+
+import java.awt.Color;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.jogamp.opengl.GL;
+import com.jogamp.opengl.GL3;
+import com.jogamp.opengl.util.GLBuffers;
+
+import unsw.graphics.Affine2D;
+import unsw.graphics.Shader;
+import unsw.graphics.VertexBuffer;
+import unsw.graphics.geometry.Polygon2D;
+
+/**
+ * Draws many copies of the same polygons with a few instanced draw calls.
+ *
+ * Polygons are submitted along with their model transform and color, and grouped by polygon and
+ * by whether they are filled or outlined. When the renderer is flushed the transforms and colors
+ * of every copy are uploaded to one buffer as per-instance vertex attributes, and each group is
+ * drawn with a single glDrawArraysInstanced(), however many copies it has.
+ *
+ * The groups are drawn in the order they were first submitted in, so copies in different groups
+ * are not necessarily drawn in the order they were submitted. A fleet of ships drawn this way
+ * draws all the hulls, then all the outlines, then all the sails, which is only different if the
+ * ships overlap.
+ *
+ * @author Benny Hwang
+ */
+public class InstancedRenderer {
+
+    /**
+     * The files containing the shader used to draw the instances.
+     */
+    public static final String VERTEX_SHADER = "shaders/vertex_2d_instanced.glsl";
+    public static final String FRAGMENT_SHADER = "shaders/fragment_2d_instanced.glsl";
+
+    // Each instance is an i-axis, j-axis and origin followed by a color
+    private static final int FLOATS_PER_INSTANCE = 9;
+    private static final int STRIDE = FLOATS_PER_INSTANCE * Float.BYTES;
+
+    private Shader myShader;
+
+    // The groups of instances, in the order they are drawn this frame
+    private final Map<Polygon2D, Batch> myFills;
+    private final Map<Polygon2D, Batch> myOutlines;
+    private final List<Batch> myOrder;
+
+    private final VertexBuffer myInstanceBuffer;
+    private FloatBuffer myData;
+
+    private int myDrawCalls;
+    private int myInstances;
+
+    /**
+     * Construct a renderer that loads its shader the first time it is flushed.
+     */
+    public InstancedRenderer() {
+        this(null);
+    }
+
+    /**
+     * Construct a renderer that draws with the given instanced shader.
+     *
+     * @param shader
+     */
+    public InstancedRenderer(Shader shader) {
+        myShader = shader;
+        myFills = new IdentityHashMap<Polygon2D, Batch>();
+        myOutlines = new IdentityHashMap<Polygon2D, Batch>();
+        myOrder = new ArrayList<Batch>();
+        myInstanceBuffer = new VertexBuffer();
+        myData = GLBuffers.newDirectFloatBuffer(FLOATS_PER_INSTANCE * 64);
+    }
+
+    /**
+     * Add a copy of the given polygon to be drawn at the next flush.
+     *
+     * @param polygon
+     * @param outline true to draw the outline, false to fill it
+     * @param color
+     * @param transform The model transform of the copy. It is copied, so it can be reused.
+     */
+    public void submit(Polygon2D polygon, boolean outline, Color color, Affine2D transform) {
+        Map<Polygon2D, Batch> batches = outline ? myOutlines : myFills;
+        Batch batch = batches.get(polygon);
+        if (batch == null) {
+            batch = new Batch(polygon, outline);
+            batches.put(polygon, batch);
+        }
+        if (batch.count == 0)
+            myOrder.add(batch);
+        batch.add(transform, color);
+    }
+
+    /**
+     * Draw everything submitted since the last flush, and start again.
+     *
+     * The view matrix is taken from the given camera. The shader that was in use before is in
+     * use again afterwards.
+     *
+     * @param gl
+     * @param camera
+     */
+    public void flush(GL3 gl, Camera camera) {
+        myDrawCalls = 0;
+        myInstances = 0;
+        if (myOrder.isEmpty())
+            return;
+
+        // Copy every batch into one buffer, so there is only one upload
+        int total = 0;
+        for (int i = 0; i < myOrder.size(); i++)
+            total += myOrder.get(i).count * FLOATS_PER_INSTANCE;
+        if (myData.capacity() < total)
+            myData = GLBuffers.newDirectFloatBuffer(Math.max(total, myData.capacity() * 2));
+        myData.clear();
+        for (int i = 0; i < myOrder.size(); i++) {
+            Batch batch = myOrder.get(i);
+            batch.offset = myData.position();
+            myData.put(batch.data, 0, batch.count * FLOATS_PER_INSTANCE);
+        }
+        myData.flip();
+
+        if (myShader == null)
+            myShader = new Shader(gl, VERTEX_SHADER, FRAGMENT_SHADER);
+        Shader previous = Shader.getCurrent();
+        myShader.use(gl);
+        camera.setView(gl);
+
+        myInstanceBuffer.bind(gl);
+        myInstanceBuffer.upload(gl, myData, total, GL3.GL_STREAM_DRAW);
+        setInstanceAttributes(gl, true);
+
+        for (int i = 0; i < myOrder.size(); i++) {
+            Batch batch = myOrder.get(i);
+
+            // The instance attributes come from this batch's part of the instance buffer, the 
+            // positions from the polygon's own buffer
+            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, myInstanceBuffer.getId());
+            long offset = (long) batch.offset * Float.BYTES;
+            gl.glVertexAttribPointer(Shader.INSTANCE_AXIS_I, 2, GL.GL_FLOAT, false, STRIDE, 
+                    offset);
+            gl.glVertexAttribPointer(Shader.INSTANCE_AXIS_J, 2, GL.GL_FLOAT, false, STRIDE, 
+                    offset + 2 * Float.BYTES);
+            gl.glVertexAttribPointer(Shader.INSTANCE_ORIGIN, 2, GL.GL_FLOAT, false, STRIDE, 
+                    offset + 4 * Float.BYTES);
+            gl.glVertexAttribPointer(Shader.INSTANCE_COLOR, 3, GL.GL_FLOAT, false, STRIDE, 
+                    offset + 6 * Float.BYTES);
+
+            if (batch.outline)
+                batch.polygon.drawOutlineInstances(gl, batch.count);
+            else
+                batch.polygon.drawInstances(gl, batch.count);
+            myDrawCalls++;
+            myInstances += batch.count;
+        }
+
+        setInstanceAttributes(gl, false);
+        if (previous != null)
+            previous.use(gl);
+        clear();
+    }
+
+    private static void setInstanceAttributes(GL3 gl, boolean enabled) {
+        for (int attribute = Shader.INSTANCE_AXIS_I; attribute <= Shader.INSTANCE_COLOR; 
+                attribute++) {
+            if (enabled)
+                gl.glEnableVertexAttribArray(attribute);
+            else
+                gl.glDisableVertexAttribArray(attribute);
+            gl.glVertexAttribDivisor(attribute, enabled ? 1 : 0);
+        }
+    }
+
+    /**
+     * Forget everything submitted since the last flush. Groups that weren't used this time are 
+     * thrown away, so polygons that are no longer drawn aren't kept alive.
+     */
+    private void clear() {
+        forgetUnused(myFills);
+        forgetUnused(myOutlines);
+        for (int i = 0; i < myOrder.size(); i++)
+            myOrder.get(i).count = 0;
+        myOrder.clear();
+    }
+
+    private static void forgetUnused(Map<Polygon2D, Batch> batches) {
+        Iterator<Batch> it = batches.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().count == 0)
+                it.remove();
+        }
+    }
+
+    /**
+     * The number of instanced draw calls made by the last flush.
+     *
+     * @return
+     */
+    public int getDrawCallCount() {
+        return myDrawCalls;
+    }
+
+    /**
+     * The number of instances drawn by the last flush.
+     *
+     * @return
+     */
+    public int getInstanceCount() {
+        return myInstances;
+    }
+
+    /**
+     * Release the OpenGL resources held by this renderer.
+     *
+     * @param gl
+     */
+    public void destroy(GL3 gl) {
+        myInstanceBuffer.release(gl);
+        if (myShader != null) {
+            myShader.destroy(gl);
+            myShader = null;
+        }
+    }
+
+    /**
+     * The copies of one polygon, either filled or outlined.
+     */
+    private static class Batch {
+        private final Polygon2D polygon;
+        private final boolean outline;
+        private float[] data = new float[FLOATS_PER_INSTANCE * 16];
+        private int count;
+        private int offset;
+
+        Batch(Polygon2D polygon, boolean outline) {
+            this.polygon = polygon;
+            this.outline = outline;
+        }
+
+        void add(Affine2D t, Color color) {
+            int i = count * FLOATS_PER_INSTANCE;
+            if (i + FLOATS_PER_INSTANCE > data.length) {
+                float[] bigger = new float[data.length * 2];
+                System.arraycopy(data, 0, bigger, 0, i);
+                data = bigger;
+            }
+            data[i] = t.getIX();
+            data[i + 1] = t.getIY();
+            data[i + 2] = t.getJX();
+            data[i + 3] = t.getJY();
+            data[i + 4] = t.getOriginX();
+            data[i + 5] = t.getOriginY();
+            data[i + 6] = color.getRed() / 255f;
+            data[i + 7] = color.getGreen() / 255f;
+            data[i + 8] = color.getBlue() / 255f;
+            count++;
+        }
+    }
+}
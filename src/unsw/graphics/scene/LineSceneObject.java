@@ -4,10 +4,10 @@ import java.awt.Color;
 
 import com.jogamp.opengl.GL3;
 
+import unsw.graphics.Affine2D;
 import unsw.graphics.CoordFrame2D;
-import unsw.graphics.Matrix3;
 import unsw.graphics.Shader;
-import unsw.graphics.Vector3;
+import unsw.graphics.geometry.Bounds2D;
 import unsw.graphics.geometry.Line2D;
 import unsw.graphics.geometry.Point2D;
 
@@ -25,9 +25,15 @@ import unsw.graphics.geometry.Point2D;
  */
 public class LineSceneObject extends SceneObject {
 	
+	// How close a point has to be to hit the line when the scene can't say how big a pixel is
+	private static final float MIN_TOLERANCE = 0.001f;
+	
 	private Color myLineColor;
 	private Point2D p1;
 	private Point2D p2;
+	
+	// The line drawn for this object. Rebuilt when either end point changes.
+	private Line2D myLine;
 
 	//Create a LineSceneObject from (0,0) to (1,0)
 	public LineSceneObject(SceneObject parent, Color lineColor) {
@@ -71,6 +77,8 @@ public class LineSceneObject extends SceneObject {
 	 */
 	public void setP1(Point2D p1) {
 		this.p1 = p1;
+		myLine = null;
+		invalidateBounds();
 	}
 
 	/**
@@ -85,6 +93,8 @@ public class LineSceneObject extends SceneObject {
 	 */
 	public void setP2(Point2D p2) {
 		this.p2 = p2;
+		myLine = null;
+		invalidateBounds();
 	}
 
 	/**
@@ -96,69 +106,56 @@ public class LineSceneObject extends SceneObject {
 	@Override
 	public void drawSelf(GL3 gl, CoordFrame2D frame) {
 		if (getLineColor() != null) {
-			Line2D lineToDraw = new Line2D(this.getP1(), this.getP2());
+			if (myLine == null) {
+				myLine = new Line2D(this.getP1(), this.getP2());
+			}
+			Scene scene = getScene();
+			RenderQueue queue = scene == null ? null : scene.getCommandQueue();
+			if (queue != null) {
+				queue.submit(myLine, getLineColor(), frame.getTransform(), getDrawLayer());
+				return;
+			}
 			Shader.setPenColor(gl, getLineColor());
-			lineToDraw.draw(gl, frame);
+			myLine.draw(gl, frame);
 		}
 	}
 
+	@Override
+	protected boolean getLocalBounds(Bounds2D bounds) {
+		bounds.add(p1.getX(), p1.getY());
+		bounds.add(p2.getX(), p2.getY());
+		return true;
+	}
+
+	@Override
+	protected boolean getCollisionShape(CollisionShape shape) {
+		Affine2D global = getGlobalTransform();
+		shape.setSegment(global.transformX(p1.getX(), p1.getY()), 
+				global.transformY(p1.getX(), p1.getY()),
+				global.transformX(p2.getX(), p2.getY()), 
+				global.transformY(p2.getX(), p2.getY()));
+		return true;
+	}
+
 	/**
 	 * Collision detection for line
 	 * 
+	 * The point hits the line if it is within the scene's pick radius of it, measured to the 
+	 * nearest point on the segment. The world-space end points are cached with the object's 
+	 * collision shape, so they are only recomputed after the line moves.
+	 * 
 	 * @param Point2D p
 	 * @return true if a point lie on the line
 	 */
 	@Override
 	public boolean collision(Point2D p) {
-		
-		// convert the two end points to global using the similar method from SceneObject but change the vector
-		Matrix3 translationMatrix, rotationMatrix, scaleMatrix, transformationMatrix;
-    	Vector3 currentVector = new Vector3(this.getP1().getX(), this.getP1().getY(), 1);
-    	SceneObject currentObject = this;
-    	while (currentObject.getParent() != null) {
-    		translationMatrix = Matrix3.translation(currentObject.getPosition());
-    		rotationMatrix = Matrix3.rotation(currentObject.getRotation());
-    		scaleMatrix = Matrix3.scale(currentObject.getScale(), currentObject.getScale());
-    		transformationMatrix = translationMatrix.multiply(rotationMatrix).multiply(scaleMatrix);
-    		currentVector = transformationMatrix.multiply(currentVector);
-    		currentObject = currentObject.getParent();
-    	}
-    	
-    	Point2D globalPoint1 = currentVector.asPoint2D();
-    	
-    	// reset to compute the second point
-    	currentVector = new Vector3(this.getP2().getX(), this.getP2().getY(), 1);
-    	currentObject = this;
-    	translationMatrix = null;
-    	rotationMatrix = null;
-    	scaleMatrix = null;
-    	transformationMatrix = null;
-    	
-    	while (currentObject.getParent() != null) {
-    		translationMatrix = Matrix3.translation(currentObject.getPosition());
-    		rotationMatrix = Matrix3.rotation(currentObject.getRotation());
-    		scaleMatrix = Matrix3.scale(currentObject.getScale(), currentObject.getScale());
-    		transformationMatrix = translationMatrix.multiply(rotationMatrix).multiply(scaleMatrix);
-    		currentVector = transformationMatrix.multiply(currentVector);
-    		currentObject = currentObject.getParent();
-    	}
-    	
-    	Point2D globalPoint2 = currentVector.asPoint2D();
-    	
-    	// Math for if a point lies 
-    	// Find the slope of the line to form the equation and sub p in. If p satisfies, then check if p is not out of bound
-    	float slope = (globalPoint2.getY() - globalPoint1.getY())/(globalPoint2.getX() - globalPoint1.getX());
-    	// y = mx+b, so b=y-mx
-    	float b = globalPoint1.getY() - slope*globalPoint1.getX();
-    	
-    	// Check if the p satisfies, use an error acceptable range of 0.001?
-    	if ((Math.abs((slope*p.getX() + b) - p.getY()) <= 0.001) && (Math.min(globalPoint1.getX(), globalPoint2.getX())<=p.getX())
-    			&& (p.getX()<= Math.max(globalPoint1.getX(), globalPoint2.getX()))
-    			&& (Math.min(globalPoint1.getY(), globalPoint2.getY())<=p.getY())
-    			&& (p.getY()<= Math.max(globalPoint1.getY(), globalPoint2.getY()))){
-    		return true;
-    	}
-		return false;
+		CollisionShape segment = getWorldCollisionShape();
+		Scene scene = getScene();
+		float tolerance = Math.max(scene == null ? 0 : scene.getPickTolerance(), MIN_TOLERANCE);
+		float d = CollisionShape.distanceSquaredToSegment(p.getX(), p.getY(), 
+				segment.getPointX(0), segment.getPointY(0), 
+				segment.getPointX(1), segment.getPointY(1));
+		return d <= tolerance * tolerance;
 	}
 
 	
@@ -1,15 +1,13 @@
 package unsw.graphics.scene;
 
 import java.awt.Color;
-import java.util.ArrayList;
-import java.util.List;
 
 import com.jogamp.opengl.GL3;
 
+import unsw.graphics.Affine2D;
 import unsw.graphics.CoordFrame2D;
-import unsw.graphics.Matrix3;
 import unsw.graphics.Shader;
-import unsw.graphics.Vector3;
+import unsw.graphics.geometry.Bounds2D;
 import unsw.graphics.geometry.Point2D;
 import unsw.graphics.geometry.Polygon2D;
 
@@ -107,6 +105,26 @@ public class PolygonalSceneObject extends SceneObject {
     public void drawSelf(GL3 gl, CoordFrame2D frame) {
 
         // TODO: Write this method
+    	Scene scene = getScene();
+    	InstancedRenderer batch = scene == null ? null : scene.getBatchRenderer();
+    	if (batch != null) {
+    		// Leave the drawing to the renderer, which draws all copies of the polygon at once
+    		if (getFillColor() != null)
+    			batch.submit(myPolygon, false, getFillColor(), frame.getTransform());
+    		if (getLineColor() != null)
+    			batch.submit(myPolygon, true, getLineColor(), frame.getTransform());
+    		return;
+    	}
+    	RenderQueue queue = scene == null ? null : scene.getCommandQueue();
+    	if (queue != null) {
+    		// Leave the drawing to the queue, which sorts it to save state changes
+    		if (getFillColor() != null)
+    			queue.submit(myPolygon, false, getFillColor(), frame.getTransform(), getDrawLayer());
+    		if (getLineColor() != null)
+    			queue.submit(myPolygon, true, getLineColor(), frame.getTransform(), getDrawLayer());
+    		return;
+    	}
+    	
     	Color colorToFill = getFillColor();
     	if (colorToFill != null) {
     		// use shader to set color
@@ -122,48 +140,70 @@ public class PolygonalSceneObject extends SceneObject {
 
     }
 
+    @Override
+    protected boolean getLocalBounds(Bounds2D bounds) {
+        myPolygon.getBounds(bounds);
+        return true;
+    }
+
+    /**
+     * The polygon in world coordinates. Collision treats it as convex, like Polygon2D.
+     */
+    @Override
+    protected boolean getCollisionShape(CollisionShape shape) {
+        shape.setPolygon(myPolygon.getCoordinates(), myPolygon.size(), getGlobalTransform());
+        return true;
+    }
+
     /**
-	 * Collision detection for line
+	 * Collision detection for polygon
 	 * 
 	 * @param Point2D p
-	 * @return true if a point lie on the line
+	 * @return true if the point lies inside the polygon
 	 */
 	@Override
 	public boolean collision(Point2D p) {
 		// Use ray cast algorithm to detect if a point is inside a polygon. If a ray 
 		// cross edges odd number of times, it indicate the point is inside the polygon.
-		List<Point2D> polygonPoints = new ArrayList<Point2D>(this.myPolygon.getPoints());
-		
 		// Since there can be a large number of points, its more appropriate to do this in local coordinate system.
-		// compute the inverse model view matrix
-		SceneObject currentObj = this;
-		Matrix3 translationMatrix, rotationMatrix, scaleMatrix, transformationMatrix = Matrix3.identity();
-		translationMatrix = Matrix3.translation(-currentObj.getGlobalPosition().getX(), -currentObj.getGlobalPosition().getY());
-    	rotationMatrix = Matrix3.rotation(-currentObj.getGlobalRotation());
-    	scaleMatrix = Matrix3.scale(1f/currentObj.getGlobalScale(), 1f/currentObj.getGlobalScale());
-    	transformationMatrix = scaleMatrix.multiply(rotationMatrix).multiply(translationMatrix).multiply(transformationMatrix);
-        
-
-        // To find the new local vector, we can now use the transformation matrix multiplied by the global vector 
-        // Local = M^-1 * Global
-        Vector3 globalVector = new Vector3(p.getX(), p.getY(), 1);
-        p = transformationMatrix.multiply(globalVector).asPoint2D();
-
-        // Adapted the solution provided in https://stackoverflow.com/questions/8721406/how-to-determine-if-a-point-is-inside-a-2d-convex-polygon
-        // to determine if the point is inside polygon. 
-        boolean collided = false;
-        int nPoints = polygonPoints.size();
-        int i, j;
-        for (i=0, j=nPoints-1; i<nPoints; j=i++) {
-        	if ((polygonPoints.get(i).getY() >= p.getY()) != (polygonPoints.get(j).getY() >= p.getY()) &&
-        			(p.getX() <= ((polygonPoints.get(j).getX() - polygonPoints.get(i).getX()) 
-        			* (p.getY() - polygonPoints.get(i).getY()))/(polygonPoints.get(j).getY()-polygonPoints.get(i).getY())
-        			+ polygonPoints.get(i).getX())) {
-        		collided = !collided;
-        	}
-        }
-        
-		return collided;
+		// Local = M^-1 * Global, where the inverse world transform is cached until the object moves.
+		Affine2D inverse = getInverseGlobalTransform();
+		if (inverse == null) {
+			// Scaled down to nothing
+			return false;
+		}
+		float x = inverse.transformX(p.getX(), p.getY());
+		float y = inverse.transformY(p.getX(), p.getY());
+		return myPolygon.contains(x, y);
+	}
+
+	@Override
+	protected boolean collisionLocal(float x, float y, Point2D p) {
+		return myPolygon.contains(x, y);
+	}
+
+	/**
+	 * Test many points against the polygon in one pass. Each point is taken into local 
+	 * coordinates with the cached inverse world transform and tested there with 
+	 * collisionLocal(), so subclasses with a different shape, like CircularSceneObject, give the
+	 * same answers as collision(). The world point passed to collisionLocal() is null.
+	 * 
+	 * @param points The world coordinates of the points, x0, y0, x1, y1...
+	 * @param count The number of points
+	 * @param results Set to whether each point is inside the polygon
+	 * @return the number of points inside the polygon
+	 */
+	public int collision(float[] points, int count, boolean[] results) {
+		Affine2D inverse = getInverseGlobalTransform();
+		int inside = 0;
+		for (int k = 0; k < count; k++) {
+			float x = points[2*k], y = points[2*k + 1];
+			results[k] = inverse != null && collisionLocal(inverse.transformX(x, y), 
+					inverse.transformY(x, y), null);
+			if (results[k])
+				inside++;
+		}
+		return inside;
 	}
     
 
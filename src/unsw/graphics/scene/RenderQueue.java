@@ -0,0 +1,428 @@
+package unsw.graphics.scene;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.jogamp.opengl.GL3;
+
+import unsw.graphics.Affine2D;
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Line2D;
+import unsw.graphics.geometry.Polygon2D;
+
+/**
+ * Collects draw commands while the scene tree is traversed, then draws them sorted so that as
+ * little GL state as possible changes between them.
+ *
+ * Each command is a piece of geometry (a filled or outlined polygon, or a line), a color, a
+ * model transform and a layer, along with the shader that was in use when it was submitted.
+ * When the queue is flushed the commands are sorted by layer, then shader, then geometry, then
+ * color, and drawn in that order. A shader is only used, a vertex buffer only bound and a pen
+ * color only set when it differs from the previous command's. Commands with the same key are
+ * drawn in the order they were submitted.
+ *
+ * Sorting means objects in the same layer aren't necessarily drawn in tree order, so objects
+ * that overlap should be put in different layers with SceneObject.setDrawLayer().
+ *
+ * The commands are kept in arrays that are reused from frame to frame, so once they are big
+ * enough filling and flushing the queue doesn't allocate.
+ *
+ * @author Benny Hwang
+ */
+public class RenderQueue {
+
+    // Each command's transform is an i-axis, j-axis and origin
+    private static final int FLOATS_PER_TRANSFORM = 6;
+
+    // The sort key below the layer is the shader, then the geometry, then the color
+    private static final int GEOMETRY_SHIFT = 24;
+    private static final int SHADER_SHIFT = 48;
+
+    // The kinds of state change counted in the stats
+    private static final int SHADER = 0;
+    private static final int GEOMETRY = 1;
+    private static final int COLOR = 2;
+
+    // The commands, in the order they were submitted
+    private int myCount;
+    private int[] myLayers;
+    private long[] myKeys;
+    private Geometry[] myGeometry;
+    private Shader[] myShaders;
+    private Color[] myColors;
+    private float[] myTransforms;
+
+    // The order the commands are drawn in, and scratch space for sorting it
+    private int[] myOrder;
+    private int[] mySortScratch;
+
+    // The geometry submitted recently, each with a small ID to sort by
+    private final Map<Polygon2D, Geometry> myFills;
+    private final Map<Polygon2D, Geometry> myOutlines;
+    private final Map<Line2D, Geometry> myLines;
+
+    // The shaders used this frame. The ID of each is its index.
+    private final List<Shader> myShaderIds;
+
+    private final CoordFrame2D myFrame;
+
+    // Whether each command is drawn with the shader that was current when it was submitted, or
+    // with whatever shader is current when it is drawn
+    private final boolean amTrackingShaders;
+
+    // The state changes needed to draw the last flush's commands unsorted and sorted
+    private final int[] myUnsortedChanges;
+    private final int[] mySortedChanges;
+    private int myLastCount;
+
+    /**
+     * Construct an empty queue.
+     */
+    public RenderQueue() {
+        this(true);
+    }
+
+    /**
+     * Construct an empty queue, which can be filled on a thread other than the GL thread if it
+     * doesn't track shaders.
+     *
+     * @param trackShaders Whether to record the current shader with each command
+     */
+    RenderQueue(boolean trackShaders) {
+        amTrackingShaders = trackShaders;
+        myLayers = new int[64];
+        myKeys = new long[64];
+        myGeometry = new Geometry[64];
+        myShaders = new Shader[64];
+        myColors = new Color[64];
+        myTransforms = new float[64 * FLOATS_PER_TRANSFORM];
+        myOrder = new int[64];
+        mySortScratch = new int[64];
+        myFills = new IdentityHashMap<Polygon2D, Geometry>();
+        myOutlines = new IdentityHashMap<Polygon2D, Geometry>();
+        myLines = new IdentityHashMap<Line2D, Geometry>();
+        myShaderIds = new ArrayList<Shader>();
+        myFrame = new CoordFrame2D();
+        myUnsortedChanges = new int[3];
+        mySortedChanges = new int[3];
+    }
+
+    /**
+     * Add a polygon to be drawn at the next flush, with the shader currently in use.
+     *
+     * @param polygon
+     * @param outline true to draw the outline, false to fill it
+     * @param color
+     * @param transform The model transform. It is copied, so it can be reused.
+     * @param layer Commands in higher layers are drawn after, i.e. on top of, lower ones
+     */
+    public void submit(Polygon2D polygon, boolean outline, Color color, Affine2D transform,
+            int layer) {
+        Map<Polygon2D, Geometry> geometry = outline ? myOutlines : myFills;
+        Geometry g = geometry.get(polygon);
+        if (g == null) {
+            g = new Geometry(polygon, outline, null);
+            geometry.put(polygon, g);
+        }
+        add(g, color, transform, layer);
+    }
+
+    /**
+     * Add a line to be drawn at the next flush, with the shader currently in use.
+     *
+     * @param line
+     * @param color
+     * @param transform The model transform. It is copied, so it can be reused.
+     * @param layer Commands in higher layers are drawn after, i.e. on top of, lower ones
+     */
+    public void submit(Line2D line, Color color, Affine2D transform, int layer) {
+        Geometry g = myLines.get(line);
+        if (g == null) {
+            g = new Geometry(null, false, line);
+            myLines.put(line, g);
+        }
+        add(g, color, transform, layer);
+    }
+
+    private void add(Geometry g, Color color, Affine2D transform, int layer) {
+        if (g.id < 0)
+            g.id = myFills.size() + myOutlines.size() + myLines.size() - 1;
+        g.used = true;
+        ensureCapacity(myCount + 1);
+
+        Shader shader = amTrackingShaders ? Shader.getCurrent() : null;
+        int shaderId = myShaderIds.indexOf(shader);
+        if (shaderId < 0) {
+            shaderId = myShaderIds.size();
+            myShaderIds.add(shader);
+        }
+
+        int i = myCount;
+        myLayers[i] = layer;
+        myKeys[i] = ((long) shaderId << SHADER_SHIFT) | ((long) g.id << GEOMETRY_SHIFT)
+                | (color.getRGB() & 0xffffff);
+        myGeometry[i] = g;
+        myShaders[i] = shader;
+        myColors[i] = color;
+        int t = i * FLOATS_PER_TRANSFORM;
+        myTransforms[t] = transform.getIX();
+        myTransforms[t + 1] = transform.getIY();
+        myTransforms[t + 2] = transform.getJX();
+        myTransforms[t + 3] = transform.getJY();
+        myTransforms[t + 4] = transform.getOriginX();
+        myTransforms[t + 5] = transform.getOriginY();
+        myCount++;
+    }
+
+    private void ensureCapacity(int commands) {
+        if (commands <= myLayers.length)
+            return;
+        int capacity = Math.max(commands, myLayers.length * 2);
+        int[] layers = new int[capacity];
+        long[] keys = new long[capacity];
+        Geometry[] geometry = new Geometry[capacity];
+        Shader[] shaders = new Shader[capacity];
+        Color[] colors = new Color[capacity];
+        float[] transforms = new float[capacity * FLOATS_PER_TRANSFORM];
+        System.arraycopy(myLayers, 0, layers, 0, myCount);
+        System.arraycopy(myKeys, 0, keys, 0, myCount);
+        System.arraycopy(myGeometry, 0, geometry, 0, myCount);
+        System.arraycopy(myShaders, 0, shaders, 0, myCount);
+        System.arraycopy(myColors, 0, colors, 0, myCount);
+        System.arraycopy(myTransforms, 0, transforms, 0, myCount * FLOATS_PER_TRANSFORM);
+        myLayers = layers;
+        myKeys = keys;
+        myGeometry = geometry;
+        myShaders = shaders;
+        myColors = colors;
+        myTransforms = transforms;
+        myOrder = new int[capacity];
+        mySortScratch = new int[capacity];
+    }
+
+    /**
+     * The number of commands submitted since the last flush.
+     *
+     * @return
+     */
+    public int size() {
+        return myCount;
+    }
+
+    /**
+     * Sort and draw everything submitted since the last flush, and start again.
+     *
+     * @param gl
+     */
+    public void flush(GL3 gl) {
+        draw(gl, true);
+        clear();
+    }
+
+    /**
+     * Draw the commands, keeping them so they can be drawn again.
+     *
+     * @param gl
+     * @param sorted Whether to sort them first, or draw them in the order they were submitted
+     */
+    void draw(GL3 gl, boolean sorted) {
+        myLastCount = myCount;
+        for (int i = 0; i < myCount; i++)
+            myOrder[i] = i;
+        countChanges(myUnsortedChanges);
+        if (sorted)
+            sort();
+        countChanges(mySortedChanges);
+
+        Shader shader = null;
+        Geometry geometry = null;
+        Color color = null;
+        Affine2D transform = myFrame.getTransform();
+        for (int k = 0; k < myCount; k++) {
+            int i = myOrder[k];
+            if (k == 0 || myShaders[i] != shader) {
+                shader = myShaders[i];
+                // Without a shader, the command uses the current one
+                if (shader != null)
+                    shader.use(gl);
+                // The pen color belongs to the shader
+                color = null;
+            }
+            if (myGeometry[i] != geometry) {
+                geometry = myGeometry[i];
+                geometry.bind(gl);
+            }
+            if (!myColors[i].equals(color)) {
+                color = myColors[i];
+                Shader.setPenColor(gl, color);
+            }
+            int t = i * FLOATS_PER_TRANSFORM;
+            transform.set(myTransforms[t], myTransforms[t + 1], myTransforms[t + 2],
+                    myTransforms[t + 3], myTransforms[t + 4], myTransforms[t + 5]);
+            Shader.setModelMatrix(gl, myFrame);
+            geometry.draw(gl);
+        }
+    }
+
+    /**
+     * Count the state changes needed to draw the commands in the current order.
+     */
+    private void countChanges(int[] changes) {
+        changes[SHADER] = 0;
+        changes[GEOMETRY] = 0;
+        changes[COLOR] = 0;
+        for (int k = 0; k < myCount; k++) {
+            int i = myOrder[k];
+            int j = k == 0 ? -1 : myOrder[k - 1];
+            boolean newShader = j < 0 || myShaders[i] != myShaders[j];
+            if (newShader)
+                changes[SHADER]++;
+            if (j < 0 || myGeometry[i] != myGeometry[j])
+                changes[GEOMETRY]++;
+            if (newShader || !myColors[i].equals(myColors[j]))
+                changes[COLOR]++;
+        }
+    }
+
+    /**
+     * Sort the draw order by layer then key, keeping commands with equal keys in the order they
+     * were submitted. A bottom-up merge sort, so it doesn't allocate.
+     */
+    private void sort() {
+        int[] from = myOrder, to = mySortScratch;
+        for (int width = 1; width < myCount; width *= 2) {
+            for (int lo = 0; lo < myCount; lo += 2 * width) {
+                int mid = Math.min(lo + width, myCount), hi = Math.min(lo + 2 * width, myCount);
+                int a = lo, b = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (a < mid && (b >= hi || compare(from[a], from[b]) <= 0))
+                        to[k] = from[a++];
+                    else
+                        to[k] = from[b++];
+                }
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != myOrder)
+            System.arraycopy(from, 0, myOrder, 0, myCount);
+    }
+
+    private int compare(int i, int j) {
+        if (myLayers[i] != myLayers[j])
+            return myLayers[i] < myLayers[j] ? -1 : 1;
+        return Long.compare(myKeys[i], myKeys[j]);
+    }
+
+    /**
+     * Forget the commands, and the geometry that wasn't drawn this time so that it isn't kept
+     * alive. The rest of the geometry is given new IDs from 0.
+     */
+    void clear() {
+        for (int i = 0; i < myCount; i++) {
+            myGeometry[i] = null;
+            myShaders[i] = null;
+            myColors[i] = null;
+        }
+        myCount = 0;
+        myShaderIds.clear();
+
+        int id = 0;
+        id = forgetUnused(myFills.values().iterator(), id);
+        id = forgetUnused(myOutlines.values().iterator(), id);
+        forgetUnused(myLines.values().iterator(), id);
+    }
+
+    private static int forgetUnused(Iterator<Geometry> it, int id) {
+        while (it.hasNext()) {
+            Geometry g = it.next();
+            if (!g.used) {
+                it.remove();
+            } else {
+                g.used = false;
+                g.id = id++;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * The number of commands drawn by the last flush.
+     *
+     * @return
+     */
+    public int getCommandCount() {
+        return myLastCount;
+    }
+
+    /**
+     * The number of shader, buffer and pen color changes the last flush would have needed if
+     * the commands had been drawn in the order they were submitted.
+     *
+     * @return
+     */
+    public int getStateChangesBefore() {
+        return myUnsortedChanges[SHADER] + myUnsortedChanges[GEOMETRY] + myUnsortedChanges[COLOR];
+    }
+
+    /**
+     * The number of shader, buffer and pen color changes made by the last flush, after sorting.
+     *
+     * @return
+     */
+    public int getStateChangesAfter() {
+        return mySortedChanges[SHADER] + mySortedChanges[GEOMETRY] + mySortedChanges[COLOR];
+    }
+
+    /**
+     * Describe the state changes made by the last flush, before and after sorting, e.g. for
+     * printing once a second.
+     *
+     * @return
+     */
+    public String getStats() {
+        return String.format("%d commands, state changes %d -> %d (shaders %d -> %d, "
+                + "buffers %d -> %d, colors %d -> %d)", myLastCount,
+                getStateChangesBefore(), getStateChangesAfter(),
+                myUnsortedChanges[SHADER], mySortedChanges[SHADER],
+                myUnsortedChanges[GEOMETRY], mySortedChanges[GEOMETRY],
+                myUnsortedChanges[COLOR], mySortedChanges[COLOR]);
+    }
+
+    /**
+     * A polygon, filled or outlined, or a line, along with the ID commands are sorted by.
+     */
+    private static class Geometry {
+        private final Polygon2D polygon;
+        private final boolean outline;
+        private final Line2D line;
+        private int id = -1;
+        private boolean used;
+
+        Geometry(Polygon2D polygon, boolean outline, Line2D line) {
+            this.polygon = polygon;
+            this.outline = outline;
+            this.line = line;
+        }
+
+        void bind(GL3 gl) {
+            if (polygon != null)
+                polygon.bind(gl);
+            else
+                line.bind(gl);
+        }
+
+        void draw(GL3 gl) {
+            if (polygon != null)
+                polygon.drawBound(gl, outline);
+            else
+                line.drawBound(gl);
+        }
+    }
+}
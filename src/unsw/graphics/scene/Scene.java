@@ -2,10 +2,19 @@ package unsw.graphics.scene;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import com.jogamp.opengl.GL3;
 
+import unsw.graphics.Affine2D;
 import unsw.graphics.CoordFrame2D;
+import unsw.graphics.Profiler;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Bounds2D;
 import unsw.graphics.geometry.Point2D;
 
 
@@ -23,19 +32,163 @@ import unsw.graphics.geometry.Point2D;
  * 
  */
 public class Scene {
+    
+    /**
+     * The ways a scene can be drawn.
+     */
+    public enum RenderMode {
+        /**
+         * Every object draws itself as the tree is traversed.
+         */
+        IMMEDIATE,
+        
+        /**
+         * PolygonalSceneObjects are collected by an InstancedRenderer and drawn after the rest of
+         * the tree, with one draw call for each polygon they share. This is much faster for 
+         * scenes with many copies of the same shapes, but objects sharing a polygon are drawn 
+         * together, on top of everything else in the scene.
+         */
+        INSTANCED,
+        
+        /**
+         * Objects submit their geometry to a RenderQueue as the tree is traversed, and the 
+         * commands are sorted by draw layer, shader, geometry and color before they are drawn,
+         * so that as little state as possible changes between them. Objects are only in tree
+         * order between layers, see SceneObject.setDrawLayer().
+         */
+        SORTED
+    }
+    
+    /**
+     * Told about each object found by pickAll().
+     */
+    public interface PickListener {
+        /**
+         * Called for each object containing the point, topmost first.
+         * 
+         * @param obj
+         * @return true to carry on looking for objects under this one, false to stop
+         */
+        boolean onPick(SceneObject obj);
+    }
+
+    // The phases of a frame timed by the profiler
+    private static final Profiler.Scope UPDATE = Profiler.scope("update");
+    private static final Profiler.Scope COLLISION = Profiler.scope("collision");
+    private static final Profiler.Scope DRAW = Profiler.scope("draw");
+    private static final Profiler.Scope SUBMIT = Profiler.scope("submit");
 
     private Camera myCamera;
 
     private SceneObject root;
     private long myTime;
+    
+    // The default limit on the number of fixed timesteps run per frame
+    private static final int DEFAULT_MAX_STEPS = 5;
+    
+    // The length of a fixed timestep in seconds, or 0 if every frame is one variable timestep
+    private float myTimestep;
+    private int myMaxSteps;
+    private float myAccumulator;
+    private float myInterpolation;
+    
+    // The default size of the cells in the spatial grid, in world units
+    private static final float GRID_CELL_SIZE = 4;
+    
+    private final SpatialGrid mySpatialGrid;
+    private final SceneRegistry myRegistry;
+    private final CollisionSystem myCollisions;
+    
+    // Created the first time it is asked for
+    private TransformStore myTransformStore;
+    
+    // Incremented whenever an object is added to or removed from the tree
+    private int myStructureVersion;
+    
+    // The default number of objects a scene needs before it is worth updating in parallel
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 1000;
+    
+    private boolean amParallel;
+    private int myParallelThreshold;
+    private ForkJoinPool myPool;
+    
+    // The part of the world the camera can see, while the scene is being drawn with culling on
+    private boolean amCulling;
+    private final Bounds2D myView;
+    private final Affine2D myCameraTransform;
+    private boolean amViewValid;
+    
+    // The counts for the tree being drawn or captured, and those for the last frame drawn. The
+    // last frame's are only written by the thread that draws, so it can read them at any time, 
+    // even while a pipelined scene's simulation thread is counting the next snapshot.
+    private int myDrawnCount;
+    private int myCulledCount;
+    private int myNodesDrawn;
+    private int myNodesCulled;
+    
+    private RenderMode myRenderMode;
+    private InstancedRenderer myInstancedRenderer;
+    private boolean amBatching;
+    private RenderQueue myRenderQueue;
+    
+    // The queue objects submit to while the tree is traversed, or null if they draw themselves
+    private RenderQueue myActiveQueue;
+    
+    // In pipelined mode the simulation runs on its own thread, and passes snapshots of what to 
+    // draw to the GL thread. There are three: the one being filled, the one being drawn, and the
+    // latest one published, which the other two are swapped with. So neither thread waits for 
+    // the other, and neither touches a snapshot the other is using.
+    private volatile Thread mySimulation;
+    private volatile boolean amSimulating;
+    private volatile Throwable mySimulationError;
+    private final AtomicReference<SceneSnapshot> myLatest;
+    private SceneSnapshot myFront;
+    
+    // Work handed to whichever thread next advances the scene, see invokeLater()
+    private final ConcurrentLinkedQueue<Runnable> myTasks;
+    
+    // The default distance a point can be from a line and still hit it, in pixels
+    private static final float DEFAULT_PICK_RADIUS = 4;
+    
+    private float myPickRadius;
+    
+    // Structural changes to the tree made during update(), applied once it has finished
+    private final List<Runnable> myDeferred;
+    private boolean amUpdating;
 
     /**
      * Construct a new scene with a camera attached to the root object.
      *
      */
     public Scene() {
-        root = new SceneObject();
-        myTime = System.currentTimeMillis();
+        mySpatialGrid = new SpatialGrid(GRID_CELL_SIZE);
+        myRegistry = new SceneRegistry();
+        myCollisions = new CollisionSystem();
+        myDeferred = new ArrayList<Runnable>();
+        amUpdating = false;
+        amParallel = false;
+        myParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+        myPool = ForkJoinPool.commonPool();
+        amCulling = true;
+        myView = new Bounds2D();
+        myCameraTransform = new Affine2D();
+        amViewValid = false;
+        myRenderMode = RenderMode.IMMEDIATE;
+        myInstancedRenderer = null;
+        amBatching = false;
+        myRenderQueue = null;
+        myActiveQueue = null;
+        mySimulation = null;
+        amSimulating = false;
+        myLatest = new AtomicReference<SceneSnapshot>();
+        myTasks = new ConcurrentLinkedQueue<Runnable>();
+        myTimestep = 0;
+        myMaxSteps = DEFAULT_MAX_STEPS;
+        myAccumulator = 0;
+        myInterpolation = 1;
+        myPickRadius = DEFAULT_PICK_RADIUS;
+        root = new SceneObject(this);
+        myTime = System.nanoTime();
         myCamera = new Camera(root);
     }
 
@@ -46,25 +199,642 @@ public class Scene {
     }
 
     public void draw(GL3 gl) {
-
-        // set the view matrix based on the camera position
-        myCamera.setView(gl); 
         
+        // compute the time since the last frame
+        long time = System.nanoTime();
+        float elapsed = (time - myTime) / 1e9f;
+        myTime = time;
+        
+        draw(gl, elapsed);
+    }
+    
+    /**
+     * Run the simulation forward by the given amount of time and draw the scene. 
+     * 
+     * draw(gl) calls this with the real time since the last frame. Calling it directly, e.g. 
+     * when driving a scene without a window, makes the simulation independent of how fast it is
+     * actually drawn.
+     * 
+     * @param gl
+     * @param elapsed The amount of time since the last frame (in seconds)
+     */
+    public void draw(GL3 gl, float elapsed) {
+        if (isPipelined()) {
+            // The simulation thread does the updating
+            drawSnapshot(gl);
+            return;
+        }
+
         // update the objects
-        update();
+        advance(elapsed);
+
+        DRAW.begin();
+        try {
+            // set the view matrix based on the camera position
+            myCamera.setView(gl); 
+            
+            // work out what the camera can see
+            myDrawnCount = 0;
+            myCulledCount = 0;
+            amViewValid = amCulling && computeView();
+    
+            // draw the scene tree
+            if (myRenderMode == RenderMode.INSTANCED) {
+                if (myInstancedRenderer == null) {
+                    myInstancedRenderer = new InstancedRenderer();
+                }
+                amBatching = true;
+                try {
+                    root.draw(gl, CoordFrame2D.identity());
+                } finally {
+                    amBatching = false;
+                }
+                SUBMIT.begin();
+                try {
+                    myInstancedRenderer.flush(gl, myCamera);
+                } finally {
+                    SUBMIT.end();
+                }
+            } else if (myRenderMode == RenderMode.SORTED) {
+                if (myRenderQueue == null) {
+                    myRenderQueue = new RenderQueue();
+                }
+                myActiveQueue = myRenderQueue;
+                try {
+                    root.draw(gl, CoordFrame2D.identity());
+                } finally {
+                    myActiveQueue = null;
+                }
+                SUBMIT.begin();
+                try {
+                    myRenderQueue.flush(gl);
+                } finally {
+                    SUBMIT.end();
+                }
+            } else {
+                root.draw(gl, CoordFrame2D.identity());
+            }
+            amViewValid = false;
+            myNodesDrawn = myDrawnCount;
+            myNodesCulled = myCulledCount;
+        } finally {
+            DRAW.end();
+        }
+    }
+    
+    /**
+     * Compute the rectangle in world coordinates that the camera can see.
+     * 
+     * @return false if the camera's view isn't known
+     */
+    private boolean computeView() {
+        float aspect = myCamera.getAspectRatio();
+        if (!(aspect > 0)) {
+            return false;
+        }
+        // In camera coordinates the view is 2 units high
+        myView.set(-aspect, -1, aspect, 1);
+        myView.setTransformed(myView, myCamera.getDrawGlobalTransform(myCameraTransform));
+        return true;
+    }
+    
+    /**
+     * Turn culling on or off. When it is on (the default), subtrees whose bounds are entirely 
+     * outside the camera's view are skipped when the scene is drawn.
+     * 
+     * Culling uses the objects' current bounds, so with a fixed timestep an object that is 
+     * interpolated back into view from just outside it may not be drawn until the next step.
+     * 
+     * @param culling
+     */
+    public void setCulling(boolean culling) {
+        amCulling = culling;
+    }
+    
+    /**
+     * Get the part of the world the camera can see, while the scene is being drawn.
+     * 
+     * @return the bounds, or null if nothing should be culled
+     */
+    Bounds2D getCullBounds() {
+        return amViewValid ? myView : null;
+    }
+    
+    void countDrawn() {
+        myDrawnCount++;
+    }
+    
+    void countCulled(int nodes) {
+        myCulledCount += nodes;
+    }
+    
+    /**
+     * The number of objects that were inside the camera's view in the last frame. Hidden 
+     * objects and the objects under them aren't counted.
+     * 
+     * In a pipelined scene this is the count for the snapshot drawn last, so it should be read
+     * on the thread that draws the scene, as should getNodesCulled().
+     * 
+     * @return
+     */
+    public int getNodesDrawn() {
+        return myNodesDrawn;
+    }
+    
+    /**
+     * The number of objects that were skipped in the last frame because they were outside the 
+     * camera's view.
+     * 
+     * @return
+     */
+    public int getNodesCulled() {
+        return myNodesCulled;
+    }
+    
+    /**
+     * Choose how the scene is drawn.
+     * 
+     * @param mode
+     */
+    public void setRenderMode(RenderMode mode) {
+        myRenderMode = mode;
+    }
+    
+    public RenderMode getRenderMode() {
+        return myRenderMode;
+    }
+    
+    /**
+     * Use the given renderer when drawing in INSTANCED mode, rather than one created the first
+     * time it is needed.
+     * 
+     * @param renderer
+     */
+    public void setInstancedRenderer(InstancedRenderer renderer) {
+        myInstancedRenderer = renderer;
+    }
+    
+    /**
+     * Get the renderer used when drawing in INSTANCED mode.
+     * 
+     * @return the renderer, or null if none has been set and the scene hasn't been drawn in
+     * INSTANCED mode yet
+     */
+    public InstancedRenderer getInstancedRenderer() {
+        return myInstancedRenderer;
+    }
+    
+    /**
+     * Get the renderer that polygons should be submitted to instead of being drawn.
+     * 
+     * @return the renderer, or null if the scene isn't currently being drawn in INSTANCED mode
+     */
+    InstancedRenderer getBatchRenderer() {
+        return amBatching ? myInstancedRenderer : null;
+    }
+    
+    /**
+     * Get the queue used in SORTED mode, e.g. to read its stats after a frame.
+     * 
+     * @return the queue, or null if the scene hasn't been drawn in SORTED mode yet
+     */
+    public RenderQueue getRenderQueue() {
+        return myRenderQueue;
+    }
+    
+    /**
+     * Use the given queue when drawing in SORTED mode, rather than one created the first time it
+     * is needed.
+     * 
+     * @param queue
+     */
+    public void setRenderQueue(RenderQueue queue) {
+        myRenderQueue = queue;
+    }
+    
+    /**
+     * Get the queue that objects should submit draw commands to instead of drawing.
+     * 
+     * @return the queue, or null if the scene isn't currently being drawn in SORTED mode
+     */
+    RenderQueue getCommandQueue() {
+        return myActiveQueue;
+    }
+    
+    /**
+     * Run the simulation on a thread of its own, at the given rate, while the GL thread draws.
+     * 
+     * After each update the simulation thread takes a snapshot of the draw commands of the 
+     * visible objects, with their world transforms, and publishes it. draw() then just draws the
+     * latest snapshot, so a frame takes as long as the longer of updating and drawing rather 
+     * than both. The snapshots are swapped between the threads without locking.
+     * 
+     * While the pipeline is running the scene tree belongs to the simulation thread. Other 
+     * threads, e.g. input listeners, must not touch it or query it directly, but can hand work
+     * to the simulation thread with invokeLater(). Only polygons, circles and lines are drawn 
+     * from snapshots. Objects that draw with GL themselves in drawSelf() are passed a null GL 
+     * while the snapshot is taken. Snapshots are drawn in tree order, or sorted in SORTED mode. 
+     * INSTANCED mode isn't used.
+     * 
+     * @param updatesPerSecond How often to update the scene and take a snapshot
+     */
+    public synchronized void startPipeline(final float updatesPerSecond) {
+        if (!(updatesPerSecond > 0))
+            throw new IllegalArgumentException("Update rate must be positive: " 
+                    + updatesPerSecond);
+        if (mySimulation != null)
+            throw new IllegalStateException("The pipeline is already running");
+        
+        mySimulationError = null;
+        myLatest.set(new SceneSnapshot());
+        myFront = new SceneSnapshot();
+        amSimulating = true;
+        mySimulation = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    simulate(updatesPerSecond);
+                } catch (Throwable e) {
+                    // Pass it on to the GL thread, which can report it
+                    mySimulationError = e;
+                }
+            }
+        }, "Scene simulation");
+        mySimulation.setDaemon(true);
+        mySimulation.start();
+    }
+    
+    /**
+     * Stop the simulation thread, waiting for it to finish its current update. Afterwards draw()
+     * updates and draws the scene on the GL thread again.
+     */
+    public synchronized void stopPipeline() {
+        if (mySimulation == null)
+            return;
+        amSimulating = false;
+        LockSupport.unpark(mySimulation);
+        boolean interrupted = false;
+        while (mySimulation.isAlive()) {
+            try {
+                mySimulation.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        mySimulation = null;
+        myLatest.set(null);
+        myFront = null;
+        
+        // Don't count the time the pipeline ran as the next frame's
+        myTime = System.nanoTime();
+    }
+    
+    /**
+     * Is the simulation running on its own thread? See startPipeline().
+     * 
+     * @return
+     */
+    public boolean isPipelined() {
+        return mySimulation != null;
+    }
+    
+    /**
+     * Get the number of snapshots the simulation thread has published since the pipeline was 
+     * started.
+     * 
+     * @return the number, or 0 if the scene isn't pipelined
+     */
+    public long getSnapshotCount() {
+        SceneSnapshot latest = myLatest.get();
+        return latest == null ? 0 : latest.getVersion();
+    }
+    
+    /**
+     * Run a task on the thread that updates the scene, just before it next does. This is safe to
+     * call from any thread, and is how other threads should change a pipelined scene.
+     * 
+     * @param task
+     */
+    public void invokeLater(Runnable task) {
+        myTasks.add(task);
+    }
+    
+    /**
+     * The simulation thread's loop.
+     */
+    private void simulate(float updatesPerSecond) {
+        long period = (long) (1e9 / updatesPerSecond);
+        SceneSnapshot back = new SceneSnapshot();
+        long version = 0;
+        long last = System.nanoTime();
+        long next = last;
+        while (amSimulating) {
+            long now = System.nanoTime();
+            advance((now - last) / 1e9f);
+            last = now;
+            
+            capture(back);
+            back.setVersion(++version);
+            // Publish it, and take back whichever snapshot was published before
+            back = myLatest.getAndSet(back);
+            
+            next += period;
+            long wait;
+            while (amSimulating && (wait = next - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (next < System.nanoTime()) {
+                // Running behind, so don't try to catch up
+                next = System.nanoTime();
+            }
+        }
+    }
+    
+    /**
+     * Fill a snapshot with the draw commands of the visible objects, and the camera's view.
+     */
+    private void capture(SceneSnapshot snapshot) {
+        RenderQueue commands = snapshot.getCommands();
+        commands.clear();
+        myCamera.getView(snapshot.getView());
+        
+        myDrawnCount = 0;
+        myCulledCount = 0;
+        amViewValid = amCulling && computeView();
+        myActiveQueue = commands;
+        try {
+            root.draw(null, CoordFrame2D.identity());
+        } finally {
+            myActiveQueue = null;
+            amViewValid = false;
+        }
+        snapshot.setNodeCounts(myDrawnCount, myCulledCount);
+    }
+    
+    /**
+     * Draw the latest snapshot published by the simulation thread, or the one drawn last time if
+     * there isn't a newer one yet.
+     */
+    private void drawSnapshot(GL3 gl) {
+        Throwable error = mySimulationError;
+        if (error != null)
+            throw new IllegalStateException("The simulation thread failed", error);
+        
+        DRAW.begin();
+        try {
+            if (myLatest.get().getVersion() > myFront.getVersion()) {
+                // Only this thread swaps out newer snapshots, so this is at least as new
+                myFront = myLatest.getAndSet(myFront);
+            }
+            if (myFront.getVersion() == 0) {
+                // Nothing has been published yet
+                return;
+            }
+            myNodesDrawn = myFront.getNodesDrawn();
+            myNodesCulled = myFront.getNodesCulled();
+            Shader.setViewMatrix(gl, myFront.getView());
+            SUBMIT.begin();
+            try {
+                myFront.getCommands().draw(gl, myRenderMode == RenderMode.SORTED);
+            } finally {
+                SUBMIT.end();
+            }
+        } finally {
+            DRAW.end();
+        }
+    }
 
-        // draw the scene tree
-        root.draw(gl, CoordFrame2D.identity());        
+    /**
+     * Run the simulation forward by the given amount of real time.
+     * 
+     * With a variable timestep this is a single update. With a fixed timestep it is as many 
+     * updates of the fixed length as fit into the time accumulated so far, up to the maximum 
+     * steps per frame. Any time left over is carried into the next frame, and the objects are
+     * drawn interpolated that far between the last two steps.
+     * 
+     * @param elapsed The amount of real time since the last call (in seconds)
+     */
+    public void advance(float elapsed) {
+        for (Runnable task = myTasks.poll(); task != null; task = myTasks.poll()) {
+            task.run();
+        }
+        
+        if (myTimestep <= 0) {
+            update(elapsed);
+            return;
+        }
+        
+        myAccumulator += elapsed;
+        int steps = 0;
+        while (myAccumulator >= myTimestep && steps < myMaxSteps) {
+            for (int i = 0; i < myRegistry.size(); i++) {
+                myRegistry.get(i).savePreviousTransform();
+            }
+            update(myTimestep);
+            myAccumulator -= myTimestep;
+            steps++;
+        }
+        
+        // If we can't keep up then drop the time we couldn't simulate, rather than trying to 
+        // catch up with ever more steps
+        if (myAccumulator >= myTimestep) {
+            myAccumulator %= myTimestep;
+        }
+        myInterpolation = myAccumulator / myTimestep;
+    }
+    
+    /**
+     * Run updates at a fixed rate, independent of the frame rate, and interpolate between them
+     * when drawing.
+     * 
+     * @param updatesPerSecond The update rate, or 0 to go back to one update per frame
+     */
+    public void setFixedRate(float updatesPerSecond) {
+        if (updatesPerSecond < 0)
+            throw new IllegalArgumentException("Update rate must not be negative: " 
+                    + updatesPerSecond);
+        myTimestep = updatesPerSecond == 0 ? 0 : 1 / updatesPerSecond;
+        myAccumulator = 0;
+        myInterpolation = 1;
+    }
+    
+    /**
+     * Get the length of a fixed timestep.
+     * 
+     * @return the timestep in seconds, or 0 if the scene is updated once per frame
+     */
+    public float getFixedTimestep() {
+        return myTimestep;
+    }
+    
+    /**
+     * Limit the number of fixed timesteps run in one frame. If a frame takes longer than this 
+     * many steps, the simulation slows down rather than falling further behind.
+     * 
+     * @param maxSteps
+     */
+    public void setMaxStepsPerFrame(int maxSteps) {
+        if (maxSteps < 1)
+            throw new IllegalArgumentException("Must allow at least one step: " + maxSteps);
+        myMaxSteps = maxSteps;
+    }
+    
+    /**
+     * How far the scene is drawn between the previous and current fixed timesteps.
+     * 
+     * @return a value in [0, 1), or 1 if the scene isn't using a fixed timestep
+     */
+    public float getInterpolation() {
+        return myInterpolation;
     }
 
-    private void update() {
+    /**
+     * Update every object in the scene tree and find the objects that are touching, then apply 
+     * any changes to the structure of the tree that were made during the update.
+     * 
+     * @param dt The amount of time since the last update (in seconds)
+     */
+    public void update(float dt) {
+        UPDATE.begin();
+        try {
+            amUpdating = true;
+            try {
+                if (amParallel && myRegistry.size() >= myParallelThreshold) {
+                    updateParallel(dt);
+                } else {
+                    root.update(dt);
+                }
+                if (myTransformStore != null) {
+                    // Compute the world transforms of everything that moved in one sweep, before
+                    // the collision step asks for them
+                    myTransformStore.update();
+                }
+                COLLISION.begin();
+                try {
+                    myCollisions.step(myRegistry);
+                } finally {
+                    COLLISION.end();
+                }
+            } finally {
+                amUpdating = false;
+            }
+            applyDeferred();
+        } finally {
+            UPDATE.end();
+        }
+    }
+    
+    private void updateParallel(float dt) {
+        root.updateSelf(dt);
         
-        // compute the time since the last frame
-        long time = System.currentTimeMillis();
-        float dt = (time - myTime) / 1000f;
-        myTime = time;
+        // The subtrees all read the root's world transform, position, rotation and scale, so make
+        // sure they are computed before they start rather than racing to compute them
+        root.getGlobalPosition();
+        
+        List<SceneObject> children = root.getChildren();
+        int grain = Math.max(1, children.size() / (myPool.getParallelism() * 4));
+        myPool.invoke(new UpdateTask(children, 0, children.size(), grain, dt));
+    }
+    
+    /**
+     * Update the subtrees rooted at a range of the root's children, splitting the range in half 
+     * until it is small enough.
+     */
+    private static class UpdateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final List<SceneObject> myObjects;
+        private final int myStart, myEnd, myGrain;
+        private final float myDt;
         
-        root.update(dt);      
+        UpdateTask(List<SceneObject> objects, int start, int end, int grain, float dt) {
+            myObjects = objects;
+            myStart = start;
+            myEnd = end;
+            myGrain = grain;
+            myDt = dt;
+        }
+
+        @Override
+        protected void compute() {
+            if (myEnd - myStart <= myGrain) {
+                for (int i = myStart; i < myEnd; i++) {
+                    myObjects.get(i).update(myDt);
+                }
+                return;
+            }
+            int mid = (myStart + myEnd) >>> 1;
+            invokeAll(new UpdateTask(myObjects, myStart, mid, myGrain, myDt),
+                    new UpdateTask(myObjects, mid, myEnd, myGrain, myDt));
+        }
+    }
+    
+    /**
+     * Turn parallel updates on or off. When on, and the scene has at least the threshold number
+     * of objects, the subtrees under the root are updated at the same time on a ForkJoinPool 
+     * (the common pool unless setUpdatePool() has been called). 
+     * 
+     * Not every updateSelf() is safe to run like this. See SceneObject.updateSelf() for what is 
+     * allowed.
+     * 
+     * @param parallel
+     */
+    public void setParallelUpdate(boolean parallel) {
+        amParallel = parallel;
+    }
+    
+    /**
+     * Set the number of objects a scene needs before it is updated in parallel. Smaller scenes
+     * are quicker to update on one thread.
+     * 
+     * @param minObjects
+     */
+    public void setParallelThreshold(int minObjects) {
+        myParallelThreshold = minObjects;
+    }
+    
+    /**
+     * Set the pool used for parallel updates.
+     * 
+     * @param pool
+     */
+    public void setUpdatePool(ForkJoinPool pool) {
+        if (pool == null)
+            throw new IllegalArgumentException("Pool must not be null");
+        myPool = pool;
+    }
+    
+    /**
+     * Is the scene tree currently being updated?
+     * 
+     * @return
+     */
+    boolean isUpdating() {
+        return amUpdating;
+    }
+    
+    /**
+     * Put off a change to the structure of the tree until the current update has finished.
+     * 
+     * @param change
+     */
+    void defer(Runnable change) {
+        // Several subtrees may be deferring changes at once during a parallel update
+        synchronized (myDeferred) {
+            myDeferred.add(change);
+        }
+    }
+    
+    private void applyDeferred() {
+        // The changes are applied in the order they were made (though changes made by different
+        // subtrees during a parallel update may be interleaved). Nothing is being updated now, 
+        // so they don't queue any further changes.
+        for (int i = 0; i < myDeferred.size(); i++) {
+            myDeferred.get(i).run();
+        }
+        myDeferred.clear();
     }
 
     public SceneObject getRoot() {
@@ -75,26 +845,158 @@ public class Scene {
         return myCamera;
     }
 
+    /**
+     * Get the spatial index over the objects in this scene.
+     * 
+     * @return
+     */
+    public SpatialGrid getSpatialGrid() {
+        return mySpatialGrid;
+    }
+
+    /**
+     * Get the set of all objects in this scene's tree.
+     * 
+     * @return
+     */
+    public SceneRegistry getRegistry() {
+        return myRegistry;
+    }
+
+    /**
+     * Get the system that finds the objects in this scene that are touching each other.
+     * 
+     * @return
+     */
+    public CollisionSystem getCollisionSystem() {
+        return myCollisions;
+    }
+
+    /**
+     * Get a structure-of-arrays copy of the transforms of every object in this scene. It is 
+     * created the first time this is called. From then on update() keeps it up to date and uses 
+     * it to recompute the world transforms of the objects that moved.
+     * 
+     * @return
+     */
+    public TransformStore getTransformStore() {
+        if (myTransformStore == null) {
+            myTransformStore = new TransformStore(this);
+        }
+        return myTransformStore;
+    }
+    
+    /**
+     * Get a number that changes whenever an object is added to or removed from the tree.
+     * 
+     * @return
+     */
+    public int getStructureVersion() {
+        return myStructureVersion;
+    }
+    
+    void structureChanged() {
+        myStructureVersion++;
+    }
+
     public void setCamera(Camera camera) {
         myCamera.destroy();
         this.myCamera = camera;
     }
     
     /**
+     * Set how close a point has to be to a line to hit it, in pixels on screen. Lines have no 
+     * area, so without some slack they could never be clicked on.
+     * 
+     * @param pixels
+     */
+    public void setPickRadius(float pixels) {
+        if (pixels < 0)
+            throw new IllegalArgumentException("Pick radius can't be negative: " + pixels);
+        myPickRadius = pixels;
+    }
+    
+    public float getPickRadius() {
+        return myPickRadius;
+    }
+    
+    /**
+     * Get the pick radius in world units, at the camera's current zoom.
+     * 
+     * @return the distance, or 0 if the size of the viewport isn't known yet
+     */
+    public float getPickTolerance() {
+        float pixelsPerUnit = myCamera.getPixelsPerUnit();
+        return pixelsPerUnit > 0 ? myPickRadius / pixelsPerUnit : 0;
+    }
+    
+    /**
+     * Find the visible objects in the scene that contain the given point.
+     * 
+     * The spatial grid narrows the search down to the objects whose bounds come within the pick
+     * tolerance of the point, and only those are tested exactly.
      * 
      * @param p a point in world coordinates
      * @return list of any object in scene-tree that contains that point
      * 
      */
     public List<SceneObject> collision(Point2D p) {
-    	List<SceneObject> allObj = new ArrayList<SceneObject>(SceneObject.ALL_SCENE_OBJECTS);
     	List<SceneObject> collidedObj = new ArrayList<SceneObject>();
-    	for (SceneObject obj: allObj) {
-    		if (obj.collision(p)) {
-    			System.out.println("colided");
-    			collidedObj.add(obj);
+    	float tolerance = getPickTolerance();
+    	if (tolerance > 0) {
+    		// Lines near the point can be hit even though their bounds don't contain it
+    		mySpatialGrid.query(new Bounds2D(p.getX() - tolerance, p.getY() - tolerance, 
+    				p.getX() + tolerance, p.getY() + tolerance), collidedObj);
+    	} else {
+    		mySpatialGrid.query(p.getX(), p.getY(), collidedObj);
+    	}
+    	
+    	// Remove the candidates that are hidden or fail the exact test
+    	int n = 0;
+    	for (int i = 0; i < collidedObj.size(); i++) {
+    		SceneObject obj = collidedObj.get(i);
+    		if (obj.isShowingInTree() && obj.collision(p)) {
+    			collidedObj.set(n++, obj);
     		}
     	}
+    	collidedObj.subList(n, collidedObj.size()).clear();
     	return collidedObj;
     }
+    
+    /**
+     * Find the topmost opaque object containing the given point, e.g. the one that was clicked
+     * on.
+     * 
+     * The tree is searched in the reverse of the order it is drawn in (children after their
+     * parent, in order), so the search can stop at the first opaque hit. Hidden subtrees, and 
+     * subtrees whose bounds don't contain the point, are skipped. In INSTANCED mode this is the 
+     * order of the tree, not the order the polygons end up on screen.
+     * 
+     * @param p a point in world coordinates
+     * @return the object, or null if there isn't one
+     */
+    public SceneObject pick(Point2D p) {
+    	final SceneObject[] hit = new SceneObject[1];
+    	root.pick(p, getPickTolerance(), new PickListener() {
+    		@Override
+    		public boolean onPick(SceneObject obj) {
+    			if (!obj.isOpaque())
+    				return true;
+    			hit[0] = obj;
+    			return false;
+    		}
+    	});
+    	return hit[0];
+    }
+    
+    /**
+     * Tell the listener about every visible object containing the given point, topmost first,
+     * until it asks to stop. Opaque objects don't hide the objects under them here.
+     * 
+     * @param p a point in world coordinates
+     * @param listener
+     */
+    public void pickAll(Point2D p, PickListener listener) {
+    	root.pick(p, getPickTolerance(), listener);
+    }
 }
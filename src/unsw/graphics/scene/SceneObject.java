@@ -5,9 +5,10 @@ import java.util.List;
 
 import com.jogamp.opengl.GL3;
 
+import unsw.graphics.Affine2D;
 import unsw.graphics.CoordFrame2D;
-import unsw.graphics.Matrix3;
-import unsw.graphics.Vector3;
+import unsw.graphics.Profiler;
+import unsw.graphics.geometry.Bounds2D;
 import unsw.graphics.geometry.Point2D;
 
 /**
@@ -26,9 +27,6 @@ import unsw.graphics.geometry.Point2D;
  */
 public class SceneObject {
     
-	// List of all objects in Scene tree so we can use it for detection collision
-	public final static List<SceneObject> ALL_SCENE_OBJECTS = new ArrayList<SceneObject>();
-	
     // the links in the scene tree
     private SceneObject myParent;
     private List<SceneObject> myChildren;
@@ -40,12 +38,112 @@ public class SceneObject {
     
     // Is this part of the tree showing?
     private boolean amShowing;
+    
+    // The coordinate frame this object was last drawn in. Reused every frame so that drawing the
+    // tree doesn't allocate.
+    private final CoordFrame2D myFrame = new CoordFrame2D();
+    
+    // Cached local and world transforms. If an object's world transform is dirty then so are those
+    // of all its descendants, so invalidating a subtree can stop at the first dirty object.
+    private final Affine2D myLocalTransform = new Affine2D();
+    private final Affine2D myGlobalTransform = new Affine2D();
+    private boolean myLocalDirty = true;
+    private boolean myGlobalDirty = true;
+    
+    // The world position, rotation and scale. Only worked out when asked for, as most world 
+    // transforms are recomputed for drawing and collision, which don't need them.
+    private boolean myGlobalPartsDirty = true;
+    private Point2D myGlobalPosition;
+    private float myGlobalRotation;
+    private float myGlobalScale;
+    
+    // The inverse of the world transform, for taking world-space queries into local coordinates.
+    // Dirty whenever the world transform is. Invalid if the world transform can't be inverted.
+    private final Affine2D myInverseTransform = new Affine2D();
+    private boolean myInverseDirty = true;
+    private boolean myInverseValid;
+    
+    // The world-space bounding box of this object's own geometry. Dirty whenever the world 
+    // transform is.
+    private final Bounds2D myLocalBounds = new Bounds2D();
+    private final Bounds2D myGlobalBounds = new Bounds2D();
+    private boolean myBoundsDirty = true;
+    
+    // The local transform at the start of the last fixed timestep, so that drawing can 
+    // interpolate between simulation steps. Not valid until the first step after the object is
+    // created or reparented.
+    private Point2D myPrevTranslation;
+    private float myPrevRotation;
+    private float myPrevScale;
+    private boolean amPrevValid = false;
+    private final Affine2D myDrawTransform = new Affine2D();
+    
+    // The world-space shape used for object-vs-object collision, see getCollisionShape()
+    private final CollisionShape myShape = new CollisionShape();
+    private boolean myShapeDirty = true;
+    private boolean myHasShape;
+    
+    // The collision layers this object is in and the layers it collides with, see 
+    // setCollisionLayer()
+    private int myCollisionLayer = 0;
+    private int myCollisionMask = 0;
+    
+    // The layer this object is drawn in when the scene sorts its draw commands, see 
+    // setDrawLayer()
+    private int myDrawLayer = 0;
+    
+    // Whether picking stops at this object or carries on to the objects under it, see setOpaque()
+    private boolean amOpaque = true;
+    
+    // The world-space bounds of this object and all its descendants, and the number of objects
+    // in the subtree. If an object's subtree bounds are dirty then so are those of all its 
+    // ancestors, so invalidating them can stop at the first dirty ancestor.
+    private final Bounds2D mySubtreeBounds = new Bounds2D();
+    private boolean mySubtreeDirty = true;
+    private int mySubtreeSize = 1;
+    
+    // Whether each class of object overrides drawSelf(), i.e. might draw something
+    private static final ClassValue<Boolean> DRAWS_ITSELF = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("drawSelf", GL3.class, CoordFrame2D.class)
+                        .getDeclaringClass() != SceneObject.class;
+            } catch (NoSuchMethodException e) {
+                return true;
+            }
+        }
+    };
+    
+    // The scene this object belongs to, or null if it isn't part of one
+    private Scene myScene;
+    
+    // Bookkeeping for the scene's SpatialGrid
+    int myGridMinX, myGridMinY, myGridMaxX, myGridMaxY;
+    boolean amInGrid, amGridPending;
+    int myGridLargeIndex = -1;
+    
+    // This object's slot in the scene's SceneRegistry, or -1 if it isn't registered
+    int myRegistryIndex = -1;
+    
+    // This object's slot in the scene's TransformStore, or -1 if it isn't in one
+    int myStoreIndex = -1;
 
     /**
      * Special constructor for creating the root node. Do not use otherwise.
      */
     public SceneObject() {
+        this((Scene) null);
+    }
+    
+    /**
+     * Create the root node of the given scene.
+     * 
+     * @param scene
+     */
+    SceneObject(Scene scene) {
         myParent = null;
+        myScene = scene;
         myChildren = new ArrayList<SceneObject>();
 
         myRotation = 0;
@@ -54,8 +152,9 @@ public class SceneObject {
 
         amShowing = true;
         
-        // Add the item to all object list
-        ALL_SCENE_OBJECTS.add(this);
+        if (myScene != null) {
+            myScene.getRegistry().add(this);
+        }
     }
 
     /**
@@ -67,9 +166,20 @@ public class SceneObject {
      */
     public SceneObject(SceneObject parent) {
         myParent = parent;
+        myScene = parent.myScene;
         myChildren = new ArrayList<SceneObject>();
 
-        parent.myChildren.add(this);
+        if (myScene != null && myScene.isUpdating()) {
+            // The parent's children may be being iterated over, so add this object afterwards
+            myScene.defer(new Runnable() {
+                @Override
+                public void run() {
+                    attach();
+                }
+            });
+        } else {
+            addToParent();
+        }
 
         myRotation = 0;
         myScale = 1;
@@ -78,25 +188,93 @@ public class SceneObject {
         // initially showing
         amShowing = true;
         
-        // Add the item to all object list
-        ALL_SCENE_OBJECTS.add(this);
+        if (myScene != null) {
+            myScene.getRegistry().add(this);
+            myScene.getSpatialGrid().markMoved(this);
+        }
     }
 
     /**
      * Remove an object and all its children from the scene tree.
+     * 
+     * If this is called while the scene is being updated, the object is removed once the update
+     * has finished.
      */
     public void destroy() {
-	    List<SceneObject> childrenList = new ArrayList<SceneObject>(myChildren);
-        for (SceneObject child : childrenList) {
-            child.destroy();
+        if (myScene != null && myScene.isUpdating()) {
+            myScene.defer(new Runnable() {
+                @Override
+                public void run() {
+                    destroy();
+                }
+            });
+            return;
+        }
+        
+        // Each child removes itself from the list as it is destroyed
+        for (int i = myChildren.size() - 1; i >= 0; i--) {
+            myChildren.get(i).destroy();
         }
         if(myParent != null) {
-                myParent.myChildren.remove(this);
+                removeFromParent();
+                // Detach it, so it no longer looks like part of the tree
+                myParent = null;
         }
         
-        ALL_SCENE_OBJECTS.remove(this);
+        if (myScene != null) {
+            myScene.getRegistry().remove(this);
+            myScene.getSpatialGrid().remove(this);
+        }
+    }
+    
+    /**
+     * Add this object to its parent's children, once an update that created it has finished.
+     */
+    private void attach() {
+        addToParent();
+        
+        // The parent may have moved since this object was created, and it could not tell this 
+        // object because it wasn't one of its children yet
+        forceInvalidateGlobalTransform();
+    }
+    
+    private void addToParent() {
+        myParent.myChildren.add(this);
+        myParent.adjustSubtreeSize(mySubtreeSize);
+        if (myScene != null) {
+            myScene.structureChanged();
+        }
+    }
+    
+    private void removeFromParent() {
+        if (myParent.myChildren.remove(this)) {
+            myParent.adjustSubtreeSize(-mySubtreeSize);
+            if (myScene != null) {
+                myScene.structureChanged();
+            }
+        }
+    }
+    
+    /**
+     * Add to the size of the subtree of this object and all its ancestors, whose bounds are now
+     * out of date too.
+     */
+    private void adjustSubtreeSize(int delta) {
+        for (SceneObject obj = this; obj != null; obj = obj.myParent) {
+            obj.mySubtreeSize += delta;
+            obj.mySubtreeDirty = true;
+        }
     }
 
+    /**
+     * Get the scene this object belongs to.
+     * 
+     * @return the scene, or null if this object is not part of a scene
+     */
+    public Scene getScene() {
+        return myScene;
+    }
+    
     /**
      * Get the parent of this scene object
      * 
@@ -131,6 +309,7 @@ public class SceneObject {
      */
     public void setRotation(float rotation) {
         myRotation = MathUtil.normaliseAngle(rotation);
+        invalidateTransform();
     }
 
     /**
@@ -141,6 +320,7 @@ public class SceneObject {
     public void rotate(float angle) {
         myRotation += angle;
         myRotation = MathUtil.normaliseAngle(myRotation);
+        invalidateTransform();
     }
 
     /**
@@ -159,6 +339,7 @@ public class SceneObject {
      */
     public void setScale(float scale) {
         myScale = scale;
+        invalidateTransform();
     }
 
     /**
@@ -168,6 +349,7 @@ public class SceneObject {
      */
     public void scale(float factor) {
         myScale *= factor;
+        invalidateTransform();
     }
 
     /**
@@ -197,6 +379,7 @@ public class SceneObject {
      */
     public void setPosition(Point2D p) {
         myTranslation = p;
+        invalidateTransform();
     }
 
     /**
@@ -207,6 +390,7 @@ public class SceneObject {
      */
     public void translate(float dx, float dy) {
         myTranslation = myTranslation.translate(dx, dy);
+        invalidateTransform();
     }
 
     /**
@@ -228,19 +412,36 @@ public class SceneObject {
         amShowing = showing;
     }
 
+    /**
+     * Test if the object and all of its ancestors are visible
+     * 
+     * @return
+     */
+    boolean isShowingInTree() {
+        for (SceneObject obj = this; obj != null; obj = obj.myParent) {
+            if (!obj.amShowing)
+                return false;
+        }
+        return true;
+    }
+
     /**
      * Update the object and all it's children. This method is called once per frame. 
      * 
+     * Structural changes made during the update (creating objects, destroy() and setParent()) 
+     * are put off until the whole scene has been updated. A new object is not updated until the
+     * next frame.
+     * 
      * @param dt The amount of time since the last update (in seconds)
      */
     public void update(float dt) {
         updateSelf(dt);
         
-        // Make a copy of all the children to avoid concurrently modification issues if new objects
-        // are added to the scene during the update.
-        List<SceneObject> children = new ArrayList<SceneObject>(myChildren);
-        for (SceneObject so : children) {
-            so.update(dt);
+        // Objects created, destroyed or moved to a new parent during the update aren't added to
+        // or removed from their parents' children until it has finished, so the children can be
+        // iterated over directly.
+        for (int i = 0; i < myChildren.size(); i++) {
+            myChildren.get(i).update(dt);
         }
     }
 
@@ -248,6 +449,22 @@ public class SceneObject {
      * Update the object itself. Does nothing in the default case. Subclasses can override this
      * for animation or interactivity.
      * 
+     * If the scene has parallel updates turned on (see Scene.setParallelUpdate()), the subtrees
+     * under the root are updated on different threads at the same time. In that case an 
+     * updateSelf() may only:
+     * <ul>
+     * <li>read and change the transform, visibility and geometry of this object and its 
+     * descendants</li>
+     * <li>read the global transform of this object, its descendants and its ancestors (which 
+     * must not be changed)</li>
+     * <li>create objects, and call destroy() or setParent() on objects in its own subtree; these
+     * are all put off until the update has finished</li>
+     * <li>read state that nothing changes during the update</li>
+     * </ul>
+     * Reading or changing objects in other subtrees of the root (such as a camera following 
+     * the player), querying the scene with Scene.collision(), or touching OpenGL are not safe. 
+     * Scenes that need them should leave parallel updates off.
+     * 
      * @param dt
      */
     public void updateSelf(float dt) {
@@ -259,6 +476,8 @@ public class SceneObject {
      * 
      * This does nothing in the base SceneObject class. Override this in subclasses.
      * 
+     * The frame is reused on the next draw, so make a copy if it needs to be kept.
+     * 
      * @param gl
      */
     public void drawSelf(GL3 gl, CoordFrame2D frame) {
@@ -283,20 +502,145 @@ public class SceneObject {
         if (!amShowing) {
             return;
         }
+        
+        // or if the whole subtree is out of the camera's view
+        Scene scene = myScene;
+        Bounds2D view = scene == null ? null : scene.getCullBounds();
+        if (view != null) {
+            if (!getSubtreeBounds().intersects(view)) {
+                scene.countCulled(mySubtreeSize);
+                return;
+            }
+            scene.countDrawn();
+        }
+        Profiler.count(Profiler.Counter.NODES_VISITED);
 
         // TODO: Compute the coordinate frame for this object
         // draw the object (Call drawSelf() to draw the object itself) 
         // and all its children recursively
-        CoordFrame2D objFrame = frame.translate(getPosition())
-        		.rotate(getRotation())
-        		.scale(getScale(), getScale());
+        // The frame is composed in place, so drawSelf() must not hold on to it after returning
+        CoordFrame2D objFrame = myFrame.setMultiply(frame, getDrawTransform());
         
         drawSelf(gl, objFrame);
         
-        for(SceneObject child: myChildren) {
-        	child.draw(gl, objFrame);
+        for (int i = 0; i < myChildren.size(); i++) {
+        	myChildren.get(i).draw(gl, objFrame);
+        }
+        
+    }
+
+    /**
+     * Get the transform from this object's coordinate frame to its parent's, i.e. 
+     * translation * rotation * scale.
+     * 
+     * The returned transform is owned by this object and must not be modified.
+     * 
+     * @return
+     */
+    public Affine2D getLocalTransform() {
+        if (myLocalDirty) {
+            myLocalTransform.setTransform(myTranslation.getX(), myTranslation.getY(), myRotation, 
+                    myScale);
+            myLocalDirty = false;
+        }
+        return myLocalTransform;
+    }
+    
+    /**
+     * Remember the current local transform as the start of the next fixed timestep.
+     */
+    void savePreviousTransform() {
+        myPrevTranslation = myTranslation;
+        myPrevRotation = myRotation;
+        myPrevScale = myScale;
+        amPrevValid = true;
+    }
+    
+    /**
+     * Stop interpolating this object from where it was at the start of the current timestep. 
+     * Call this after teleporting an object so that it isn't drawn sliding to its new position.
+     */
+    public void resetInterpolation() {
+        amPrevValid = false;
+    }
+    
+    /**
+     * Get the local transform to draw this object with. When the scene is running at a fixed 
+     * timestep this is interpolated between the previous and current steps, otherwise it is the 
+     * local transform.
+     * 
+     * The returned transform is owned by this object and must not be modified.
+     * 
+     * @return
+     */
+    public Affine2D getDrawTransform() {
+        float alpha = myScene == null ? 1 : myScene.getInterpolation();
+        if (alpha >= 1 || !amPrevValid || (myPrevTranslation == myTranslation 
+                && myPrevRotation == myRotation && myPrevScale == myScale)) {
+            return getLocalTransform();
         }
         
+        float x = myPrevTranslation.getX() 
+                + (myTranslation.getX() - myPrevTranslation.getX()) * alpha;
+        float y = myPrevTranslation.getY() 
+                + (myTranslation.getY() - myPrevTranslation.getY()) * alpha;
+        // Turn the shortest way round
+        float rotation = myPrevRotation 
+                + MathUtil.normaliseAngle(myRotation - myPrevRotation) * alpha;
+        float scale = myPrevScale + (myScale - myPrevScale) * alpha;
+        return myDrawTransform.setTransform(x, y, rotation, scale);
+    }
+    
+    /**
+     * Compute the transform from this object's coordinate frame to world coordinates as it is 
+     * drawn, i.e. with every ancestor's transform interpolated.
+     * 
+     * @param dest
+     * @return dest
+     */
+    Affine2D getDrawGlobalTransform(Affine2D dest) {
+        if (myParent == null) {
+            return dest.set(getDrawTransform());
+        }
+        return myParent.getDrawGlobalTransform(dest).multiply(getDrawTransform());
+    }
+    
+    /**
+     * Get the transform from this object's coordinate frame to world coordinates.
+     * 
+     * This includes the root's own transform, as drawing does, so the global position, rotation
+     * and scale of an object are where it is drawn even if the root has been moved.
+     * 
+     * This is cached, so it is only recomputed when this object or one of its ancestors has moved.
+     * The returned transform is owned by this object and must not be modified.
+     * 
+     * @return
+     */
+    public Affine2D getGlobalTransform() {
+        updateGlobalTransform();
+        return myGlobalTransform;
+    }
+
+    /**
+     * Get the transform from world coordinates to this object's coordinate frame, i.e. the 
+     * inverse of getGlobalTransform().
+     * 
+     * Like the world transform it is cached, so testing many points against an object that hasn't
+     * moved only inverts the transform once. The returned transform is owned by this object and
+     * must not be modified.
+     * 
+     * @return the inverse, or null if the world transform can't be inverted (e.g. the object or
+     * one of its ancestors has a scale of 0)
+     */
+    public Affine2D getInverseGlobalTransform() {
+        updateGlobalTransform();
+        if (myInverseDirty) {
+            myInverseValid = myGlobalTransform.determinant() != 0;
+            if (myInverseValid)
+                myInverseTransform.set(myGlobalTransform).invert();
+            myInverseDirty = false;
+        }
+        return myInverseValid ? myInverseTransform : null;
     }
 
     /**
@@ -305,27 +649,8 @@ public class SceneObject {
      * @return a point in world coordinates
      */
     public Point2D getGlobalPosition() {
-        // TODO: Complete this
-    	
-    	// if already at the root of the tree
-    	if (this.myParent == null) {
-    		return this.getPosition();
-    	}
-    	
-    	// otherwise find the translation vector from current node all the way up the scene tree's root
-    	// Global = Transformation Matrix * Local
-    	Matrix3 translationMatrix, rotationMatrix, scaleMatrix, transformationMatrix;
-    	Vector3 currentVector = new Vector3(0, 0, 1);
-    	SceneObject currentObject = this;
-    	while (currentObject.myParent != null) {
-    		translationMatrix = Matrix3.translation(currentObject.getPosition());
-    		rotationMatrix = Matrix3.rotation(currentObject.getRotation());
-    		scaleMatrix = Matrix3.scale(currentObject.getScale(), currentObject.getScale());
-    		transformationMatrix = translationMatrix.multiply(rotationMatrix).multiply(scaleMatrix);
-    		currentVector = transformationMatrix.multiply(currentVector);
-    		currentObject = currentObject.getParent();
-    	}
-        return currentVector.asPoint2D();
+        updateGlobalParts();
+        return myGlobalPosition;
     }
 
     /**
@@ -335,21 +660,8 @@ public class SceneObject {
      * normalized to the range (-180, 180) degrees. 
      */
     public float getGlobalRotation() {
-        // TODO: Complete this
-    	
-    	// if already at the root of the tree
-    	if (this.myParent == null) {
-    		return this.getRotation();
-    	}
-    	
-    	SceneObject currentObject = this;
-    	float rotation = 0;
-    	while (currentObject.myParent != null) {
-    		rotation += currentObject.getRotation();
-    		currentObject = currentObject.getParent();
-    	}
-    	
-        return MathUtil.normaliseAngle(rotation);
+        updateGlobalParts();
+        return myGlobalRotation;
     }
 
     /**
@@ -358,68 +670,383 @@ public class SceneObject {
      * @return the global scale of the object 
      */
     public float getGlobalScale() {
-        // TODO: Complete this
-    	if (this.myParent == null) {
-    		return this.getScale();
-    	}
-    	
-    	SceneObject currentObject = this;
-    	float scale = 1;
-    	while (currentObject.myParent != null) {
-    		scale *= currentObject.getScale();
-    		currentObject = currentObject.getParent();
-    	}
-    	
-        return scale;
+        updateGlobalParts();
+        return myGlobalScale;
+    }
+    
+    /**
+     * Recompute the cached world transform if it is dirty. The parent's is updated first, so this
+     * only walks up as far as the first clean ancestor.
+     */
+    private void updateGlobalTransform() {
+        if (!myGlobalDirty) {
+            return;
+        }
+        
+        Affine2D local = getLocalTransform();
+        if (myParent == null) {
+            myGlobalTransform.set(local);
+        } else {
+            myParent.updateGlobalTransform();
+            myGlobalTransform.setMultiply(myParent.myGlobalTransform, local);
+        }
+        myGlobalDirty = false;
+        myGlobalPartsDirty = true;
+    }
+    
+    /**
+     * Recompute the world position, rotation and scale if they are dirty, along with those of
+     * the ancestors they depend on.
+     */
+    private void updateGlobalParts() {
+        updateGlobalTransform();
+        if (!myGlobalPartsDirty) {
+            return;
+        }
+        
+        if (myParent == null) {
+            myGlobalRotation = myRotation;
+            myGlobalScale = myScale;
+        } else {
+            myParent.updateGlobalParts();
+            myGlobalRotation = MathUtil.normaliseAngle(myParent.myGlobalRotation + myRotation);
+            myGlobalScale = myParent.myGlobalScale * myScale;
+        }
+        myGlobalPosition = new Point2D(myGlobalTransform.getOriginX(), 
+                myGlobalTransform.getOriginY());
+        myGlobalPartsDirty = false;
+    }
+    
+    /**
+     * Fill in the cached world transform from one a TransformStore has already computed, rather
+     * than multiplying it out again.
+     * 
+     * @param world The store's world transforms
+     * @param offset Where this object's 6 floats start
+     */
+    void setGlobalTransform(float[] world, int offset) {
+        if (!myGlobalDirty) {
+            return;
+        }
+        
+        myGlobalTransform.set(world[offset], world[offset + 1], world[offset + 2], 
+                world[offset + 3], world[offset + 4], world[offset + 5]);
+        myGlobalDirty = false;
+        myGlobalPartsDirty = true;
+    }
+    
+    /**
+     * Called when the local transform changes.
+     */
+    private void invalidateTransform() {
+        myLocalDirty = true;
+        if (myStoreIndex >= 0) {
+            myScene.getTransformStore().markDirty(myStoreIndex);
+        }
+        invalidateGlobalTransform();
+        invalidateAncestorBounds();
+    }
+    
+    /**
+     * Mark the world transform of this object and all its descendants as dirty.
+     */
+    private void invalidateGlobalTransform() {
+        if (myGlobalDirty) {
+            // Descendants of a dirty object are already dirty
+            return;
+        }
+        myGlobalDirty = true;
+        myInverseDirty = true;
+        myBoundsDirty = true;
+        myShapeDirty = true;
+        mySubtreeDirty = true;
+        if (myScene != null) {
+            myScene.getSpatialGrid().markMoved(this);
+        }
+        for (int i = 0; i < myChildren.size(); i++) {
+            myChildren.get(i).invalidateGlobalTransform();
+        }
+    }
+
+    /**
+     * Mark the world transform of this object and all its descendants as dirty, even if they are
+     * already marked.
+     */
+    private void forceInvalidateGlobalTransform() {
+        myGlobalDirty = true;
+        myInverseDirty = true;
+        myBoundsDirty = true;
+        myShapeDirty = true;
+        mySubtreeDirty = true;
+        if (myScene != null) {
+            myScene.getSpatialGrid().markMoved(this);
+        }
+        for (int i = 0; i < myChildren.size(); i++) {
+            myChildren.get(i).forceInvalidateGlobalTransform();
+        }
+        invalidateAncestorBounds();
+    }
+    
+    /**
+     * Mark the subtree bounds of this object's ancestors as dirty, after this object's have 
+     * changed.
+     */
+    private void invalidateAncestorBounds() {
+        mySubtreeDirty = true;
+        for (SceneObject obj = myParent; obj != null && !obj.mySubtreeDirty; obj = obj.myParent) {
+            obj.mySubtreeDirty = true;
+        }
+    }
+
+    /**
+     * Get the bounding box of this object's own geometry (not including its descendants) in its
+     * local coordinate frame.
+     * 
+     * This returns false in the base SceneObject class, meaning the object has no geometry. 
+     * Subclasses that draw something or override collision() should override this too, otherwise
+     * they are never found by Scene.collision(). If the geometry changes without the object 
+     * moving, call invalidateBounds().
+     * 
+     * @param bounds The box to store the bounds in
+     * @return true if the object has any geometry
+     */
+    protected boolean getLocalBounds(Bounds2D bounds) {
+        return false;
+    }
+    
+    /**
+     * Tell the scene that the geometry reported by getLocalBounds() has changed.
+     */
+    protected void invalidateBounds() {
+        myBoundsDirty = true;
+        myShapeDirty = true;
+        invalidateAncestorBounds();
+        if (myScene != null) {
+            myScene.getSpatialGrid().markMoved(this);
+        }
+    }
+    
+    /**
+     * Get the bounding box of this object's own geometry in world coordinates.
+     * 
+     * This is cached, and only recomputed after the object moves or its geometry changes. The
+     * returned box is owned by this object and must not be modified.
+     * 
+     * @return the bounds, which are empty if the object has no geometry
+     */
+    public Bounds2D getGlobalBounds() {
+        if (myBoundsDirty) {
+            if (getLocalBounds(myLocalBounds.setEmpty())) {
+                myGlobalBounds.setTransformed(myLocalBounds, getGlobalTransform());
+            } else {
+                myGlobalBounds.setEmpty();
+            }
+            myBoundsDirty = false;
+        }
+        return myGlobalBounds;
+    }
+    
+    /**
+     * Get the bounding box of this object and all of its descendants in world coordinates. 
+     * 
+     * Objects that draw themselves without saying where (by overriding drawSelf() but not 
+     * getLocalBounds()) have infinite bounds, so that they are never culled.
+     * 
+     * This is cached, and only recomputed after something in the subtree moves, changes shape, 
+     * or is added or removed. The returned box is owned by this object and must not be modified.
+     * 
+     * @return
+     */
+    public Bounds2D getSubtreeBounds() {
+        if (mySubtreeDirty) {
+            Bounds2D own = getGlobalBounds();
+            if (own.isEmpty() && DRAWS_ITSELF.get(getClass())) {
+                mySubtreeBounds.setInfinite();
+            } else {
+                mySubtreeBounds.set(own);
+            }
+            for (int i = 0; i < myChildren.size(); i++) {
+                mySubtreeBounds.add(myChildren.get(i).getSubtreeBounds());
+            }
+            mySubtreeDirty = false;
+        }
+        return mySubtreeBounds;
+    }
+    
+    /**
+     * Get the number of objects in the subtree rooted at this object, including itself.
+     * 
+     * @return
+     */
+    public int getSubtreeSize() {
+        return mySubtreeSize;
     }
 
     /**
      * Change the parent of a scene object.
      * 
+     * The object keeps its global position, rotation and scale. Its local transform is adjusted 
+     * to suit the new parent. If the new parent has been scaled to nothing, so that no local 
+     * transform would do, the object keeps its local transform instead.
+     * 
+     * If this is called while the scene is being updated, the object is moved once the update 
+     * has finished, keeping the global position it has at that point.
+     * 
      * @param parent
      */
-    public void setParent(SceneObject parent) {
-        // TODO: add code so that the object does not change its global position, rotation or scale
-        // when it is reparented. You may need to add code before and/or after 
-        // the fragment of code that has been provided - depending on your approach
-    	
+    public void setParent(final SceneObject parent) {
+        if (myScene != null && myScene.isUpdating()) {
+            myScene.defer(new Runnable() {
+                @Override
+                public void run() {
+                    setParent(parent);
+                }
+            });
+            return;
+        }
+        
     	// Preserve the global position, rotation and scale first
     	Point2D globalPosition = getGlobalPosition();
     	float globalRotation = getGlobalRotation();
     	float globalScale = getGlobalScale();
     	
+        // The previous local transform was relative to the old parent
+        amPrevValid = false;
+        
         // Change parents
-        myParent.myChildren.remove(this);
+        removeFromParent();
         myParent = parent;
-        myParent.myChildren.add(this);
+        addToParent();
         
-        // Convert the preserved to global to the new local using the transformation matrix from the new parents
-        // We need to compute the inverse transformation matrix
-        Matrix3 translationMatrix, rotationMatrix, scaleMatrix, transformationMatrix = Matrix3.identity();
-        translationMatrix = Matrix3.translation(-parent.getGlobalPosition().getX(), -parent.getGlobalPosition().getY());
-    	rotationMatrix = Matrix3.rotation(-parent.getGlobalRotation());
-    	scaleMatrix = Matrix3.scale(1f/parent.getGlobalScale(), 1f/parent.getGlobalScale());
-    	transformationMatrix = scaleMatrix.multiply(rotationMatrix).multiply(translationMatrix).multiply(transformationMatrix);
-        
-        // To find the new local vector, we can now use the transformation matrix multiplied by the global vector 
-        // Local = M^-1 * Global
-        Vector3 globalVector = new Vector3(globalPosition.getX(), globalPosition.getY(), 1);
-        Vector3 localVector = transformationMatrix.multiply(globalVector);
-        
-        // set new local location
-        setPosition(localVector.asPoint2D());
+        // Local = M^-1 * Global, where M is the new parent's world transform
+        Affine2D inverse = parent.getInverseGlobalTransform();
+        if (inverse == null) {
+            // The same local transform now means something else in world space
+            forceInvalidateGlobalTransform();
+            return;
+        }
+        setPosition(inverse.transformX(globalPosition.getX(), globalPosition.getY()),
+                inverse.transformY(globalPosition.getX(), globalPosition.getY()));
         
         // Compute the local rotation which is global - parent
-        setRotation(globalRotation-myParent.getGlobalRotation());
+        setRotation(globalRotation - parent.getGlobalRotation());
         
         // Set new scale which is the global scale we computed divided by parent scale
-        setScale(globalScale/myParent.getGlobalScale());
+        setScale(globalScale / parent.getGlobalScale());
+    }
+    
+    /**
+     * Put this object in the given collision layers. Each bit of the layer is a separate layer.
+     * 
+     * Two objects are tested against each other by the scene's CollisionSystem if each is in a 
+     * layer the other's mask includes. Objects are in no layers by default, so they never 
+     * collide with anything.
+     * 
+     * @param layer
+     */
+    public void setCollisionLayer(int layer) {
+        myCollisionLayer = layer;
+    }
+    
+    public int getCollisionLayer() {
+        return myCollisionLayer;
+    }
+    
+    /**
+     * Set the collision layers this object collides with.
+     * 
+     * @param mask
+     */
+    public void setCollisionMask(int mask) {
+        myCollisionMask = mask;
+    }
+    
+    public int getCollisionMask() {
+        return myCollisionMask;
+    }
+    
+    /**
+     * Get the exact shape of this object's own geometry in world coordinates, for collision 
+     * with other objects.
+     * 
+     * This returns false in the base SceneObject class, in which case objects are tested using
+     * their world-space bounding box instead. Override it in subclasses that have a more exact 
+     * shape. It is called again after the object moves or invalidateBounds() is called.
+     * 
+     * @param shape The shape to store the result in
+     * @return true if the object has a shape
+     */
+    protected boolean getCollisionShape(CollisionShape shape) {
+        return false;
+    }
+    
+    /**
+     * Get the cached world-space collision shape of this object.
+     * 
+     * @return the shape, or null if the object has no exact shape
+     */
+    public CollisionShape getWorldCollisionShape() {
+        if (myShapeDirty) {
+            myHasShape = getCollisionShape(myShape);
+            myShapeDirty = false;
+        }
+        return myHasShape ? myShape : null;
+    }
+    
+    /**
+     * Called when this object starts touching another object. Does nothing by default.
+     * 
+     * Collision callbacks are made during the scene's update, so the same rules apply as in
+     * updateSelf(): creating and destroying objects is put off until the update has finished.
+     * 
+     * @param other
+     */
+    public void onCollisionEnter(SceneObject other) {
+        // Do nothing by default
+    }
+    
+    /**
+     * Called on every update after the first that this object is still touching another 
+     * object. Does nothing by default.
+     * 
+     * @param other
+     */
+    public void onCollisionStay(SceneObject other) {
+        // Do nothing by default
+    }
+    
+    /**
+     * Called when this object stops touching another object, including when either of them
+     * is destroyed or hidden. Does nothing by default.
+     * 
+     * @param other
+     */
+    public void onCollisionExit(SceneObject other) {
+        // Do nothing by default
+    }
+    
+    /**
+     * Set the layer this object is drawn in when the scene is drawn in SORTED mode. Objects in 
+     * higher layers are drawn on top of those in lower layers. Within a layer the draw commands
+     * are sorted to save state changes, so objects that overlap should be in different layers.
+     * 
+     * Other render modes draw in tree order and ignore the layer.
+     * 
+     * @param layer
+     */
+    public void setDrawLayer(int layer) {
+        myDrawLayer = layer;
+    }
+    
+    public int getDrawLayer() {
+        return myDrawLayer;
     }
     
     /**
      * Collision detection
      * 
-     * This does nothing in the base SceneObject class. Override this in subclasses.
+     * This does nothing in the base SceneObject class. Override this in subclasses, along with
+     * getLocalBounds().
      * 
      * @param Point2D
      * @return true if point is inside the object
@@ -427,5 +1054,79 @@ public class SceneObject {
     public boolean collision(Point2D p) {
     	return false; // return false by default
     }
+    
+    /**
+     * Collision detection with the point already in this object's coordinate frame, used when
+     * picking. 
+     * 
+     * By default this calls collision() with the world point. Subclasses whose test is simpler 
+     * in their own coordinates can override it to save transforming the point again.
+     * 
+     * @param x The point in local coordinates
+     * @param y
+     * @param p The same point in world coordinates
+     * @return true if point is inside the object
+     */
+    protected boolean collisionLocal(float x, float y, Point2D p) {
+    	return collision(p);
+    }
+    
+    /**
+     * Set whether this object hides the objects drawn before it from Scene.pick(). Objects are 
+     * opaque by default. A transparent object, e.g. a highlight drawn over other objects, can 
+     * still be found with Scene.pickAll().
+     * 
+     * @param opaque
+     */
+    public void setOpaque(boolean opaque) {
+    	amOpaque = opaque;
+    }
+    
+    public boolean isOpaque() {
+    	return amOpaque;
+    }
+    
+    /**
+     * Find the objects in this subtree that contain the given point, in the reverse of the 
+     * order they are drawn in, i.e. topmost first. Hidden subtrees, and subtrees whose bounds 
+     * don't come within the tolerance of the point, are skipped without visiting their objects.
+     * 
+     * @param p The point in world coordinates
+     * @param tolerance How far outside its bounds an object can be hit, in world units
+     * @param listener Told about each object hit
+     * @return false if the listener stopped the search
+     */
+    boolean pick(Point2D p, float tolerance, Scene.PickListener listener) {
+    	if (!amShowing) {
+    		return true;
+    	}
+    	Bounds2D bounds = getSubtreeBounds();
+    	float x = p.getX(), y = p.getY();
+    	if (x < bounds.getMinX() - tolerance || x > bounds.getMaxX() + tolerance
+    			|| y < bounds.getMinY() - tolerance || y > bounds.getMaxY() + tolerance) {
+    		return true;
+    	}
+    	
+    	// Children are drawn after, so on top of, their parent and earlier siblings
+    	for (int i = myChildren.size() - 1; i >= 0; i--) {
+    		if (!myChildren.get(i).pick(p, tolerance, listener)) {
+    			return false;
+    		}
+    	}
+    	
+    	Bounds2D own = getGlobalBounds();
+    	if (own.isEmpty() || x < own.getMinX() - tolerance || x > own.getMaxX() + tolerance
+    			|| y < own.getMinY() - tolerance || y > own.getMaxY() + tolerance) {
+    		return true;
+    	}
+    	Affine2D inverse = getInverseGlobalTransform();
+    	if (inverse == null) {
+    		return true;
+    	}
+    	if (collisionLocal(inverse.transformX(x, y), inverse.transformY(x, y), p)) {
+    		return listener.onPick(this);
+    	}
+    	return true;
+    }
 
 }
@@ -0,0 +1,115 @@
+package unsw.graphics.scene;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The set of all objects in a scene tree.
+ *
+ * Objects are kept in a dense array. Each object remembers its slot, so adding and removing an
+ * object are both O(1): a removed object's slot is filled with the last object in the array.
+ * This means the order of the objects changes as they are removed.
+ *
+ * The registry is owned by its Scene, so it is garbage collected along with the scene.
+ *
+ * Iterate over it with size() and get(), or with a for-each loop. Objects must not be created or
+ * destroyed during iteration. Objects may be added from several threads at once, as happens when
+ * they are created during a parallel update of the scene.
+ *
+ * @author Benny Hwang
+ */
+public class SceneRegistry implements Iterable<SceneObject> {
+
+    private SceneObject[] myObjects;
+    private int mySize;
+
+    /**
+     * Construct an empty registry.
+     */
+    public SceneRegistry() {
+        myObjects = new SceneObject[16];
+        mySize = 0;
+    }
+
+    /**
+     * Add an object to the registry. Does nothing if it is already registered.
+     *
+     * @param obj
+     */
+    synchronized void add(SceneObject obj) {
+        if (obj.myRegistryIndex >= 0)
+            return;
+        if (mySize == myObjects.length)
+            myObjects = Arrays.copyOf(myObjects, mySize * 2);
+        obj.myRegistryIndex = mySize;
+        myObjects[mySize++] = obj;
+    }
+
+    /**
+     * Remove an object from the registry. Does nothing if it isn't registered.
+     *
+     * @param obj
+     */
+    synchronized void remove(SceneObject obj) {
+        int i = obj.myRegistryIndex;
+        if (i < 0)
+            return;
+        SceneObject last = myObjects[--mySize];
+        myObjects[i] = last;
+        last.myRegistryIndex = i;
+        myObjects[mySize] = null;
+        obj.myRegistryIndex = -1;
+    }
+
+    /**
+     * The number of objects in the scene.
+     *
+     * @return
+     */
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Get the object in the given slot.
+     *
+     * @param i an index in the range [0, size())
+     * @return
+     */
+    public SceneObject get(int i) {
+        if (i < 0 || i >= mySize)
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + mySize);
+        return myObjects[i];
+    }
+
+    /**
+     * Is the given object in this registry?
+     *
+     * @param obj
+     * @return
+     */
+    public boolean contains(SceneObject obj) {
+        int i = obj.myRegistryIndex;
+        return i >= 0 && i < mySize && myObjects[i] == obj;
+    }
+
+    @Override
+    public Iterator<SceneObject> iterator() {
+        return new Iterator<SceneObject>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < mySize;
+            }
+
+            @Override
+            public SceneObject next() {
+                if (next >= mySize)
+                    throw new NoSuchElementException();
+                return myObjects[next++];
+            }
+        };
+    }
+}
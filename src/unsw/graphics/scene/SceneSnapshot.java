@@ -0,0 +1,58 @@
+package unsw.graphics.scene;
+
+import unsw.graphics.CoordFrame2D;
+
+/**
+ * What the simulation thread of a pipelined scene hands to the GL thread: the draw commands of
+ * every visible object, with their world transforms and colors, and the camera's view.
+ * 
+ * Only the state needed to draw is copied, so the GL thread never touches the scene tree. A 
+ * snapshot isn't changed while the GL thread might be drawing it. Each one is refilled by the 
+ * simulation thread once it has been handed back.
+ *
+ * @author Benny Hwang
+ */
+final class SceneSnapshot {
+
+    // Filled on the simulation thread, so the commands are drawn with whatever shader is current
+    private final RenderQueue myCommands = new RenderQueue(false);
+    private final CoordFrame2D myView = new CoordFrame2D();
+
+    // Incremented each time a snapshot is published, or 0 if this one hasn't been filled yet. 
+    // Volatile, as the GL thread reads it from the latest snapshot, which the simulation thread
+    // may have taken back and started refilling in the meantime.
+    private volatile long myVersion;
+    
+    // The scene's counts of objects drawn and culled when this was captured
+    private int myNodesDrawn;
+    private int myNodesCulled;
+
+    RenderQueue getCommands() {
+        return myCommands;
+    }
+
+    CoordFrame2D getView() {
+        return myView;
+    }
+
+    long getVersion() {
+        return myVersion;
+    }
+
+    void setVersion(long version) {
+        myVersion = version;
+    }
+
+    int getNodesDrawn() {
+        return myNodesDrawn;
+    }
+
+    int getNodesCulled() {
+        return myNodesCulled;
+    }
+
+    void setNodeCounts(int drawn, int culled) {
+        myNodesDrawn = drawn;
+        myNodesCulled = culled;
+    }
+}
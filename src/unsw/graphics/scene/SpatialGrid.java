@@ -0,0 +1,258 @@
+package unsw.graphics.scene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import unsw.graphics.geometry.Bounds2D;
+import unsw.graphics.geometry.Point2D;
+
+/**
+ * A broad-phase spatial index over the objects in a scene.
+ *
+ * The world is divided into a uniform grid of square cells. Each object that has geometry is
+ * stored in every cell its world-space bounding box overlaps, so a point query only has to look
+ * at the objects in one cell.
+ *
+ * Objects tell the grid when their world transform or geometry changes. They are not moved
+ * straight away, instead they are re-inserted lazily the next time the grid is queried, so an
+ * object that moves many times between queries is only re-inserted once.
+ *
+ * Objects may be marked as moved from several threads at once, as happens during a parallel
+ * update of the scene.
+ *
+ * @author Benny Hwang
+ */
+public class SpatialGrid {
+
+    // Objects overlapping more than this many cells are kept in a separate list instead, so one
+    // huge object doesn't fill the whole grid
+    private static final int MAX_CELLS = 64;
+
+    private final float myCellSize;
+    private final HashMap<Long, List<SceneObject>> myCells;
+    private final List<SceneObject> myLargeObjects;
+    private final List<SceneObject> myPending;
+
+    // Scratch space used when re-inserting objects
+    private final Bounds2D myBounds = new Bounds2D();
+
+    /**
+     * Construct an empty grid.
+     *
+     * @param cellSize The width and height of each cell, in world units
+     */
+    public SpatialGrid(float cellSize) {
+        if (cellSize <= 0)
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        myCellSize = cellSize;
+        myCells = new HashMap<Long, List<SceneObject>>();
+        myLargeObjects = new ArrayList<SceneObject>();
+        myPending = new ArrayList<SceneObject>();
+    }
+
+    public float getCellSize() {
+        return myCellSize;
+    }
+
+    /**
+     * Tell the grid that the given object's world-space bounds may have changed. Objects that 
+     * have been destroyed are ignored.
+     *
+     * @param obj
+     */
+    synchronized void markMoved(SceneObject obj) {
+        if (obj.myRegistryIndex < 0) {
+            // Destroyed, so moving it mustn't put it back in the grid
+            return;
+        }
+        if (!obj.amGridPending) {
+            obj.amGridPending = true;
+            myPending.add(obj);
+        }
+    }
+
+    /**
+     * Remove the given object from the grid.
+     *
+     * @param obj
+     */
+    synchronized void remove(SceneObject obj) {
+        // Left in the pending list, which skips objects that are no longer flagged, rather than
+        // searching the list for it
+        obj.amGridPending = false;
+        removeFromCells(obj);
+    }
+
+    /**
+     * Find all the objects whose world-space bounding box contains the given point. The objects
+     * still need to be tested exactly.
+     *
+     * @param x
+     * @param y
+     * @param candidates The list to add the objects to
+     */
+    public synchronized void query(float x, float y, List<SceneObject> candidates) {
+        update();
+
+        List<SceneObject> cell = myCells.get(key(cell(x), cell(y)));
+        if (cell != null) {
+            for (int i = 0; i < cell.size(); i++) {
+                SceneObject obj = cell.get(i);
+                if (obj.getGlobalBounds().contains(x, y))
+                    candidates.add(obj);
+            }
+        }
+        for (int i = 0; i < myLargeObjects.size(); i++) {
+            SceneObject obj = myLargeObjects.get(i);
+            if (obj.getGlobalBounds().contains(x, y))
+                candidates.add(obj);
+        }
+    }
+
+    /**
+     * Find all the objects whose world-space bounding box overlaps the given box. Each object is
+     * added once, even if it is in more than one of the cells the box covers. The objects still 
+     * need to be tested exactly.
+     *
+     * @param box
+     * @param candidates The list to add the objects to
+     */
+    public synchronized void query(Bounds2D box, List<SceneObject> candidates) {
+        update();
+        if (box.isEmpty())
+            return;
+
+        int minX = cell(box.getMinX()), minY = cell(box.getMinY());
+        int maxX = cell(box.getMaxX()), maxY = cell(box.getMaxY());
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                List<SceneObject> cell = myCells.get(key(x, y));
+                if (cell == null)
+                    continue;
+                for (int i = 0; i < cell.size(); i++) {
+                    SceneObject obj = cell.get(i);
+                    // Only report an object from the first cell it shares with the box
+                    if (x == Math.max(obj.myGridMinX, minX) && y == Math.max(obj.myGridMinY, minY)
+                            && obj.getGlobalBounds().intersects(box))
+                        candidates.add(obj);
+                }
+            }
+        }
+        for (int i = 0; i < myLargeObjects.size(); i++) {
+            SceneObject obj = myLargeObjects.get(i);
+            if (obj.getGlobalBounds().intersects(box))
+                candidates.add(obj);
+        }
+    }
+
+    /**
+     * Find all the objects whose world-space bounding box contains the given point.
+     *
+     * @param p
+     * @return
+     */
+    public List<SceneObject> query(Point2D p) {
+        List<SceneObject> candidates = new ArrayList<SceneObject>();
+        query(p.getX(), p.getY(), candidates);
+        return candidates;
+    }
+
+    /**
+     * Re-insert every object that has moved since the last update.
+     */
+    public synchronized void update() {
+        for (int i = 0; i < myPending.size(); i++) {
+            SceneObject obj = myPending.get(i);
+            if (!obj.amGridPending) {
+                // Removed since it moved, or already re-inserted
+                continue;
+            }
+            obj.amGridPending = false;
+            reinsert(obj);
+        }
+        myPending.clear();
+    }
+
+    private void reinsert(SceneObject obj) {
+        Bounds2D bounds = myBounds.set(obj.getGlobalBounds());
+        if (bounds.isEmpty()) {
+            removeFromCells(obj);
+            return;
+        }
+
+        int minX = cell(bounds.getMinX()), minY = cell(bounds.getMinY());
+        int maxX = cell(bounds.getMaxX()), maxY = cell(bounds.getMaxY());
+        if (obj.amInGrid && minX == obj.myGridMinX && minY == obj.myGridMinY
+                && maxX == obj.myGridMaxX && maxY == obj.myGridMaxY) {
+            // Still in the same cells
+            return;
+        }
+
+        removeFromCells(obj);
+        obj.myGridMinX = minX;
+        obj.myGridMinY = minY;
+        obj.myGridMaxX = maxX;
+        obj.myGridMaxY = maxY;
+        obj.amInGrid = true;
+
+        if (isLarge(obj)) {
+            obj.myGridLargeIndex = myLargeObjects.size();
+            myLargeObjects.add(obj);
+            return;
+        }
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                Long key = key(x, y);
+                List<SceneObject> cell = myCells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<SceneObject>(4);
+                    myCells.put(key, cell);
+                }
+                cell.add(obj);
+            }
+        }
+    }
+
+    private void removeFromCells(SceneObject obj) {
+        if (!obj.amInGrid)
+            return;
+        obj.amInGrid = false;
+
+        if (isLarge(obj)) {
+            // Move the last large object into its place
+            SceneObject last = myLargeObjects.remove(myLargeObjects.size() - 1);
+            if (last != obj) {
+                myLargeObjects.set(obj.myGridLargeIndex, last);
+                last.myGridLargeIndex = obj.myGridLargeIndex;
+            }
+            obj.myGridLargeIndex = -1;
+            return;
+        }
+        for (int x = obj.myGridMinX; x <= obj.myGridMaxX; x++) {
+            for (int y = obj.myGridMinY; y <= obj.myGridMaxY; y++) {
+                Long key = key(x, y);
+                List<SceneObject> cell = myCells.get(key);
+                cell.remove(obj);
+                if (cell.isEmpty())
+                    myCells.remove(key);
+            }
+        }
+    }
+
+    private static boolean isLarge(SceneObject obj) {
+        // In long, as bounds that saturate cell() are 2^32 cells across, which overflows an int.
+        // The sides are checked first as the product of two of those would overflow a long.
+        long width = (long) obj.myGridMaxX - obj.myGridMinX + 1;
+        long height = (long) obj.myGridMaxY - obj.myGridMinY + 1;
+        return width > MAX_CELLS || height > MAX_CELLS || width * height > MAX_CELLS;
+    }
+
+    private int cell(float coord) {
+        return (int) Math.floor(coord / myCellSize);
+    }
+
+    private static Long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+}
@@ -0,0 +1,272 @@
+package unsw.graphics.scene;
+
+import java.util.Arrays;
+
+import unsw.graphics.Affine2D;
+
+/**
+ * A copy of the transforms of every object in a scene tree, stored as parallel arrays of 
+ * primitives rather than spread across the objects.
+ *
+ * The objects are stored in depth-first order, so every object comes after its parent. Each
+ * object's local and world transforms are 6 consecutive floats (see Affine2D), and its parent is
+ * an index. Recomputing every world transform is then a single sweep through the arrays, with 
+ * no pointer chasing.
+ *
+ * The SceneObjects stay the owners of the local transforms. An object marks its slot dirty when 
+ * its local transform changes, and update() copies the dirty ones in before propagating. The 
+ * world transforms are then copied out to the objects whose cached ones are out of date, so 
+ * getGlobalTransform() doesn't have to walk up the tree to recompute them. The store is rebuilt 
+ * when the structure of the tree changes.
+ *
+ * Get a scene's store with Scene.getTransformStore(). Until then objects don't pay anything 
+ * for it. Once it exists, Scene.update() updates it after moving the objects, so the collision
+ * step and drawing read world transforms computed in the sweep.
+ *
+ * @author Benny Hwang
+ */
+public class TransformStore {
+
+    private static final int FLOATS = 6;
+
+    private final Scene myScene;
+    private int myVersion;
+
+    private SceneObject[] myObjects;
+    private int[] myParents;
+    private float[] myLocal;
+    private float[] myWorld;
+    private byte[] myDirty;
+    private int mySize;
+
+    // The stack used to walk the tree when rebuilding, holding objects and their parents' slots
+    private SceneObject[] myStack;
+    private int[] myStackParents;
+
+    /**
+     * Construct a store for the given scene. It is empty until update() is called.
+     *
+     * @param scene
+     */
+    TransformStore(Scene scene) {
+        myScene = scene;
+        myVersion = -1;
+        myObjects = new SceneObject[0];
+        myParents = new int[0];
+        myLocal = new float[0];
+        myWorld = new float[0];
+        myDirty = new byte[0];
+        myStack = new SceneObject[16];
+        myStackParents = new int[16];
+        mySize = 0;
+    }
+
+    /**
+     * Bring the store up to date with the scene: rebuild it if objects have been added, 
+     * removed or reparented, otherwise copy in the local transforms that have changed. Then 
+     * recompute every world transform, and give the objects whose cached world transforms are
+     * dirty their new ones.
+     */
+    public void update() {
+        if (myVersion != myScene.getStructureVersion()) {
+            rebuild();
+        } else {
+            pullDirty();
+        }
+        propagate();
+        push();
+    }
+
+    /**
+     * Called by an object in the store when its local transform changes. Objects in different
+     * subtrees may call this at the same time during a parallel update, which is safe as they
+     * write different elements.
+     */
+    void markDirty(int index) {
+        myDirty[index] = 1;
+    }
+
+    private void rebuild() {
+        for (int i = 0; i < mySize; i++) {
+            myObjects[i].myStoreIndex = -1;
+        }
+        
+        int capacity = Math.max(myScene.getRoot().getSubtreeSize(), 1);
+        if (myObjects.length < capacity) {
+            myObjects = new SceneObject[capacity];
+            myParents = new int[capacity];
+            myLocal = new float[capacity * FLOATS];
+            myWorld = new float[capacity * FLOATS];
+            myDirty = new byte[capacity];
+        } else {
+            Arrays.fill(myObjects, null);
+        }
+
+        // Walk the tree depth first. Children are pushed in reverse so they come out in order.
+        mySize = 0;
+        int top = 0;
+        myStack[top] = myScene.getRoot();
+        myStackParents[top++] = -1;
+        while (top > 0) {
+            top--;
+            SceneObject obj = myStack[top];
+            myStack[top] = null;
+            int index = add(obj, myStackParents[top]);
+            for (int i = obj.getChildren().size() - 1; i >= 0; i--) {
+                if (top == myStack.length) {
+                    myStack = Arrays.copyOf(myStack, top * 2);
+                    myStackParents = Arrays.copyOf(myStackParents, top * 2);
+                }
+                myStack[top] = obj.getChildren().get(i);
+                myStackParents[top++] = index;
+            }
+        }
+        myVersion = myScene.getStructureVersion();
+    }
+
+    private int add(SceneObject obj, int parent) {
+        if (mySize == myObjects.length) {
+            // The subtree size was out of date; shouldn't happen, but grow rather than fail
+            int capacity = mySize * 2;
+            myObjects = Arrays.copyOf(myObjects, capacity);
+            myParents = Arrays.copyOf(myParents, capacity);
+            myLocal = Arrays.copyOf(myLocal, capacity * FLOATS);
+            myWorld = Arrays.copyOf(myWorld, capacity * FLOATS);
+            myDirty = Arrays.copyOf(myDirty, capacity);
+        }
+        int index = mySize++;
+        myParents[index] = parent;
+        myObjects[index] = obj;
+        obj.myStoreIndex = index;
+        pull(index);
+        return index;
+    }
+
+    private void pullDirty() {
+        for (int i = 0; i < mySize; i++) {
+            if (myDirty[i] != 0) {
+                pull(i);
+            }
+        }
+    }
+
+    private void pull(int index) {
+        Affine2D t = myObjects[index].getLocalTransform();
+        int o = index * FLOATS;
+        myLocal[o] = t.getIX();
+        myLocal[o + 1] = t.getIY();
+        myLocal[o + 2] = t.getJX();
+        myLocal[o + 3] = t.getJY();
+        myLocal[o + 4] = t.getOriginX();
+        myLocal[o + 5] = t.getOriginY();
+        myDirty[index] = 0;
+    }
+
+    /**
+     * Recompute every world transform from the local transforms, in one pass. Each parent
+     * comes before its children, so its world transform is always ready.
+     */
+    private void propagate() {
+        float[] l = myLocal, w = myWorld;
+        int[] parents = myParents;
+        for (int i = 0; i < mySize; i++) {
+            int o = i * FLOATS;
+            int parent = parents[i];
+            if (parent < 0) {
+                System.arraycopy(l, o, w, o, FLOATS);
+                continue;
+            }
+            int p = parent * FLOATS;
+            float pix = w[p], piy = w[p + 1], pjx = w[p + 2], pjy = w[p + 3];
+            float lix = l[o], liy = l[o + 1], ljx = l[o + 2], ljy = l[o + 3];
+            float lox = l[o + 4], loy = l[o + 5];
+            w[o] = pix*lix + pjx*liy;
+            w[o + 1] = piy*lix + pjy*liy;
+            w[o + 2] = pix*ljx + pjx*ljy;
+            w[o + 3] = piy*ljx + pjy*ljy;
+            w[o + 4] = pix*lox + pjx*loy + w[p + 4];
+            w[o + 5] = piy*lox + pjy*loy + w[p + 5];
+        }
+    }
+
+    /**
+     * Copy the world transforms out to the objects. Parents come first, so each object's parent 
+     * is already up to date when it is reached.
+     */
+    private void push() {
+        for (int i = 0; i < mySize; i++) {
+            myObjects[i].setGlobalTransform(myWorld, i * FLOATS);
+        }
+    }
+
+    /**
+     * The number of objects in the store.
+     *
+     * @return
+     */
+    public int size() {
+        return mySize;
+    }
+
+    /**
+     * Get the object in the given slot. Slots are in depth-first order.
+     *
+     * @param index
+     * @return
+     */
+    public SceneObject getObject(int index) {
+        checkIndex(index);
+        return myObjects[index];
+    }
+
+    /**
+     * Get the slot of the given object.
+     *
+     * @param obj
+     * @return the slot, or -1 if the object isn't in the store
+     */
+    public int indexOf(SceneObject obj) {
+        int index = obj.myStoreIndex;
+        return index >= 0 && index < mySize && myObjects[index] == obj ? index : -1;
+    }
+
+    /**
+     * Get the slot of the parent of the object in the given slot.
+     *
+     * @param index
+     * @return the parent's slot, or -1 for the root
+     */
+    public int getParent(int index) {
+        checkIndex(index);
+        return myParents[index];
+    }
+
+    /**
+     * Copy the world transform of the object in the given slot, as of the last update().
+     *
+     * @param index
+     * @param dest
+     * @return dest
+     */
+    public Affine2D getWorldTransform(int index, Affine2D dest) {
+        checkIndex(index);
+        int o = index * FLOATS;
+        return dest.set(myWorld[o], myWorld[o + 1], myWorld[o + 2], myWorld[o + 3], 
+                myWorld[o + 4], myWorld[o + 5]);
+    }
+
+    public float getWorldX(int index) {
+        checkIndex(index);
+        return myWorld[index * FLOATS + 4];
+    }
+
+    public float getWorldY(int index) {
+        checkIndex(index);
+        return myWorld[index * FLOATS + 5];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mySize)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+    }
+}
@@ -0,0 +1,87 @@
+package unsw.graphics.scene.tests;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.scene.CircularSceneObject;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.tests.CountingGL;
+
+/**
+ * Checks that circles share their tessellation rather than rebuilding it every frame.
+ *
+ * @author Benny Hwang
+ */
+public class CircleTest extends TestCase {
+
+    @Test
+    public void testCirclesShareTessellation() {
+        CountingGL counter = new CountingGL();
+        GL3 gl = counter.gl();
+        Shader shader = new Shader(gl, 1);
+        shader.use(gl);
+        
+        Scene scene = new Scene();
+        scene.reshape(800, 800);
+        CircularSceneObject a = new CircularSceneObject(scene.getRoot(), 0.5f, Color.RED, 
+                Color.BLACK);
+        CircularSceneObject b = new CircularSceneObject(scene.getRoot(), 0.6f, Color.BLUE, 
+                null);
+        b.setCentre(new Point2D(0.5f, 0));
+        
+        // both circles are about 200 pixels across, so they use the same unit circle
+        scene.draw(gl);
+        assertEquals(1, counter.count("glBufferData"));
+        assertEquals(3, counter.count("glDrawArrays"));
+        
+        // nothing is rebuilt when nothing changes, or when the circles change size a bit
+        counter.reset();
+        a.setRadius(0.55f);
+        scene.draw(gl);
+        assertEquals(0, counter.count("glBufferData"));
+        
+        // zooming right in needs a finer circle
+        counter.reset();
+        scene.getCamera().setScale(0.01f);
+        scene.draw(gl);
+        assertEquals(1, counter.count("glBufferData"));
+        
+        shader.destroy(gl);
+    }
+
+    @Test
+    public void testBatchCollisionMatchesSingle() {
+        Scene scene = new Scene();
+        CircularSceneObject circle = new CircularSceneObject(scene.getRoot(), 0.5f, Color.RED, 
+                null);
+        circle.setCentre(new Point2D(0.25f, 0));
+        circle.translate(3, -2);
+        circle.scale(2);
+        
+        int count = 400;
+        float[] points = new float[2 * count];
+        for (int k = 0; k < count; k++) {
+            points[2*k] = 1.5f + (k % 20) * 0.15f;
+            points[2*k + 1] = -3.5f + (k / 20) * 0.15f;
+        }
+        boolean[] results = new boolean[count];
+        int inside = circle.collision(points, count, results);
+        
+        int expected = 0;
+        for (int k = 0; k < count; k++) {
+            boolean hit = circle.collision(new Point2D(points[2*k], points[2*k + 1]));
+            assertEquals(hit, results[k]);
+            if (hit)
+                expected++;
+        }
+        assertEquals(expected, inside);
+        // The circle has radius 1 around (3.5, -2), so covers about 140 of the points
+        assertTrue(inside > 120 && inside < 160);
+    }
+}
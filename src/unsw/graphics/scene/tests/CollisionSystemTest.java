@@ -0,0 +1,159 @@
+package unsw.graphics.scene.tests;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Affine2D;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.scene.CircularSceneObject;
+import unsw.graphics.scene.CollisionShape;
+import unsw.graphics.scene.LineSceneObject;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.scene.SceneObject;
+
+/**
+ * Tests for object-vs-object collision.
+ *
+ * @author Benny Hwang
+ */
+public class CollisionSystemTest extends TestCase {
+    
+    private static final Polygon2D SQUARE = new Polygon2D(-1,-1, 1,-1, 1,1, -1,1);
+    private static final Polygon2D TRIANGLE = new Polygon2D(0,0, 2,0, 0,2);
+    
+    private static final int SHIPS = 1;
+    private static final int BALLS = 2;
+    
+    @Test
+    public void testShapes() {
+        Affine2D identity = new Affine2D();
+        CollisionShape a = new CollisionShape();
+        CollisionShape b = new CollisionShape();
+        
+        a.setCircle(0, 0, 1);
+        b.setCircle(1.9f, 0, 1);
+        assertTrue(CollisionShape.overlaps(a, b));
+        b.setCircle(2.1f, 0, 1);
+        assertFalse(CollisionShape.overlaps(a, b));
+        
+        // the triangle's long edge separates it from a square near the corner
+        a.setPolygon(TRIANGLE.getPoints(), identity);
+        b.setPolygon(SQUARE.getPoints(), new Affine2D().translate(2.2f, 2.2f));
+        assertFalse(CollisionShape.overlaps(a, b));
+        b.setPolygon(SQUARE.getPoints(), new Affine2D().translate(1.8f, 1.8f));
+        assertTrue(CollisionShape.overlaps(a, b));
+        
+        // a circle near the corner of a square, but outside it
+        a.setPolygon(SQUARE.getPoints(), identity);
+        b.setCircle(1.7f, 1.7f, 0.9f);
+        assertFalse(CollisionShape.overlaps(a, b));
+        assertFalse(CollisionShape.overlaps(b, a));
+        b.setCircle(1.5f, 1.5f, 0.9f);
+        assertTrue(CollisionShape.overlaps(b, a));
+        
+        // segments, including ones on the same line
+        a.setSegment(0, 0, 2, 2);
+        b.setSegment(0, 2, 2, 0);
+        assertTrue(CollisionShape.overlaps(a, b));
+        b.setSegment(3, 3, 4, 4);
+        assertFalse(CollisionShape.overlaps(a, b));
+        b.setCircle(2, 0, 1.5f);
+        assertTrue(CollisionShape.overlaps(a, b));
+        b.setCircle(2, 0, 1.3f);
+        assertFalse(CollisionShape.overlaps(a, b));
+        b.setPolygon(SQUARE.getPoints(), identity);
+        assertTrue(CollisionShape.overlaps(a, b));
+    }
+
+    @Test
+    public void testContactEvents() {
+        Scene scene = new Scene();
+        final List<String> events = new ArrayList<String>();
+        
+        PolygonalSceneObject ship = new PolygonalSceneObject(scene.getRoot(), SQUARE, 
+                Color.WHITE, null) {
+            @Override
+            public void onCollisionEnter(SceneObject other) {
+                events.add("enter");
+            }
+            
+            @Override
+            public void onCollisionStay(SceneObject other) {
+                events.add("stay");
+            }
+            
+            @Override
+            public void onCollisionExit(SceneObject other) {
+                events.add("exit");
+            }
+        };
+        ship.setCollisionLayer(SHIPS);
+        ship.setCollisionMask(BALLS);
+        
+        CircularSceneObject ball = new CircularSceneObject(scene.getRoot(), 0.5f, Color.BLACK, 
+                null);
+        ball.setCollisionLayer(BALLS);
+        ball.setCollisionMask(SHIPS);
+        ball.translate(5, 0);
+        
+        scene.update(0.1f);
+        assertTrue(events.isEmpty());
+        
+        ball.translate(-3.6f, 0);
+        scene.update(0.1f);
+        assertEquals(1, events.size());
+        assertEquals("enter", events.get(0));
+        assertTrue(scene.getCollisionSystem().isTouching(ball, ship));
+        
+        scene.update(0.1f);
+        assertEquals("stay", events.get(1));
+        
+        ball.destroy();
+        scene.update(0.1f);
+        assertEquals("exit", events.get(2));
+        assertEquals(0, scene.getCollisionSystem().getContactCount());
+    }
+    
+    @Test
+    public void testLayers() {
+        Scene scene = new Scene();
+        
+        // balls don't hit balls
+        List<SceneObject> balls = new ArrayList<SceneObject>();
+        for (int i = 0; i < 10; i++) {
+            SceneObject ball = new CircularSceneObject(scene.getRoot(), 1, Color.BLACK, null);
+            ball.setCollisionLayer(BALLS);
+            ball.setCollisionMask(SHIPS);
+            balls.add(ball);
+        }
+        scene.update(0.1f);
+        assertEquals(0, scene.getCollisionSystem().getPairsTested());
+        assertEquals(0, scene.getCollisionSystem().getContactCount());
+        
+        // a line through all of them, which is a ship
+        LineSceneObject line = new LineSceneObject(scene.getRoot(), -1, -1, 1, 1, Color.BLACK);
+        line.setCollisionLayer(SHIPS);
+        line.setCollisionMask(BALLS);
+        scene.update(0.1f);
+        assertEquals(10, scene.getCollisionSystem().getContactCount());
+        
+        // objects without layers are left out
+        line.setCollisionLayer(0);
+        scene.update(0.1f);
+        assertEquals(0, scene.getCollisionSystem().getContactCount());
+        assertFalse(scene.getCollisionSystem().isTouching(line, balls.get(0)));
+        
+        // far away objects aren't tested
+        line.setCollisionLayer(SHIPS);
+        line.setP1(new Point2D(100, 100));
+        line.setP2(new Point2D(101, 100));
+        scene.update(0.1f);
+        assertEquals(0, scene.getCollisionSystem().getPairsTested());
+    }
+}
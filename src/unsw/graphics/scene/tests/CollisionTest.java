@@ -0,0 +1,297 @@
+package unsw.graphics.scene.tests;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.geometry.Point2D;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.scene.CircularSceneObject;
+import unsw.graphics.scene.LineSceneObject;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.scene.SceneObject;
+
+/**
+ * Tests for point collision queries against a scene.
+ *
+ * @author Benny Hwang
+ */
+public class CollisionTest extends TestCase {
+    
+    private static final Polygon2D SQUARE = new Polygon2D(0,0, 1,0, 1,1, 0,1);
+
+    @Test
+    public void testCollisionFollowsObjects() {
+        Scene scene = new Scene();
+        PolygonalSceneObject square = new PolygonalSceneObject(scene.getRoot(), SQUARE, 
+                Color.WHITE, null);
+        CircularSceneObject circle = new CircularSceneObject(scene.getRoot(), Color.WHITE, null);
+        circle.translate(100, 100);
+        
+        List<SceneObject> hits = scene.collision(new Point2D(0.5f, 0.5f));
+        assertEquals(1, hits.size());
+        assertSame(square, hits.get(0));
+        
+        hits = scene.collision(new Point2D(100.5f, 100));
+        assertEquals(1, hits.size());
+        assertSame(circle, hits.get(0));
+        
+        // move the square far away, through its parent
+        SceneObject parent = new SceneObject(scene.getRoot());
+        square.setParent(parent);
+        parent.translate(50, -50);
+        assertTrue(scene.collision(new Point2D(0.5f, 0.5f)).isEmpty());
+        hits = scene.collision(new Point2D(50.5f, -49.5f));
+        assertEquals(1, hits.size());
+        assertSame(square, hits.get(0));
+        
+        // a large object overlapping everything
+        PolygonalSceneObject sea = new PolygonalSceneObject(scene.getRoot(), SQUARE, 
+                Color.BLUE, null);
+        sea.translate(-500, -500);
+        sea.scale(1000);
+        assertEquals(2, scene.collision(new Point2D(50.5f, -49.5f)).size());
+    }
+    
+    @Test
+    public void testHiddenAndDestroyedObjectsIgnored() {
+        Scene scene = new Scene();
+        SceneObject parent = new SceneObject(scene.getRoot());
+        PolygonalSceneObject square = new PolygonalSceneObject(parent, SQUARE, Color.WHITE, null);
+        Point2D p = new Point2D(0.5f, 0.5f);
+        
+        parent.show(false);
+        assertTrue(scene.collision(p).isEmpty());
+        parent.show(true);
+        assertEquals(1, scene.collision(p).size());
+        
+        square.destroy();
+        assertTrue(scene.collision(p).isEmpty());
+    }
+
+    @Test
+    public void testDestroyMovedAndLargeObjects() {
+        Scene scene = new Scene();
+        List<PolygonalSceneObject> seas = new ArrayList<PolygonalSceneObject>();
+        for (int i = 0; i < 5; i++) {
+            PolygonalSceneObject sea = new PolygonalSceneObject(scene.getRoot(), SQUARE,
+                    Color.BLUE, null);
+            sea.translate(-500, -500);
+            sea.scale(1000);
+            seas.add(sea);
+        }
+        Point2D p = new Point2D(0.5f, 0.5f);
+        assertEquals(5, scene.collision(p).size());
+
+        // destroy large objects from the middle and the end of the list
+        seas.get(1).destroy();
+        seas.get(4).destroy();
+        List<SceneObject> hits = scene.collision(p);
+        assertEquals(3, hits.size());
+        assertTrue(hits.containsAll(Arrays.asList(seas.get(0), seas.get(2), seas.get(3))));
+
+        // an object destroyed after moving, before the grid catches up
+        PolygonalSceneObject square = new PolygonalSceneObject(scene.getRoot(), SQUARE,
+                Color.WHITE, null);
+        square.translate(600, 600);
+        square.destroy();
+        assertTrue(scene.collision(new Point2D(600.5f, 600.5f)).isEmpty());
+
+        // and the remaining large objects can still move out of the way
+        seas.get(2).translate(5000, 0);
+        assertEquals(2, scene.collision(p).size());
+    }
+
+    @Test
+    public void testHugeObject() {
+        Scene scene = new Scene();
+        // Far more cells across than fit in an int
+        PolygonalSceneObject huge = new PolygonalSceneObject(scene.getRoot(), SQUARE,
+                Color.BLUE, null);
+        huge.translate(-1e12f, -1e12f);
+        huge.scale(2e12f);
+        List<SceneObject> hits = scene.collision(new Point2D(0.5f, 0.5f));
+        assertEquals(1, hits.size());
+        assertSame(huge, hits.get(0));
+    }
+
+    @Test
+    public void testMovingDestroyedObject() {
+        Scene scene = new Scene();
+        SceneObject parent = new SceneObject(scene.getRoot());
+        PolygonalSceneObject square = new PolygonalSceneObject(parent, SQUARE, Color.WHITE, null);
+        PolygonalSceneObject child = new PolygonalSceneObject(square, SQUARE, Color.WHITE, null);
+        square.destroy();
+        assertNull(square.getParent());
+
+        // moving it, or the parent it used to have, doesn't put it back
+        square.translate(5, 5);
+        parent.translate(1, 0);
+        child.translate(1, 1);
+        assertTrue(scene.collision(new Point2D(5.5f, 5.5f)).isEmpty());
+        assertTrue(scene.collision(new Point2D(6.5f, 6.5f)).isEmpty());
+        assertTrue(scene.collision(new Point2D(1.5f, 0.5f)).isEmpty());
+    }
+
+    @Test
+    public void testScenesAreIndependent() {
+        Scene scene1 = new Scene();
+        Scene scene2 = new Scene();
+        new PolygonalSceneObject(scene1.getRoot(), SQUARE, Color.WHITE, null);
+        
+        assertEquals(1, scene1.collision(new Point2D(0.5f, 0.5f)).size());
+        assertTrue(scene2.collision(new Point2D(0.5f, 0.5f)).isEmpty());
+    }
+    @Test
+    public void testPolygonCollisionInLocalCoordinates() {
+        Scene scene = new Scene();
+        SceneObject parent = new SceneObject(scene.getRoot());
+        parent.translate(10, 0);
+        parent.rotate(90);
+        // An L shape, which is concave
+        Polygon2D ell = new Polygon2D(0,0, 2,0, 2,1, 1,1, 1,2, 0,2);
+        PolygonalSceneObject obj = new PolygonalSceneObject(parent, ell, Color.WHITE, null);
+        obj.scale(2);
+        
+        // Local (0.5, 0.5) is at (1, 1) in the parent's frame, then rotated and moved to (9, 1)
+        assertTrue(obj.collision(new Point2D(9, 1)));
+        // Local (1.5, 1.5) is in the notch of the L
+        assertFalse(obj.collision(new Point2D(7, 3)));
+        assertFalse(obj.collision(new Point2D(11, 1)));
+        
+        // The cached inverse follows the object when it moves
+        parent.translate(5, 0);
+        assertFalse(obj.collision(new Point2D(9, 1)));
+        assertTrue(obj.collision(new Point2D(14, 1)));
+        
+        // An object scaled down to nothing contains nothing
+        obj.setScale(0);
+        assertNull(obj.getInverseGlobalTransform());
+        assertFalse(obj.collision(new Point2D(14, 1)));
+    }
+    
+    @Test
+    public void testBatchCollisionMatchesSingle() {
+        Scene scene = new Scene();
+        Polygon2D ell = new Polygon2D(0,0, 2,0, 2,1, 1,1, 1,2, 0,2);
+        PolygonalSceneObject obj = new PolygonalSceneObject(scene.getRoot(), ell, Color.WHITE, 
+                null);
+        obj.translate(-1, 3);
+        obj.rotate(30);
+        obj.scale(1.5f);
+        
+        int count = 400;
+        float[] points = new float[2 * count];
+        for (int k = 0; k < count; k++) {
+            points[2*k] = -2 + (k % 20) * 0.25f;
+            points[2*k + 1] = 1 + (k / 20) * 0.25f;
+        }
+        boolean[] results = new boolean[count];
+        int inside = obj.collision(points, count, results);
+        
+        int expected = 0;
+        for (int k = 0; k < count; k++) {
+            boolean hit = obj.collision(new Point2D(points[2*k], points[2*k + 1]));
+            assertEquals(hit, results[k]);
+            if (hit)
+                expected++;
+        }
+        assertEquals(expected, inside);
+        assertTrue(inside > 0 && inside < count);
+    }
+
+    @Test
+    public void testLinePickRadius() {
+        Scene scene = new Scene();
+        // 100 pixels high, so the camera's view of 2 units is 50 pixels per unit
+        scene.reshape(100, 100);
+        scene.setPickRadius(5);
+        assertEquals(0.1f, scene.getPickTolerance(), 1e-6f);
+        
+        // A vertical line, which has no slope
+        SceneObject parent = new SceneObject(scene.getRoot());
+        LineSceneObject line = new LineSceneObject(parent, 0, 0, 0, 1, Color.WHITE);
+        parent.translate(0.5f, 0);
+        
+        assertTrue(line.collision(new Point2D(0.5f, 0.5f)));
+        assertTrue(line.collision(new Point2D(0.59f, 0.5f)));
+        assertFalse(line.collision(new Point2D(0.62f, 0.5f)));
+        // Past the end of the segment, the distance is to the end point
+        assertTrue(line.collision(new Point2D(0.5f, 1.09f)));
+        assertFalse(line.collision(new Point2D(0.5f, 1.11f)));
+        
+        // The scene finds the line even though its bounds don't contain the point
+        List<SceneObject> hits = scene.collision(new Point2D(0.55f, 0.5f));
+        assertEquals(1, hits.size());
+        assertSame(line, hits.get(0));
+        
+        // The cached end points follow the line
+        parent.translate(2, 0);
+        assertFalse(line.collision(new Point2D(0.5f, 0.5f)));
+        assertTrue(line.collision(new Point2D(2.5f, 0.5f)));
+        line.setP2(new Point2D(1, 0));
+        assertTrue(line.collision(new Point2D(3.5f, 0.05f)));
+        
+        // Zooming the camera out makes a pixel cover more of the world
+        scene.getCamera().scale(2);
+        assertTrue(line.collision(new Point2D(3.5f, 0.15f)));
+    }
+
+    @Test
+    public void testPickTopmost() {
+        Scene scene = new Scene();
+        PolygonalSceneObject bottom = new PolygonalSceneObject(scene.getRoot(), SQUARE, 
+                Color.WHITE, null);
+        CircularSceneObject middle = new CircularSceneObject(bottom, 0.25f, Color.RED, null);
+        middle.translate(0.5f, 0.5f);
+        PolygonalSceneObject top = new PolygonalSceneObject(scene.getRoot(), SQUARE, 
+                Color.BLUE, null);
+        top.translate(0.4f, 0.4f);
+        Point2D p = new Point2D(0.5f, 0.5f);
+        
+        // Drawn bottom, middle, top, so picked the other way round
+        assertSame(top, scene.pick(p));
+        final List<SceneObject> hits = new ArrayList<SceneObject>();
+        scene.pickAll(p, new Scene.PickListener() {
+            @Override
+            public boolean onPick(SceneObject obj) {
+                hits.add(obj);
+                return true;
+            }
+        });
+        assertEquals(Arrays.asList(top, middle, bottom), hits);
+        
+        // A transparent object lets picks through to the ones under it
+        top.setOpaque(false);
+        assertSame(middle, scene.pick(p));
+        top.setOpaque(true);
+        
+        // Hidden subtrees are skipped
+        top.show(false);
+        assertSame(middle, scene.pick(p));
+        bottom.show(false);
+        assertNull(scene.pick(p));
+        bottom.show(true);
+        
+        // Outside the circle but inside the square
+        assertSame(bottom, scene.pick(new Point2D(0.1f, 0.1f)));
+        
+        // The listener can stop the search
+        hits.clear();
+        top.show(true);
+        scene.pickAll(p, new Scene.PickListener() {
+            @Override
+            public boolean onPick(SceneObject obj) {
+                hits.add(obj);
+                return hits.size() < 2;
+            }
+        });
+        assertEquals(Arrays.asList(top, middle), hits);
+    }
+
+}
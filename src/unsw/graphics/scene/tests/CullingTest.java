@@ -0,0 +1,105 @@
+package unsw.graphics.scene.tests;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Bounds2D;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.scene.SceneObject;
+import unsw.graphics.tests.CountingGL;
+
+/**
+ * Checks that objects outside the camera's view are not drawn.
+ *
+ * @author Benny Hwang
+ */
+public class CullingTest extends TestCase {
+    
+    private static final float EPSILON = 0.001f;
+    
+    private static final Polygon2D SQUARE = new Polygon2D(0,0, 1,0, 1,1, 0,1);
+
+    @Test
+    public void testSubtreeBounds() {
+        Scene scene = new Scene();
+        SceneObject parent = new SceneObject(scene.getRoot());
+        PolygonalSceneObject a = new PolygonalSceneObject(parent, SQUARE, Color.WHITE, null);
+        PolygonalSceneObject b = new PolygonalSceneObject(parent, SQUARE, Color.WHITE, null);
+        b.translate(5, 5);
+        
+        Bounds2D bounds = parent.getSubtreeBounds();
+        assertEquals(0, bounds.getMinX(), EPSILON);
+        assertEquals(6, bounds.getMaxY(), EPSILON);
+        assertEquals(3, parent.getSubtreeSize());
+        
+        // moving the parent moves the whole subtree
+        parent.translate(-10, 0);
+        assertEquals(-10, scene.getRoot().getSubtreeBounds().getMinX(), EPSILON);
+        
+        // as does moving, scaling or destroying a descendant
+        a.scale(2);
+        assertEquals(-10, parent.getSubtreeBounds().getMinX(), EPSILON);
+        assertEquals(-4, parent.getSubtreeBounds().getMaxX(), EPSILON);
+        b.destroy();
+        assertEquals(-8, parent.getSubtreeBounds().getMaxX(), EPSILON);
+        assertEquals(2, parent.getSubtreeSize());
+        
+        // objects that draw themselves without bounds are never culled
+        new SceneObject(a) {
+            @Override
+            public void drawSelf(GL3 gl, CoordFrame2D frame) {
+                // draws somewhere
+            }
+        };
+        assertEquals(Float.POSITIVE_INFINITY, scene.getRoot().getSubtreeBounds().getMaxX());
+    }
+    
+    @Test
+    public void testOffscreenObjectsCulled() {
+        CountingGL counter = new CountingGL();
+        GL3 gl = counter.gl();
+        Shader shader = new Shader(gl, 1);
+        shader.use(gl);
+        
+        Scene scene = new Scene();
+        scene.reshape(100, 100);
+        for (int i = 0; i < 100; i++) {
+            SceneObject square = new PolygonalSceneObject(scene.getRoot(), SQUARE, Color.WHITE, 
+                    null);
+            square.translate(i * 10, 0);
+        }
+        
+        // only the square at the origin is in view
+        scene.draw(gl);
+        assertEquals(1, counter.count("glDrawArrays"));
+        assertEquals(2, scene.getNodesDrawn());
+        assertEquals(100, scene.getNodesCulled());
+        
+        counter.reset();
+        scene.getCamera().translate(50, 0);
+        scene.draw(gl);
+        assertEquals(1, counter.count("glDrawArrays"));
+        
+        // the whole row is in view
+        counter.reset();
+        scene.getCamera().setScale(1000);
+        scene.draw(gl);
+        assertEquals(100, counter.count("glDrawArrays"));
+        
+        counter.reset();
+        scene.setCulling(false);
+        scene.getCamera().setScale(1);
+        scene.draw(gl);
+        assertEquals(100, counter.count("glDrawArrays"));
+        
+        shader.destroy(gl);
+    }
+}
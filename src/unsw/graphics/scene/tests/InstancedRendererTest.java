@@ -0,0 +1,80 @@
+package unsw.graphics.scene.tests;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.scene.InstancedRenderer;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.tests.CountingGL;
+
+/**
+ * Checks that a scene drawn in INSTANCED mode makes one draw call per shared polygon.
+ *
+ * @author Benny Hwang
+ */
+public class InstancedRendererTest extends TestCase {
+    
+    private static final Polygon2D HULL = new Polygon2D(1.5f,0, 1,0.6f, -1,0.7f, -1,-0.7f, 
+            1,-0.6f);
+    private static final Polygon2D SAIL = new Polygon2D(0.5f,0, 0,1.5f, 0,-1.5f);
+
+    @Test
+    public void testFleetDrawnWithFewCalls() {
+        CountingGL counter = new CountingGL();
+        GL3 gl = counter.gl();
+        Shader shader = new Shader(gl, 1);
+        shader.use(gl);
+        InstancedRenderer renderer = new InstancedRenderer(new Shader(gl, 2));
+        
+        Scene scene = new Scene();
+        scene.reshape(100, 100);
+        scene.getCamera().setScale(1000);
+        scene.setRenderMode(Scene.RenderMode.INSTANCED);
+        scene.setInstancedRenderer(renderer);
+        for (int i = 0; i < 1000; i++) {
+            PolygonalSceneObject ship = new PolygonalSceneObject(scene.getRoot(), HULL, 
+                    new Color(i % 256, 0, 0), Color.BLACK);
+            ship.setPosition(i, 0);
+            new PolygonalSceneObject(ship, SAIL, Color.WHITE, null);
+        }
+        
+        counter.reset();
+        scene.draw(gl);
+        
+        // hull fills, hull outlines and sails
+        assertEquals(3, renderer.getDrawCallCount());
+        assertEquals(3000, renderer.getInstanceCount());
+        assertEquals(3, counter.count("glDrawArraysInstanced"));
+        assertEquals(0, counter.count("glDrawArrays"));
+        
+        // only the view matrix of each shader is uploaded, the rest are instance attributes
+        assertEquals(2, counter.count("glUniformMatrix3fv"));
+        assertEquals(0, counter.count("glUniform3f"));
+        
+        // the instances and the two polygons are uploaded
+        assertEquals(3, counter.count("glBufferData"));
+        assertSame(shader, Shader.getCurrent());
+        
+        // the next frame only uploads the instances
+        counter.reset();
+        scene.draw(gl);
+        assertEquals(3, counter.count("glDrawArraysInstanced"));
+        assertEquals(1, counter.count("glBufferData"));
+        
+        // immediate mode draws each polygon separately
+        scene.setRenderMode(Scene.RenderMode.IMMEDIATE);
+        counter.reset();
+        scene.draw(gl);
+        assertEquals(0, counter.count("glDrawArraysInstanced"));
+        assertEquals(3000, counter.count("glDrawArrays"));
+        
+        shader.destroy(gl);
+    }
+}
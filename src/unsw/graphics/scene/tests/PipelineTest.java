@@ -0,0 +1,97 @@
+package unsw.graphics.scene.tests;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.headless.RecordingGL;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.scene.SceneObject;
+
+/**
+ * Checks that a pipelined scene is updated on its own thread and drawn from snapshots.
+ *
+ * @author Benny Hwang
+ */
+public class PipelineTest extends TestCase {
+    
+    private static final Polygon2D SQUARE = new Polygon2D(0,0, 1,0, 1,1, 0,1);
+
+    @Test
+    public void testDrawsSnapshots() throws InterruptedException {
+        RecordingGL recorder = new RecordingGL();
+        GL3 gl = recorder.gl();
+        Shader shader = new Shader(gl, gl.glCreateProgram());
+        shader.use(gl);
+        
+        final Scene scene = new Scene();
+        scene.reshape(100, 100);
+        scene.getCamera().setScale(100);
+        final Thread[] updater = new Thread[1];
+        new PolygonalSceneObject(scene.getRoot(), SQUARE, Color.RED, Color.BLACK) {
+            @Override
+            public void updateSelf(float dt) {
+                updater[0] = Thread.currentThread();
+                rotate(90 * dt);
+            }
+        };
+        
+        scene.startPipeline(200);
+        assertTrue(scene.isPipelined());
+        waitForSnapshots(scene, 1);
+        assertNotSame(Thread.currentThread(), updater[0]);
+        
+        // The fill and the outline
+        recorder.reset();
+        scene.draw(gl);
+        assertEquals(2, recorder.count("glDrawArrays"));
+        
+        // Other threads change the scene through the simulation thread
+        scene.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                SceneObject obj = new PolygonalSceneObject(scene.getRoot(), SQUARE, Color.BLUE, 
+                        null);
+                obj.translate(2, 0);
+            }
+        });
+        long published = scene.getSnapshotCount();
+        waitForSnapshots(scene, published + 2);
+        recorder.reset();
+        scene.draw(gl);
+        assertEquals(3, recorder.count("glDrawArrays"));
+        
+        // The counts are those of the snapshot that was drawn
+        int drawn = scene.getNodesDrawn();
+        int culled = scene.getNodesCulled();
+        assertTrue(drawn >= 2);
+        
+        scene.stopPipeline();
+        assertFalse(scene.isPipelined());
+        assertEquals(0, scene.getSnapshotCount());
+        
+        // Back to updating and drawing on this thread
+        recorder.reset();
+        scene.draw(gl, 0.1f);
+        assertSame(Thread.currentThread(), updater[0]);
+        assertEquals(3, recorder.count("glDrawArrays"));
+        assertEquals(drawn, scene.getNodesDrawn());
+        assertEquals(culled, scene.getNodesCulled());
+        
+        shader.destroy(gl);
+    }
+    
+    private static void waitForSnapshots(Scene scene, long count) throws InterruptedException {
+        long giveUp = System.currentTimeMillis() + 5000;
+        while (scene.getSnapshotCount() < count) {
+            assertTrue("No snapshot published", System.currentTimeMillis() < giveUp);
+            Thread.sleep(1);
+        }
+    }
+}
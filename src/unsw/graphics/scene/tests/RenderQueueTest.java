@@ -0,0 +1,81 @@
+package unsw.graphics.scene.tests;
+
+import java.awt.Color;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.headless.RecordingGL;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.RenderQueue;
+import unsw.graphics.scene.Scene;
+
+/**
+ * Checks that a scene drawn in SORTED mode changes state as little as possible, and keeps its
+ * draw layers in order.
+ *
+ * @author Benny Hwang
+ */
+public class RenderQueueTest extends TestCase {
+    
+    private static final Polygon2D HULL = new Polygon2D(1.5f,0, 1,0.6f, -1,0.7f, -1,-0.7f, 
+            1,-0.6f);
+    private static final Polygon2D SAIL = new Polygon2D(0.5f,0, 0,1.5f, 0,-1.5f);
+
+    @Test
+    public void testFleetSortedByState() {
+        RecordingGL recorder = new RecordingGL();
+        GL3 gl = recorder.gl();
+        Shader shader = new Shader(gl, gl.glCreateProgram());
+        shader.use(gl);
+        
+        Scene scene = new Scene();
+        scene.reshape(100, 100);
+        scene.getCamera().setScale(1000);
+        scene.setRenderMode(Scene.RenderMode.SORTED);
+        for (int i = 0; i < 1000; i++) {
+            PolygonalSceneObject ship = new PolygonalSceneObject(scene.getRoot(), HULL, 
+                    i % 2 == 0 ? Color.RED : Color.BLUE, Color.BLACK);
+            ship.setPosition(i, 0);
+            PolygonalSceneObject sail = new PolygonalSceneObject(ship, SAIL, Color.WHITE, null);
+            sail.setDrawLayer(1);
+        }
+        
+        scene.draw(gl);
+        recorder.reset();
+        scene.draw(gl);
+        RenderQueue queue = scene.getRenderQueue();
+        
+        assertEquals(3000, queue.getCommandCount());
+        assertEquals(3000, recorder.count("glDrawArrays"));
+        // In tree order every command changes buffer and color
+        assertEquals(1 + 3000 + 3000, queue.getStateChangesBefore());
+        // One shader, three buffers and four colors
+        assertEquals(1 + 3 + 4, queue.getStateChangesAfter());
+        assertEquals(3, recorder.count("glBindBuffer"));
+        assertEquals(4, recorder.count("glUniform3f"));
+        
+        // The sails are in the layer above, so are drawn after every hull
+        List<RecordingGL.Command> draws = recorder.getCommands("glDrawArrays");
+        for (int i = 0; i < 2000; i++)
+            assertEquals(HULL.size(), draws.get(i).getInt(2));
+        for (int i = 2000; i < 3000; i++)
+            assertEquals(SAIL.size(), draws.get(i).getInt(2));
+        
+        // Each command still gets its own model matrix. The view matrix is the same as last frame.
+        assertEquals(3000, recorder.count("glUniformMatrix3fv"));
+        
+        // Immediate mode thrashes the color
+        scene.setRenderMode(Scene.RenderMode.IMMEDIATE);
+        recorder.reset();
+        scene.draw(gl);
+        assertEquals(3000, recorder.count("glUniform3f"));
+        
+        shader.destroy(gl);
+    }
+}
@@ -1,11 +1,16 @@
 package unsw.graphics.scene.tests;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 import junit.framework.TestCase;
 import unsw.graphics.geometry.Point2D;
 import unsw.graphics.scene.Scene;
 import unsw.graphics.scene.SceneObject;
+import unsw.graphics.scene.SceneRegistry;
 
 /**
  * COMMENT: Comment SceneObjectTest 
@@ -316,4 +321,278 @@ public class SceneObjectTest extends TestCase {
         
     }
     
+    /**
+     * Global transforms are cached, so moving an ancestor after they have been read must
+     * invalidate them.
+     */
+    @Test
+    public void testGlobalAfterAncestorMoves() {
+        Scene scene = new Scene();
+        SceneObject parent = new SceneObject(scene.getRoot());
+        SceneObject child = new SceneObject(parent);
+        SceneObject grandchild = new SceneObject(child);
+        grandchild.translate(1, 0);
+        
+        Point2D p = grandchild.getGlobalPosition();
+        assertEquals(1, p.getX(), EPSILON);
+        assertEquals(0, p.getY(), EPSILON);
+        
+        parent.translate(0, 2);
+        parent.rotate(90);
+        parent.scale(3);
+        
+        p = grandchild.getGlobalPosition();
+        assertEquals(0, p.getX(), EPSILON);
+        assertEquals(5, p.getY(), EPSILON);
+        assertEquals(90, grandchild.getGlobalRotation(), EPSILON);
+        assertEquals(3, grandchild.getGlobalScale(), EPSILON);
+        
+        // moving the child again after the grandchild is clean
+        child.translate(1, 0);
+        p = grandchild.getGlobalPosition();
+        assertEquals(0, p.getX(), EPSILON);
+        assertEquals(8, p.getY(), EPSILON);
+        
+        // reparenting moves the whole subtree without changing its global position
+        SceneObject other = new SceneObject(scene.getRoot());
+        other.translate(-1, -1);
+        child.setParent(other);
+        p = grandchild.getGlobalPosition();
+        assertEquals(0, p.getX(), EPSILON);
+        assertEquals(8, p.getY(), EPSILON);
+        
+        other.translate(1, 0);
+        p = grandchild.getGlobalPosition();
+        assertEquals(1, p.getX(), EPSILON);
+        assertEquals(8, p.getY(), EPSILON);
+    }
+    
+    /**
+     * The root's own transform is part of every object's global transform, as it is when the 
+     * scene is drawn.
+     */
+    @Test
+    public void testGlobalIncludesRoot() {
+        Scene scene = new Scene();
+        SceneObject child = new SceneObject(scene.getRoot());
+        child.translate(1, 0);
+        
+        scene.getRoot().translate(10, 5);
+        scene.getRoot().rotate(90);
+        scene.getRoot().scale(2);
+        
+        Point2D p = child.getGlobalPosition();
+        assertEquals(10, p.getX(), EPSILON);
+        assertEquals(7, p.getY(), EPSILON);
+        assertEquals(90, child.getGlobalRotation(), EPSILON);
+        assertEquals(2, child.getGlobalScale(), EPSILON);
+        
+        // and reparenting keeps that position
+        SceneObject other = new SceneObject(scene.getRoot());
+        other.translate(-3, 0);
+        child.setParent(other);
+        p = child.getGlobalPosition();
+        assertEquals(10, p.getX(), EPSILON);
+        assertEquals(7, p.getY(), EPSILON);
+    }
+    
+    /**
+     * A parent scaled to nothing can't be undone, so reparenting under it keeps the local 
+     * transform.
+     */
+    @Test
+    public void testSetParentScaledToNothing() {
+        Scene scene = new Scene();
+        SceneObject parent = new SceneObject(scene.getRoot());
+        parent.translate(2, 3);
+        parent.setScale(0);
+        SceneObject obj = new SceneObject(scene.getRoot());
+        obj.translate(1, 1);
+        obj.rotate(45);
+        obj.scale(2);
+        
+        obj.setParent(parent);
+        assertSame(parent, obj.getParent());
+        assertEquals(1, obj.getPosition().getX(), EPSILON);
+        assertEquals(1, obj.getPosition().getY(), EPSILON);
+        assertEquals(45, obj.getRotation(), EPSILON);
+        assertEquals(2, obj.getScale(), EPSILON);
+        
+        // it all collapses onto the parent's position
+        Point2D p = obj.getGlobalPosition();
+        assertEquals(2, p.getX(), EPSILON);
+        assertEquals(3, p.getY(), EPSILON);
+        
+        // and reappears when the parent is scaled up again
+        parent.setScale(1);
+        p = obj.getGlobalPosition();
+        assertEquals(3, p.getX(), EPSILON);
+        assertEquals(4, p.getY(), EPSILON);
+    }
+    
+    @Test
+    public void testRegistry() {
+        Scene scene = new Scene();
+        SceneRegistry registry = scene.getRegistry();
+        // the root and the camera
+        assertEquals(2, registry.size());
+        
+        SceneObject a = new SceneObject(scene.getRoot());
+        SceneObject b = new SceneObject(a);
+        SceneObject c = new SceneObject(scene.getRoot());
+        assertEquals(5, registry.size());
+        assertTrue(registry.contains(b));
+        
+        // destroying an object removes its whole subtree, and the rest stay reachable
+        a.destroy();
+        assertEquals(3, registry.size());
+        assertFalse(registry.contains(a));
+        assertFalse(registry.contains(b));
+        assertTrue(registry.contains(c));
+        for (int i = 0; i < registry.size(); i++) {
+            assertTrue(registry.contains(registry.get(i)));
+        }
+        
+        // destroying twice is harmless
+        a.destroy();
+        assertEquals(3, registry.size());
+        
+        // other scenes don't see these objects
+        Scene other = new Scene();
+        assertFalse(other.getRegistry().contains(c));
+        assertEquals(2, other.getRegistry().size());
+    }
+    
+    @Test
+    public void testChangesDuringUpdate() {
+        final Scene scene = new Scene();
+        final SceneObject target = new SceneObject(scene.getRoot());
+        target.translate(5, 0);
+        final int[] updates = new int[1];
+        
+        // spawns a child and moves it to the target, then destroys itself
+        SceneObject spawner = new SceneObject(scene.getRoot()) {
+            @Override
+            public void updateSelf(float dt) {
+                SceneObject child = new SceneObject(this) {
+                    @Override
+                    public void updateSelf(float dt) {
+                        updates[0]++;
+                    }
+                };
+                child.setParent(target);
+                destroy();
+                
+                // nothing changes until the update has finished
+                assertTrue(getChildren().isEmpty());
+                assertSame(scene.getRoot(), getParent());
+                assertTrue(scene.getRoot().getChildren().contains(this));
+            }
+        };
+        spawner.translate(1, 0);
+        
+        scene.update(0.1f);
+        assertFalse(scene.getRoot().getChildren().contains(spawner));
+        assertEquals(1, target.getChildren().size());
+        assertEquals(0, updates[0]);
+        
+        // the child keeps the global position it had when it was moved
+        SceneObject child = target.getChildren().get(0);
+        assertEquals(1, child.getGlobalPosition().getX(), EPSILON);
+        assertEquals(-4, child.getPosition().getX(), EPSILON);
+        
+        scene.update(0.1f);
+        assertEquals(1, updates[0]);
+        
+        target.translate(1, 0);
+        assertEquals(2, child.getGlobalPosition().getX(), EPSILON);
+    }
+    
+    @Test
+    public void testFixedTimestep() {
+        Scene scene = new Scene();
+        scene.setFixedRate(10);
+        final int[] updates = new int[1];
+        final float[] lastDt = new float[1];
+        SceneObject mover = new SceneObject(scene.getRoot()) {
+            @Override
+            public void updateSelf(float dt) {
+                updates[0]++;
+                lastDt[0] = dt;
+                translate(1, 0);
+                rotate(170);
+            }
+        };
+        
+        // not enough time for a step yet
+        scene.advance(0.05f);
+        assertEquals(0, updates[0]);
+        
+        scene.advance(0.2f);
+        assertEquals(2, updates[0]);
+        assertEquals(0.1f, lastDt[0], EPSILON);
+        assertEquals(0.5f, scene.getInterpolation(), EPSILON);
+        
+        // drawn half way between the last two steps, turning the short way round
+        assertEquals(2, mover.getPosition().getX(), EPSILON);
+        assertEquals(1.5f, mover.getDrawTransform().getOriginX(), EPSILON);
+        float angle = (float) Math.toDegrees(Math.atan2(mover.getDrawTransform().getIY(), 
+                mover.getDrawTransform().getIX()));
+        assertEquals(-105, angle, EPSILON);
+        
+        // a long frame only runs up to the maximum number of steps
+        scene.setMaxStepsPerFrame(3);
+        scene.advance(10);
+        assertEquals(5, updates[0]);
+        assertTrue(scene.getInterpolation() < 1);
+        
+        // back to one update per frame, drawn where it is
+        scene.setFixedRate(0);
+        scene.advance(0.01f);
+        assertEquals(6, updates[0]);
+        assertEquals(0.01f, lastDt[0], EPSILON);
+        assertEquals(6, mover.getDrawTransform().getOriginX(), EPSILON);
+    }
+    
+    @Test
+    public void testParallelUpdate() {
+        Scene scene = new Scene();
+        scene.setParallelUpdate(true);
+        scene.setParallelThreshold(0);
+        final AtomicInteger updates = new AtomicInteger();
+        
+        // ships that move forward and fire a short-lived ball every update
+        List<SceneObject> ships = new ArrayList<SceneObject>();
+        for (int i = 0; i < 500; i++) {
+            SceneObject ship = new SceneObject(scene.getRoot()) {
+                @Override
+                public void updateSelf(float dt) {
+                    updates.incrementAndGet();
+                    translate(dt, 0);
+                    for (SceneObject ball : getChildren()) {
+                        ball.destroy();
+                    }
+                    new SceneObject(this);
+                }
+            };
+            ship.setPosition(0, i);
+            new SceneObject(ship).rotate(i);
+            ships.add(ship);
+        }
+        
+        for (int i = 0; i < 10; i++) {
+            scene.update(0.5f);
+        }
+        
+        assertEquals(5000, updates.get());
+        for (int i = 0; i < ships.size(); i++) {
+            SceneObject ship = ships.get(i);
+            assertEquals(5, ship.getGlobalPosition().getX(), EPSILON);
+            assertEquals(i, ship.getGlobalPosition().getY(), EPSILON);
+            assertEquals(1, ship.getChildren().size());
+        }
+        // the root, the camera, the ships and one ball each
+        assertEquals(2 + 2 * ships.size(), scene.getRegistry().size());
+    }
+    
 }
@@ -0,0 +1,118 @@
+package unsw.graphics.scene.tests;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Affine2D;
+import unsw.graphics.scene.Scene;
+import unsw.graphics.scene.SceneObject;
+import unsw.graphics.scene.TransformStore;
+
+/**
+ * Checks that the transform store agrees with the scene tree.
+ *
+ * @author Benny Hwang
+ */
+public class TransformStoreTest extends TestCase {
+    
+    private static final float EPSILON = 0.001f;
+
+    @Test
+    public void testMatchesTree() {
+        Scene scene = new Scene();
+        for (int i = 0; i < 5; i++) {
+            SceneObject ship = new SceneObject(scene.getRoot());
+            ship.translate(i, 2 * i);
+            ship.rotate(30 * i);
+            for (int j = 0; j < 3; j++) {
+                SceneObject part = new SceneObject(ship);
+                part.translate(1, j);
+                part.scale(0.5f);
+                new SceneObject(part).rotate(45);
+            }
+        }
+        
+        TransformStore store = scene.getTransformStore();
+        store.update();
+        assertEquals(scene.getRegistry().size(), store.size());
+        assertMatches(store);
+        
+        // moving objects only copies their local transforms in again
+        int version = scene.getStructureVersion();
+        scene.getRoot().getChildren().get(2).rotate(90);
+        scene.getRoot().getChildren().get(2).getChildren().get(1).translate(-3, 0);
+        store.update();
+        assertEquals(version, scene.getStructureVersion());
+        assertMatches(store);
+        
+        // changing the structure rebuilds the store
+        SceneObject moved = scene.getRoot().getChildren().get(1).getChildren().get(0);
+        moved.setParent(scene.getRoot().getChildren().get(4));
+        scene.getRoot().getChildren().get(0).destroy();
+        new SceneObject(moved).translate(7, 7);
+        store.update();
+        assertEquals(scene.getRegistry().size(), store.size());
+        assertEquals(-1, store.indexOf(new SceneObject()));
+        assertMatches(store);
+    }
+    
+    @Test
+    public void testSceneUpdateUsesStore() {
+        // Two copies of the same scene, one with a store
+        Scene plain = new Scene();
+        Scene stored = new Scene();
+        for (Scene scene : new Scene[] { plain, stored }) {
+            for (int i = 0; i < 4; i++) {
+                SceneObject ship = new SceneObject(scene.getRoot());
+                ship.translate(i, -i);
+                SceneObject part = new SceneObject(ship);
+                part.translate(1, 0);
+                part.rotate(100);
+                part.scale(3);
+            }
+        }
+        TransformStore store = stored.getTransformStore();
+        
+        for (Scene scene : new Scene[] { plain, stored }) {
+            SceneObject ship = scene.getRoot().getChildren().get(1);
+            ship.rotate(120);
+            ship.scale(0.5f);
+            scene.update(1 / 60f);
+        }
+        assertMatches(store);
+        for (int i = 0; i < plain.getRegistry().size(); i++) {
+            SceneObject expected = plain.getRegistry().get(i);
+            SceneObject actual = stored.getRegistry().get(i);
+            assertEquals(expected.getGlobalPosition().getX(), 
+                    actual.getGlobalPosition().getX(), EPSILON);
+            assertEquals(expected.getGlobalPosition().getY(), 
+                    actual.getGlobalPosition().getY(), EPSILON);
+            assertEquals(expected.getGlobalRotation(), actual.getGlobalRotation(), EPSILON);
+            assertEquals(expected.getGlobalScale(), actual.getGlobalScale(), EPSILON);
+        }
+    }
+    
+    private static void assertMatches(TransformStore store) {
+        Affine2D world = new Affine2D();
+        for (int i = 0; i < store.size(); i++) {
+            SceneObject obj = store.getObject(i);
+            assertEquals(i, store.indexOf(obj));
+            
+            // parents come first
+            int parent = store.getParent(i);
+            assertTrue(parent < i);
+            if (parent >= 0) {
+                assertSame(obj.getParent(), store.getObject(parent));
+            }
+            
+            store.getWorldTransform(i, world);
+            Affine2D expected = obj.getGlobalTransform();
+            assertEquals(expected.getIX(), world.getIX(), EPSILON);
+            assertEquals(expected.getIY(), world.getIY(), EPSILON);
+            assertEquals(expected.getJX(), world.getJX(), EPSILON);
+            assertEquals(expected.getJY(), world.getJY(), EPSILON);
+            assertEquals(expected.getOriginX(), world.getOriginX(), EPSILON);
+            assertEquals(expected.getOriginY(), world.getOriginY(), EPSILON);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package unsw.graphics.tests;
+
+import unsw.graphics.headless.RecordingGL;
+
+/**
+ * A mock GL3 for tests. It does nothing except count calls and hand out buffer names.
+ *
+ * @author Benny Hwang
+ */
+public class CountingGL extends RecordingGL {
+    
+    public CountingGL() {
+        // Only the counts are needed, so don't keep a log
+        super(false);
+    }
+}
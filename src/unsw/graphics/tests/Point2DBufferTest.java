@@ -0,0 +1,68 @@
+package unsw.graphics.tests;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import unsw.graphics.Point2DBuffer;
+import unsw.graphics.geometry.Point2D;
+
+/**
+ * Checks that Point2DBuffer grows, takes points in bulk and reuses its scratch buffers.
+ *
+ * @author Benny Hwang
+ */
+public class Point2DBufferTest extends TestCase {
+
+    @Test
+    public void testGrowAndBulkPut() {
+        Point2DBuffer buffer = new Point2DBuffer(2);
+        buffer.put(0, 1, 2);
+        buffer.put(5, 6);
+        buffer.put(new float[] { 0, 7, 8, 9, 10, 0 }, 1, 4);
+        buffer.put(Arrays.asList(new Point2D(11, 12)));
+        assertEquals(4, buffer.size());
+        assertTrue(buffer.getCapacity() >= 4);
+        
+        float[] values = new float[8];
+        FloatBuffer floats = ((FloatBuffer) buffer.getBuffer()).duplicate();
+        floats.get(values);
+        assertTrue(Arrays.equals(new float[] { 5, 6, 7, 8, 9, 10, 11, 12 }, values));
+        
+        // growing keeps the points already written
+        buffer.ensureCapacity(100);
+        floats = ((FloatBuffer) buffer.getBuffer()).duplicate();
+        floats.get(values);
+        assertTrue(Arrays.equals(new float[] { 5, 6, 7, 8, 9, 10, 11, 12 }, values));
+        assertEquals(0, ((FloatBuffer) buffer.getBuffer()).position());
+        
+        try {
+            buffer.put(100, 0, 0);
+            fail("Wrote past the end of the buffer");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testScratch() throws Exception {
+        Point2DBuffer scratch = Point2DBuffer.scratch(4);
+        scratch.put(1, 2);
+        assertSame(scratch, Point2DBuffer.scratch(1000));
+        assertEquals(0, scratch.size());
+        assertTrue(scratch.getCapacity() >= 1000);
+        
+        final Point2DBuffer[] other = new Point2DBuffer[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                other[0] = Point2DBuffer.scratch(1);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotSame(scratch, other[0]);
+    }
+}
@@ -0,0 +1,208 @@
+package unsw.graphics.tests;
+
+import java.awt.Color;
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.Profiler;
+import unsw.graphics.Profiler.Counter;
+import unsw.graphics.RollingHistogram;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Polygon2D;
+import unsw.graphics.scene.PolygonalSceneObject;
+import unsw.graphics.scene.Scene;
+
+/**
+ * Checks the profiler's scopes, counters and histograms.
+ *
+ * @author Benny Hwang
+ */
+public class ProfilerTest extends TestCase {
+    
+    @Override
+    protected void tearDown() {
+        Profiler.setEnabled(false);
+    }
+
+    @Test
+    public void testHistogram() {
+        RollingHistogram h = new RollingHistogram(100);
+        assertEquals(0, h.getPercentile(50));
+        for (int i = 100; i >= 1; i--)
+            h.add(i);
+        assertEquals(50, h.getPercentile(50));
+        assertEquals(95, h.getPercentile(95));
+        assertEquals(99, h.getPercentile(99));
+        assertEquals(100, h.getMax());
+        assertEquals(50.5, h.getMean(), 0.001);
+        
+        // new values replace the oldest ones, here 51 to 100
+        for (int i = 0; i < 50; i++)
+            h.add(1000);
+        assertEquals(100, h.size());
+        assertEquals(50, h.getPercentile(50));
+        assertEquals(1000, h.getPercentile(51));
+        assertEquals(1000, h.getLast());
+    }
+    
+    @Test
+    public void testScopesAndCounters() throws Exception {
+        Profiler.Scope outer = Profiler.scope("test outer");
+        Profiler.Scope inner = Profiler.scope("test inner");
+        assertSame(outer, Profiler.scope("test outer"));
+        
+        // nothing is measured while the profiler is off
+        Profiler.beginFrame();
+        outer.begin();
+        Profiler.count(Counter.DRAW_CALLS);
+        outer.end();
+        Profiler.endFrame();
+        assertEquals(0, Profiler.getFrameCount());
+        assertEquals(0, Profiler.getCount(Counter.DRAW_CALLS));
+        
+        Profiler.setEnabled(true);
+        for (int i = 0; i < 10; i++) {
+            Profiler.beginFrame();
+            outer.begin();
+            inner.begin();
+            Profiler.count(Counter.DRAW_CALLS, i);
+            inner.end();
+            Profiler.count(Counter.DRAW_CALLS);
+            outer.end();
+            Profiler.endFrame();
+        }
+        assertEquals(10, Profiler.getFrameCount());
+        assertEquals(10, Profiler.getLastCount(Counter.DRAW_CALLS));
+        assertEquals(0, Profiler.getCount(Counter.DRAW_CALLS));
+        assertEquals(5, Profiler.getHistory(Counter.DRAW_CALLS).getPercentile(50));
+        assertEquals(10, outer.getHistory().size());
+        assertTrue(outer.getHistory().getMax() >= inner.getHistory().getMax());
+        assertTrue(Profiler.getFrameTimes().getMax() >= outer.getHistory().getMax());
+        
+        // other threads aren't measured
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                Profiler.count(Counter.DRAW_CALLS);
+            }
+        };
+        other.start();
+        other.join();
+        assertEquals(0, Profiler.getCount(Counter.DRAW_CALLS));
+        
+        // scopes must be closed innermost first
+        Profiler.beginFrame();
+        outer.begin();
+        inner.begin();
+        try {
+            outer.end();
+            fail("Closed a scope with another still open inside it");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        
+        Profiler.clear();
+        assertEquals(0, Profiler.getFrameCount());
+        assertEquals(0, outer.getHistory().size());
+    }
+    
+    @Test
+    public void testFrameAfterException() {
+        CountingGL counter = new CountingGL();
+        GL3 gl = counter.gl();
+        Scene scene = new Scene();
+        final boolean[] fail = { true };
+        new PolygonalSceneObject(scene.getRoot(), new Polygon2D(0,0, 1,0, 1,1), Color.RED, null) {
+            @Override
+            public void updateSelf(float dt) {
+                if (fail[0])
+                    throw new RuntimeException("update failed");
+            }
+        };
+        
+        Profiler.setEnabled(true);
+        Profiler.beginFrame();
+        try {
+            scene.draw(gl, 0.1f);
+            fail("The update should have thrown");
+        } catch (RuntimeException e) {
+            assertEquals("update failed", e.getMessage());
+        }
+        // The update scope was closed on the way out
+        Profiler.endFrame();
+        
+        fail[0] = false;
+        Profiler.beginFrame();
+        scene.draw(gl, 0.1f);
+        Profiler.endFrame();
+        assertEquals(2, Profiler.getFrameCount());
+        assertEquals(2, Profiler.scope("update").getHistory().size());
+        
+        // A scope left open loses its frame, but doesn't break the next one
+        Profiler.Scope leaked = Profiler.scope("test leaked");
+        Profiler.beginFrame();
+        leaked.begin();
+        try {
+            Profiler.endFrame();
+            fail("Ended a frame with a scope open");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Profiler.beginFrame();
+        leaked.begin();
+        leaked.end();
+        Profiler.endFrame();
+        assertEquals(3, Profiler.getFrameCount());
+        assertEquals(1, leaked.getHistory().size());
+    }
+
+    @Test
+    public void testSceneCounters() throws Exception {
+        CountingGL counter = new CountingGL();
+        GL3 gl = counter.gl();
+        Shader shader = new Shader(gl, 1);
+        shader.use(gl);
+        
+        Scene scene = new Scene();
+        scene.reshape(100, 100);
+        Polygon2D square = new Polygon2D(-0.1f,-0.1f, 0.1f,-0.1f, 0.1f,0.1f, -0.1f,0.1f);
+        for (int i = 0; i < 3; i++) {
+            new PolygonalSceneObject(scene.getRoot(), square, Color.WHITE, Color.BLACK)
+                    .translate(i * 0.2f, 0);
+        }
+        
+        Profiler.setEnabled(true);
+        counter.reset();
+        Profiler.beginFrame();
+        scene.draw(gl);
+        Profiler.endFrame();
+        
+        assertEquals(counter.count("glDrawArrays"), Profiler.getLastCount(Counter.DRAW_CALLS));
+        assertEquals(counter.count("glBufferData"), 
+                Profiler.getLastCount(Counter.BUFFER_UPLOADS));
+        assertEquals(counter.count("glUniformMatrix3fv") + counter.count("glUniform3f"), 
+                Profiler.getLastCount(Counter.UNIFORM_SETS));
+        assertEquals(scene.getNodesDrawn(), Profiler.getLastCount(Counter.NODES_VISITED));
+        assertEquals(6, Profiler.getLastCount(Counter.DRAW_CALLS));
+        assertEquals(1, Profiler.scope("update").getHistory().size());
+        assertEquals(1, Profiler.scope("collision").getHistory().size());
+        assertEquals(1, Profiler.scope("draw").getHistory().size());
+        
+        File file = File.createTempFile("profile", ".txt");
+        try {
+            Profiler.dump(file);
+            String text = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+            assertTrue(text.contains("frames: 1"));
+            assertTrue(text.contains("draw_calls"));
+            assertTrue(text.contains("collision"));
+        } finally {
+            file.delete();
+        }
+        shader.destroy(gl);
+    }
+}
@@ -0,0 +1,69 @@
+package unsw.graphics.tests;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+import com.jogamp.opengl.GL3;
+
+import junit.framework.TestCase;
+import unsw.graphics.CoordFrame2D;
+import unsw.graphics.Shader;
+import unsw.graphics.geometry.Polygon2D;
+
+/**
+ * Checks that Shader caches uniform locations and skips redundant uploads.
+ *
+ * @author Benny Hwang
+ */
+public class ShaderTest extends TestCase {
+
+    @Test
+    public void testNoQueriesAfterLink() {
+        CountingGL counter = new CountingGL();
+        GL3 gl = counter.gl();
+        
+        Shader shader = new Shader(gl, 1);
+        shader.use(gl);
+        assertEquals(3, counter.count("glGetUniformLocation"));
+        
+        counter.reset();
+        Shader.setModelMatrix(gl, CoordFrame2D.identity().translate(1, 2));
+        Shader.setViewMatrix(gl, CoordFrame2D.identity());
+        Shader.setPenColor(gl, Color.RED);
+        assertEquals(0, counter.count("glGetIntegerv"));
+        assertEquals(0, counter.count("glGetUniformLocation"));
+        assertEquals(2, counter.count("glUniformMatrix3fv"));
+        assertEquals(1, counter.count("glUniform3f"));
+        
+        shader.destroy(gl);
+    }
+    
+    @Test
+    public void testRedundantUploadsSkipped() {
+        CountingGL counter = new CountingGL();
+        GL3 gl = counter.gl();
+        Shader shader = new Shader(gl, 1);
+        shader.use(gl);
+        
+        // A frame of 100 identical shapes in the same place needs one upload of each uniform
+        Polygon2D polygon = new Polygon2D(0,0, 1,0, 1,1);
+        CoordFrame2D frame = CoordFrame2D.identity().rotate(30);
+        Shader.resetCallCount();
+        counter.reset();
+        for (int i = 0; i < 100; i++) {
+            Shader.setPenColor(gl, Color.BLUE);
+            polygon.draw(gl, frame);
+        }
+        assertEquals(2, Shader.getCallCount());
+        assertEquals(1, counter.count("glUniformMatrix3fv"));
+        assertEquals(1, counter.count("glUniform3f"));
+        
+        // Changing the value uploads it again
+        Shader.setPenColor(gl, Color.GREEN);
+        Shader.setPenColor(gl, Color.BLUE);
+        assertEquals(3, counter.count("glUniform3f"));
+        
+        shader.destroy(gl);
+    }
+}